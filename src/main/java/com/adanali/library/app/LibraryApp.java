@@ -6,13 +6,24 @@ import com.adanali.library.model.User;
 import com.adanali.library.service.LibraryService;
 import com.adanali.library.util.ConsoleUtil;
 
+import java.io.IOException;
 import java.time.LocalDate;
+import java.util.function.UnaryOperator;
 
 public class LibraryApp {
     private static final LibraryService library = new LibraryService();
     private static User currentUser;
+    private static final int DEFAULT_SERVER_PORT = 8080;
 
+    // Runs the console, or with "--server [port]" serves the library over HTTP instead, see LibraryHttpServer.
     public static void main(String[] args){
+        if (args.length > 0 && args[0].equals("--server")){
+            int port = args.length > 1 ? portOf(args[1]) : DEFAULT_SERVER_PORT;
+            if (port >= 0 && args.length <= 2){
+                startServer(port);
+            }else System.out.println("Usage : LibraryApp [--server [port]], the port being a number from 0 to 65535");
+            return;
+        }
         boolean reRun = true;
         do {
             ConsoleUtil.clearConsole();
@@ -31,6 +42,26 @@ public class LibraryApp {
         }while (reRun);
     }
 
+    // The port of the argument, or -1 if it is not a valid port number.
+    private static int portOf(String argument){
+        try {
+            int port = Integer.parseInt(argument);
+            return port <= 65535 ? port : -1;
+        }catch (NumberFormatException e){
+            return -1;
+        }
+    }
+
+    private static void startServer(int port){
+        try {
+            LibraryHttpServer server = new LibraryHttpServer(library, port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1), "library-server-shutdown"));
+            server.start();
+        }catch (IOException e){
+            System.out.println("Could not start the server : "+e.getMessage());
+        }
+    }
+
     private static void loginScreen(){
         ConsoleUtil.printLibraryHeader();
         System.out.println("- Login -");
@@ -226,14 +257,10 @@ public class LibraryApp {
             String innerChoice = ConsoleUtil.inputString("Enter your choice");
             switch (innerChoice){
                 case "1":
-                    ConsoleUtil.printLibraryHeader();
-                    library.printAllLibrarians();
-                    ConsoleUtil.delay(2000);
+                    printPages(library::printAllLibrarians);
                     break;
                 case "2":
-                    ConsoleUtil.printLibraryHeader();
-                    library.printAllStudents();
-                    ConsoleUtil.delay(2000);
+                    printPages(library::printAllStudents);
                     break;
                 case "3":
                     reRun = false;
@@ -262,7 +289,8 @@ public class LibraryApp {
             System.out.println("3- Update a book");
             System.out.println("4- List all books");
             System.out.println("5- Search a book");
-            System.out.println("6- Go back");
+            System.out.println("6- Books per genre");
+            System.out.println("7- Go back");
 
             String userChoice = ConsoleUtil.inputString("Enter your choice");
 
@@ -277,14 +305,17 @@ public class LibraryApp {
                     updateBookPage();
                     break;
                 case "4":
-                    ConsoleUtil.printLibraryHeader();
-                    library.printAllBooks();
-                    ConsoleUtil.delay(2000);
+                    printPages(library::printAllBooks);
                     break;
                 case "5":
                     searchBooksOptions();
                     break;
                 case "6":
+                    ConsoleUtil.printLibraryHeader();
+                    library.printGenreCounts();
+                    ConsoleUtil.delay(2000);
+                    break;
+                case "7":
                     exit = true;
                     break;
                 default:
@@ -406,6 +437,17 @@ public class LibraryApp {
         }
     }
 
+    // Prints the first page, then the next ones for as long as the user asks for them.
+    private static void printPages(UnaryOperator<String> pagePrinter){
+        ConsoleUtil.printLibraryHeader();
+        String cursor = pagePrinter.apply(null);
+        while (cursor != null && ConsoleUtil.inputString("Enter 'n' for the next page, anything else to stop").equalsIgnoreCase("n")){
+            ConsoleUtil.printLibraryHeader();
+            cursor = pagePrinter.apply(cursor);
+        }
+        ConsoleUtil.delay(2000);
+    }
+
     public static void searchBooksOptions(){
         boolean exit = false;
         while (!exit) {
@@ -414,7 +456,13 @@ public class LibraryApp {
             System.out.println("2 - Search by title");
             System.out.println("3 - Search by Author Name");
             System.out.println("4 - Search by Genre");
-            System.out.println("5 - Go Back");
+            System.out.println("5 - Best matches");
+            System.out.println("6 - Complete a title");
+            System.out.println("7 - Complete an author's name");
+            System.out.println("8 - Search allowing typos");
+            System.out.println("9 - Published between dates");
+            System.out.println("10 - Search published between dates");
+            System.out.println("11 - Go Back");
 
             String innerChoice = ConsoleUtil.inputString("Enter your choice");
             String searchQuery;
@@ -444,6 +492,45 @@ public class LibraryApp {
                     ConsoleUtil.delay(2000);
                     break;
                 case "5":
+                    searchQuery = ConsoleUtil.inputString("Enter search query");
+                    ConsoleUtil.printLibraryHeader();
+                    library.searchForBestMatches(searchQuery);
+                    ConsoleUtil.delay(2000);
+                    break;
+                case "6":
+                    searchQuery = ConsoleUtil.inputString("Enter the beginning of the title");
+                    ConsoleUtil.printLibraryHeader();
+                    library.suggestTitles(searchQuery);
+                    ConsoleUtil.delay(2000);
+                    break;
+                case "7":
+                    searchQuery = ConsoleUtil.inputString("Enter the beginning of the author's name");
+                    ConsoleUtil.printLibraryHeader();
+                    library.suggestAuthors(searchQuery);
+                    ConsoleUtil.delay(2000);
+                    break;
+                case "8":
+                    searchQuery = ConsoleUtil.inputString("Enter search query");
+                    ConsoleUtil.printLibraryHeader();
+                    library.searchForBookFuzzy(searchQuery);
+                    ConsoleUtil.delay(2000);
+                    break;
+                case "9":
+                    LocalDate from = ConsoleUtil.inputDate("Enter the first date");
+                    LocalDate to = ConsoleUtil.inputDate("Enter the last date");
+                    ConsoleUtil.printLibraryHeader();
+                    library.printBooksPublishedBetween(from, to);
+                    ConsoleUtil.delay(2000);
+                    break;
+                case "10":
+                    searchQuery = ConsoleUtil.inputString("Enter search query");
+                    LocalDate firstDate = ConsoleUtil.inputDate("Enter the first date");
+                    LocalDate lastDate = ConsoleUtil.inputDate("Enter the last date");
+                    ConsoleUtil.printLibraryHeader();
+                    library.searchForBookPublishedBetween(searchQuery, firstDate, lastDate);
+                    ConsoleUtil.delay(2000);
+                    break;
+                case "11":
                     exit = true;
                     break;
                 default:
@@ -502,7 +589,8 @@ public class LibraryApp {
             System.out.println("2 - print Borrowing records by User");
             System.out.println("3 - print Borrowing records by Book");
             System.out.println("4 - print all Borrowing Records");
-            System.out.println("5 - Go Back");
+            System.out.println("5 - print Borrowing statistics");
+            System.out.println("6 - Go Back");
 
             String choice = ConsoleUtil.inputString("Enter your choice");
             switch (choice){
@@ -553,11 +641,14 @@ public class LibraryApp {
                     ConsoleUtil.delay(2000);
                     break;
                 case "4":
+                    printPages(library::printAllBorrowingRecords);
+                    break;
+                case "5":
                     ConsoleUtil.printLibraryHeader();
-                    library.printAllBorrowingRecords();
+                    library.printBorrowingStatistics();
                     ConsoleUtil.delay(2000);
                     break;
-                case "5":
+                case "6":
                     exit = true;
                     break;
                 default:
@@ -0,0 +1,349 @@
+package com.adanali.library.app;
+
+import com.adanali.library.exceptions.EntityDuplicationException;
+import com.adanali.library.exceptions.EntityNotFoundException;
+import com.adanali.library.exceptions.InvalidCredentialsException;
+import com.adanali.library.model.Book;
+import com.adanali.library.model.Borrower;
+import com.adanali.library.model.BorrowingRecord;
+import com.adanali.library.model.Librarian;
+import com.adanali.library.model.User;
+import com.adanali.library.repository.Page;
+import com.adanali.library.service.LibraryService;
+import com.adanali.library.util.JsonStorageUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * JSON over HTTP front end of the library, for the self-checkout kiosks and the web catalog.
+ * Every request runs on its own virtual thread, so a request waiting on a save does not hold a platform thread.
+ * A login returns a token, sent back by the other requests in the header "Authorization: Bearer {token}".
+ * A token expires after 30 minutes without a request, on logout, or as soon as its user is removed.
+ * Launch with -Dsun.net.httpserver.nodelay=true : the server writes the headers and the body of a response separately,
+ * and without TCP_NODELAY the body waits for the client's delayed acknowledgement, about 40 ms per request.
+ *
+ * POST /api/login                 {"email", "password"}
+ * POST /api/logout
+ * GET  /api/books                 ?cursor, size : catalog page. ?q, limit : best matches
+ * GET  /api/books/{isbn}
+ * POST /api/borrow                {"isbn", "email"} : a Librarian borrows for the given Student, a Student for themselves
+ * POST /api/return                {"isbn", "email"}
+ * POST /api/fines/pay             {"amount", "email"}
+ * GET  /api/records               ?cursor, size : every record for a Librarian, their own records for a Student
+ * GET  /api/users                 ?role, cursor, size : Librarians only
+ */
+public class LibraryHttpServer {
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final long SESSION_IDLE_MILLIS = 30 * 60 * 1000;
+
+    private final LibraryService library;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper = JsonStorageUtil.createObjectMapper();
+    // Sessions by their token. Expired sessions are dropped when they are used, and the others by the logins every few minutes.
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private volatile long nextSessionPurgeMillis;
+
+    // Only the e-mail is kept, the user is looked up on every request, so a removed user's token stops working at once.
+    private record Session(String email, long expiresAtMillis) {}
+
+    // What the API shows of the entities, a user's password never leaves the server.
+    record BookView(String isbn, String title, String author, String genre, LocalDate publicationDate, int quantity) {
+        static BookView of(Book book){
+            return new BookView(book.getIsbn(), book.getTitle(), book.getAuthor(), book.getGenre(), book.getPublicationDate(), book.getQuantity());
+        }
+    }
+
+    record UserView(String name, String email, String role, Integer pendingFine) {
+        static UserView of(User user){
+            return new UserView(user.getName(), user.getEmail(), user.getRole(), user instanceof Borrower borrower ? borrower.getPendingFine() : null);
+        }
+    }
+
+    record RecordView(String recordId, String isbn, String title, String borrowerEmail, LocalDate borrowDate, LocalDate dueDate,
+                      LocalDate returnDate, String status, int fine) {
+        static RecordView of(BorrowingRecord borrowingRecord){
+            String borrowerEmail = borrowingRecord.getBorrower() instanceof User user ? user.getEmail() : null;
+            return new RecordView(borrowingRecord.getRecordId(), borrowingRecord.getBorrowedBook().getIsbn(), borrowingRecord.getBorrowedBook().getTitle(),
+                    borrowerEmail, borrowingRecord.getBorrowDate(), borrowingRecord.getDueDate(), borrowingRecord.getReturnDate(),
+                    borrowingRecord.getStatus().name(), borrowingRecord.getFine());
+        }
+    }
+
+    record PageView<T>(List<T> items, String nextCursor) {}
+
+    // Ends a request with an error status, thrown by the handlers.
+    private static class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object handle(HttpExchange exchange) throws Exception;
+    }
+
+    public LibraryHttpServer(LibraryService library, int port) throws IOException {
+        this.library = library;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        route("/api/login", false, "POST", this::login);
+        route("/api/logout", false, "POST", this::logout);
+        route("/api/books", true, "GET", this::books);
+        route("/api/borrow", false, "POST", this::borrow);
+        route("/api/return", false, "POST", this::returnBook);
+        route("/api/fines/pay", false, "POST", this::payFine);
+        route("/api/records", false, "GET", this::records);
+        route("/api/users", false, "GET", this::users);
+    }
+
+    public void start(){
+        server.start();
+        System.out.println("Library API listening on port "+getPort());
+    }
+
+    // Waits up to the given delay for the requests in progress, then flushes the pending saves.
+    public void stop(int delaySeconds){
+        server.stop(delaySeconds);
+        executor.close();
+        library.flushAndReport();
+    }
+
+    public int getPort(){
+        return server.getAddress().getPort();
+    }
+
+    // The contexts match any path starting with theirs, so "/api/booksfoo" would reach "/api/books" : only the path itself
+    // is served, and the paths below it for a handler with sub paths.
+    private void route(String path, boolean withSubPaths, String method, Handler handler){
+        server.createContext(path, exchange -> {
+            try (exchange) {
+                try {
+                    String requestPath = exchange.getRequestURI().getPath();
+                    if (!requestPath.equals(path) && !(withSubPaths && requestPath.startsWith(path + "/"))) throw new HttpError(404, "Not found");
+                    if (!exchange.getRequestMethod().equalsIgnoreCase(method)) throw new HttpError(405, "Method not allowed");
+                    respond(exchange, 200, handler.handle(exchange));
+                } catch (HttpError e) {
+                    respond(exchange, e.status, errorOf(e));
+                } catch (IllegalArgumentException e) {
+                    respond(exchange, 400, errorOf(e));
+                } catch (EntityNotFoundException e) {
+                    respond(exchange, 404, errorOf(e));
+                } catch (IllegalStateException | EntityDuplicationException e) {
+                    respond(exchange, 409, errorOf(e));
+                } catch (Exception e) {
+                    System.out.println("Request to "+exchange.getRequestURI()+" failed : "+e.getMessage());
+                    respond(exchange, 500, Map.of("error", "Internal error"));
+                }
+            }
+        });
+    }
+
+    private Object login(HttpExchange exchange) throws IOException {
+        JsonNode body = readBody(exchange);
+        try {
+            User user = library.getUserService().authenticate(requiredText(body, "email"), requiredText(body, "password"));
+            long now = System.currentTimeMillis();
+            if (now >= nextSessionPurgeMillis){
+                nextSessionPurgeMillis = now + SESSION_IDLE_MILLIS / 10;
+                sessions.values().removeIf(session -> session.expiresAtMillis() <= now);
+            }
+            String token = UUID.randomUUID().toString();
+            sessions.put(token, new Session(user.getEmail(), now + SESSION_IDLE_MILLIS));
+            return Map.of("token", token, "user", UserView.of(user));
+        } catch (EntityNotFoundException | InvalidCredentialsException e) {
+            throw new HttpError(401, "Invalid E-mail or Password");
+        }
+    }
+
+    private Object logout(HttpExchange exchange){
+        authenticated(exchange);
+        sessions.remove(tokenOf(exchange));
+        return Map.of("loggedOut", true);
+    }
+
+    private Object books(HttpExchange exchange) throws EntityNotFoundException {
+        String path = exchange.getRequestURI().getPath();
+        if (path.length() > "/api/books/".length()){
+            String isbn = path.substring("/api/books/".length());
+            return BookView.of(library.getBookService().getBookByIsbn(isbn)
+                    .orElseThrow(() -> new EntityNotFoundException("There is no book in library with ISBN : "+isbn)));
+        }
+        Map<String, String> query = queryOf(exchange);
+        if (query.containsKey("q")){
+            int limit = intParameter(query, "limit", DEFAULT_PAGE_SIZE);
+            return library.getBookService().searchBooksRanked(query.get("q"), limit).stream().map(BookView::of).toList();
+        }
+        Page<Book> page = library.getBookService().listBooks(query.get("cursor"), intParameter(query, "size", DEFAULT_PAGE_SIZE));
+        return new PageView<>(page.getItems().stream().map(BookView::of).toList(), page.getNextCursor());
+    }
+
+    private Object borrow(HttpExchange exchange) throws IOException, EntityNotFoundException, EntityDuplicationException {
+        JsonNode body = readBody(exchange);
+        Borrower borrower = borrowerOf(exchange, body);
+        Book book = bookOf(requiredText(body, "isbn"));
+        library.getBorrowingService().borrowBook(borrower, book);
+        return Map.of("borrower", UserView.of((User) borrower), "book", BookView.of(book));
+    }
+
+    private Object returnBook(HttpExchange exchange) throws IOException, EntityNotFoundException {
+        JsonNode body = readBody(exchange);
+        Borrower borrower = borrowerOf(exchange, body);
+        Book book = bookOf(requiredText(body, "isbn"));
+        library.getBorrowingService().returnBook(borrower, book);
+        return Map.of("borrower", UserView.of((User) borrower), "book", BookView.of(book));
+    }
+
+    private Object payFine(HttpExchange exchange) throws IOException, EntityNotFoundException {
+        JsonNode body = readBody(exchange);
+        Borrower borrower = borrowerOf(exchange, body);
+        JsonNode amount = body.get("amount");
+        if (amount == null || !amount.canConvertToInt()) throw new IllegalArgumentException("Invalid payment amount!");
+        library.getBorrowingService().payFine(borrower, amount.asInt());
+        return UserView.of((User) borrower);
+    }
+
+    private Object records(HttpExchange exchange){
+        User user = authenticated(exchange);
+        Map<String, String> query = queryOf(exchange);
+        if (user instanceof Librarian){
+            Page<BorrowingRecord> page = library.getBorrowingService().listRecords(query.get("cursor"), intParameter(query, "size", DEFAULT_PAGE_SIZE));
+            return new PageView<>(page.getItems().stream().map(RecordView::of).toList(), page.getNextCursor());
+        }else if (user instanceof Borrower borrower){
+            return library.getBorrowingService().getBorrowingsByBorrower(borrower).stream().map(RecordView::of).toList();
+        }else throw new HttpError(403, "Not allowed");
+    }
+
+    private Object users(HttpExchange exchange){
+        if (!(authenticated(exchange) instanceof Librarian)) throw new HttpError(403, "Only Librarians can list the users");
+        Map<String, String> query = queryOf(exchange);
+        Page<User> page = library.getUserService().listUsersByRole(query.getOrDefault("role", "Student"), query.get("cursor"),
+                intParameter(query, "size", DEFAULT_PAGE_SIZE));
+        return new PageView<>(page.getItems().stream().map(UserView::of).toList(), page.getNextCursor());
+    }
+
+    // A Student acts for themselves, a Librarian for the Student whose e-mail is in the body.
+    private Borrower borrowerOf(HttpExchange exchange, JsonNode body) throws EntityNotFoundException {
+        User user = authenticated(exchange);
+        if (user instanceof Librarian){
+            String email = requiredText(body, "email");
+            User borrower = library.getUserService().getUserByEmail(email)
+                    .orElseThrow(() -> new EntityNotFoundException("There is no Borrower registered with the email : "+email));
+            if (borrower instanceof Borrower){
+                return (Borrower) borrower;
+            }else throw new IllegalArgumentException("The User don't even have borrowing rights!");
+        }else if (user instanceof Borrower borrower){
+            return borrower;
+        }else throw new HttpError(403, "Not allowed");
+    }
+
+    private Book bookOf(String isbn) throws EntityNotFoundException {
+        return library.getBookService().getBookByIsbn(isbn)
+                .orElseThrow(() -> new EntityNotFoundException("There is no book in library with ISBN : "+isbn));
+    }
+
+    // The user of the session, whose expiry is pushed back by the request.
+    private User authenticated(HttpExchange exchange){
+        String token = tokenOf(exchange);
+        Session session = token != null ? sessions.get(token) : null;
+        if (session == null) throw new HttpError(401, "Login required");
+        long now = System.currentTimeMillis();
+        if (session.expiresAtMillis() <= now){
+            sessions.remove(token, session);
+            throw new HttpError(401, "Session expired, login again");
+        }
+        User user = library.getUserService().getUserByEmail(session.email()).orElse(null);
+        if (user == null){
+            sessions.remove(token, session);
+            throw new HttpError(401, "Login required");
+        }
+        sessions.replace(token, session, new Session(session.email(), now + SESSION_IDLE_MILLIS));
+        return user;
+    }
+
+    private static String tokenOf(HttpExchange exchange){
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        return authorization != null && authorization.startsWith("Bearer ") ? authorization.substring("Bearer ".length()) : null;
+    }
+
+    private JsonNode readBody(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            JsonNode node = objectMapper.readTree(body);
+            if (node == null || !node.isObject()) throw new IllegalArgumentException("Expected a JSON object");
+            return node;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed JSON body");
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    private static Map<String, String> errorOf(Exception e){
+        return Map.of("error", String.valueOf(e.getMessage()));
+    }
+
+    private static String requiredText(JsonNode body, String field){
+        JsonNode value = body.get(field);
+        if (value == null || !value.isTextual() || value.asText().isBlank()) throw new IllegalArgumentException("Missing field : "+field);
+        return value.asText();
+    }
+
+    private static Map<String, String> queryOf(HttpExchange exchange){
+        Map<String, String> parameters = new HashMap<>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery == null) return parameters;
+        for (String pair : rawQuery.split("&")){
+            int separator = pair.indexOf('=');
+            if (separator > 0){
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static int intParameter(Map<String, String> query, String name, int defaultValue){
+        String value = query.get(name);
+        if (value == null) return defaultValue;
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed <= 0) throw new IllegalArgumentException("Invalid "+name+" : "+value);
+            return Math.min(parsed, MAX_PAGE_SIZE);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid "+name+" : "+value);
+        }
+    }
+}
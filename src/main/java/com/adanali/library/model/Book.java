@@ -1,20 +1,42 @@
 package com.adanali.library.model;
 
+import com.adanali.library.util.StringDictionary;
 import com.adanali.library.util.StringUtil;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.LocalDate;
 import java.util.Objects;
 
 public class Book {
+    // Genres and authors repeat across the catalog, every book with the same value shares its instance and code.
+    // The repository counts and searches them by code.
+    private static final StringDictionary GENRES = new StringDictionary();
+    private static final StringDictionary AUTHORS = new StringDictionary();
+    // Copies are taken and given back with compare-and-set on the quantity, so concurrent checkouts never need a lock.
+    private static final VarHandle QUANTITY;
+
+    static {
+        try {
+            QUANTITY = MethodHandles.lookup().findVarHandle(Book.class, "quantity", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     private final String isbn;
     private String title;
     private String authorName;
     private String genre;
     private LocalDate publicationDate;
-    private int quantity;
+    private volatile int quantity;
+    @JsonIgnore
+    private int genreCode;
+    @JsonIgnore
+    private int authorCode;
 
     @JsonCreator
     public Book(@JsonProperty("isbn") String isbn,
@@ -50,7 +72,16 @@ public class Book {
 
     public void setAuthor(String author) {
         StringUtil.validateNotNullOrBlank(author,"Author Name");
-        this.authorName = author;
+        this.authorCode = AUTHORS.encode(author);
+        this.authorName = AUTHORS.decode(authorCode);
+    }
+
+    public int getAuthorCode() {
+        return authorCode;
+    }
+
+    public static String authorOfCode(int authorCode) {
+        return AUTHORS.decode(authorCode);
     }
 
     public String getGenre() {
@@ -59,7 +90,16 @@ public class Book {
 
     public void setGenre(String genre) {
         StringUtil.validateNotNullOrBlank(genre,"Genre");
-        this.genre = genre;
+        this.genreCode = GENRES.encode(genre);
+        this.genre = GENRES.decode(genreCode);
+    }
+
+    public int getGenreCode() {
+        return genreCode;
+    }
+
+    public static String genreOfCode(int genreCode) {
+        return GENRES.decode(genreCode);
     }
 
     public LocalDate getPublicationDate() {
@@ -84,16 +124,38 @@ public class Book {
 
     public void increaseQuantity(int value){
         if (value >= 0){
-            this.setQuantity(this.getQuantity()+value);
+            QUANTITY.getAndAdd(this, value);
         }else throw new IllegalArgumentException("Invalid value to increase book quantity!");
     }
 
     public void decreaseQuantity(int value){
         if (value >= 0){
-            this.setQuantity(this.getQuantity()-value);
+            int current;
+            do {
+                current = quantity;
+                if (current - value < 0) throw new IllegalArgumentException("Quantity cannot be zero/negative after change");
+            }while (!QUANTITY.compareAndSet(this, current, current - value));
         }else throw new IllegalArgumentException("Invalid value to decrease book quantity!");
     }
 
+    /**
+     * Takes one copy for a checkout, if any is left. Of several checkouts racing for the last copy exactly one gets it.
+     * @return false if no copy is available
+     */
+    public boolean tryReserveCopy(){
+        int current;
+        do {
+            current = quantity;
+            if (current <= 0) return false;
+        }while (!QUANTITY.compareAndSet(this, current, current - 1));
+        return true;
+    }
+
+    // Gives back a copy taken by tryReserveCopy, on return or when the checkout fails.
+    public void releaseCopy(){
+        QUANTITY.getAndAdd(this, 1);
+    }
+
     public boolean isAvailableForBorrow() {
         return this.getQuantity()>0;
     }
@@ -35,6 +35,11 @@ public class BorrowingRecord {
             @JsonProperty("dueDate") LocalDate dueDate,
             @JsonProperty("returnDate") LocalDate returnDate,
             @JsonProperty("fine") int fine) {
+        this(recordId, borrowedBook, borrower, borrowDate, dueDate, returnDate, fine, true);
+    }
+
+    private BorrowingRecord(String recordId, Book borrowedBook, Borrower borrower, LocalDate borrowDate, LocalDate dueDate,
+                            LocalDate returnDate, int fine, boolean chargeFine) {
         this.recordId = recordId;
         this.borrowedBook = borrowedBook;
         this.borrower = borrower;
@@ -42,7 +47,18 @@ public class BorrowingRecord {
         this.dueDate = dueDate;
         this.returnDate = returnDate;
         this.fine = fine;
-        updateStatus(); // runs with returnDate/fine present
+        if (chargeFine){
+            updateStatus(); // runs with returnDate/fine present
+        }else refreshStatus();
+    }
+
+    /**
+     * Rebuilds a stored record as it was saved : the status follows the dates, but the stored fine is kept and nothing is charged to the borrower.
+     * Call updateStatus afterwards to charge the fine accrued since the record was saved.
+     */
+    public static BorrowingRecord restore(String recordId, Book borrowedBook, Borrower borrower, LocalDate borrowDate, LocalDate dueDate,
+                                          LocalDate returnDate, int fine) {
+        return new BorrowingRecord(recordId, borrowedBook, borrower, borrowDate, dueDate, returnDate, fine, false);
     }
 
     public String getRecordId() {
@@ -83,18 +99,31 @@ public class BorrowingRecord {
 
     // Updates the status based on return date and due date.
     public void updateStatus() {
+        updateStatus(LocalDate.now());
+    }
+
+    // Same as updateStatus, as of the given day rather than today, for a caller with its own clock.
+    public void updateStatus(LocalDate today) {
+        refreshStatus(today);
+        updateFine(today);
+    }
+
+    private void refreshStatus() {
+        refreshStatus(LocalDate.now());
+    }
+
+    private void refreshStatus(LocalDate today) {
         if (returnDate != null) {
             if (returnDate.isAfter(dueDate)){
                 status = BorrowingStatus.OVERDUE;
             }else {
                 status = BorrowingStatus.RETURNED;
             }
-        } else if (LocalDate.now().isAfter(dueDate)) {
+        } else if (today.isAfter(dueDate)) {
             status = BorrowingStatus.OVERDUE;
         } else {
             status = BorrowingStatus.ACTIVE;
         }
-        updateFine();
     }
 
     public int getFine() {
@@ -115,13 +144,17 @@ public class BorrowingRecord {
     }
 
     public void updateFine() {
+        updateFine(LocalDate.now());
+    }
+
+    private void updateFine(LocalDate today) {
         int fineToUpdate = 0;
         if (this.status.equals(BorrowingStatus.OVERDUE)) {
             long daysOverdue;
             if (returnDate != null){
                 daysOverdue = dueDate.datesUntil(returnDate).count();
             }else {
-                daysOverdue = dueDate.datesUntil(LocalDate.now()).count();
+                daysOverdue = dueDate.datesUntil(today).count();
             }
             fineToUpdate = (int) (50 * daysOverdue);
         }
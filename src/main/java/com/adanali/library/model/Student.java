@@ -32,19 +32,19 @@ public class Student extends User implements Borrower{
     }
 
     @Override
-    public int getPendingFine() {
+    public synchronized int getPendingFine() {
         return pendingFine;
     }
 
     @Override
-    public void addPendingFine(int fine) {
+    public synchronized void addPendingFine(int fine) {
         if (fine >= 0) {
             this.pendingFine += fine;
         } else throw new IllegalArgumentException("Fine cannot be negative!");
     }
 
     @Override
-    public void reducePendingFine(int fine) {
+    public synchronized void reducePendingFine(int fine) {
         if (fine >= 0) {
             if (fine <= this.pendingFine) {
                 this.pendingFine -= fine;
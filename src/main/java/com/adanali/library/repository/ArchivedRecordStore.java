@@ -0,0 +1,348 @@
+package com.adanali.library.repository;
+
+import com.adanali.library.dto.BorrowingRecordDTO;
+import com.adanali.library.model.BorrowingRecord;
+import com.adanali.library.model.BorrowingStatus;
+import com.adanali.library.model.User;
+import com.adanali.library.util.LongIntHashMap;
+import com.adanali.library.util.LongObjectHashMap;
+import com.adanali.library.util.StringDictionary;
+import com.adanali.library.util.StringUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Off-heap tier for the closed borrowing records, returned with their fine settled, which are not changed anymore.
+ * Every record takes one fixed-width slot of a direct buffer, so the archive gives the garbage collector no objects to trace,
+ * and a record is decoded back into a DTO only when a query reaches it.
+ * The slots of every borrower, book and status are listed in int arrays, so a lookup decodes its own records without scanning the others.
+ */
+class ArchivedRecordStore {
+    // Slot layout : id length, id in UTF-8, ISBN, borrower code, borrow, due and return epoch days, fine.
+    private static final int MAX_ID_BYTES = 64;
+    private static final int ID_LENGTH_OFFSET = 0;
+    private static final int ID_OFFSET = 1;
+    private static final int ISBN_OFFSET = ID_OFFSET + MAX_ID_BYTES;
+    private static final int BORROWER_OFFSET = ISBN_OFFSET + Long.BYTES;
+    private static final int BORROW_DAY_OFFSET = BORROWER_OFFSET + Integer.BYTES;
+    private static final int DUE_DAY_OFFSET = BORROW_DAY_OFFSET + Integer.BYTES;
+    private static final int RETURN_DAY_OFFSET = DUE_DAY_OFFSET + Integer.BYTES;
+    private static final int FINE_OFFSET = RETURN_DAY_OFFSET + Integer.BYTES;
+    private static final int SLOT_SIZE = 96;
+    private static final int SLOTS_PER_SEGMENT = (1 << 20) / SLOT_SIZE;
+
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    // Slot of every record, keyed by a 64 bit hash of its id. The id stored in the slot settles a collision.
+    private final LongIntHashMap slotsByIdHash = new LongIntHashMap();
+    private final StringDictionary borrowerCodes = new StringDictionary();
+    // Indexed by borrower code.
+    private final List<SlotList> slotsByBorrower = new ArrayList<>();
+    private final LongObjectHashMap<SlotList> slotsByIsbn = new LongObjectHashMap<>();
+    private final SlotList returnedSlots = new SlotList();
+    private final SlotList overdueSlots = new SlotList();
+    // Position of every used slot in its borrower, ISBN and status lists, so a slot leaves them without a search.
+    private int[] borrowerPositions = new int[16];
+    private int[] isbnPositions = new int[16];
+    private int[] statusPositions = new int[16];
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+    private int allocatedSlots;
+    private final LongFunction<String> isbnText;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Slots in no particular order, a slot is removed by moving the last one in its place.
+    private static final class SlotList {
+        private int[] slots = new int[4];
+        private int size;
+
+        // Returns the position of the slot in the list.
+        private int add(int slot){
+            if (size == slots.length) slots = Arrays.copyOf(slots, size * 2);
+            slots[size] = slot;
+            return size++;
+        }
+
+        private void remove(int position, int[] positions){
+            int lastSlot = slots[--size];
+            slots[position] = lastSlot;
+            positions[lastSlot] = position;
+        }
+    }
+
+    /**
+     * @param isbnText gives back the ISBN as it was written, only its number is stored
+     */
+    ArchivedRecordStore(LongFunction<String> isbnText) {
+        this.isbnText = isbnText;
+    }
+
+    int size(){
+        lock.readLock().lock();
+        try {
+            return slotsByIdHash.size();
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores the record, or overwrites it if it is already archived.
+     * @return false if the record cannot be archived : its id is too long, or its hash is taken by another id
+     */
+    boolean put(BorrowingRecord borrowingRecord){
+        if (borrowingRecord.getReturnDate() == null) throw new IllegalArgumentException("Only returned records can be archived!");
+        byte[] idBytes = borrowingRecord.getRecordId().getBytes(StandardCharsets.UTF_8);
+        if (idBytes.length == 0 || idBytes.length > MAX_ID_BYTES) return false;
+        if (!(borrowingRecord.getBorrower() instanceof User user)) throw new IllegalStateException("Borrower is not a User"); // Unreachable
+        long idHash = hashOf(idBytes);
+        lock.writeLock().lock();
+        try {
+            int slot = slotsByIdHash.get(idHash);
+            if (slot == LongIntHashMap.NO_VALUE){
+                slot = allocateSlot();
+                slotsByIdHash.put(idHash, slot);
+            }else if (Arrays.equals(idOf(slot), idBytes)){
+                unlink(slot);
+            }else return false;
+            ByteBuffer segment = segmentOf(slot);
+            int offset = offsetOf(slot);
+            segment.put(offset + ID_LENGTH_OFFSET, (byte) idBytes.length);
+            segment.put(offset + ID_OFFSET, idBytes);
+            segment.putLong(offset + ISBN_OFFSET, StringUtil.parseIsbn(borrowingRecord.getBorrowedBook().getIsbn()));
+            segment.putInt(offset + BORROWER_OFFSET, borrowerCodes.encode(user.getEmail()));
+            segment.putInt(offset + BORROW_DAY_OFFSET, (int) borrowingRecord.getBorrowDate().toEpochDay());
+            segment.putInt(offset + DUE_DAY_OFFSET, (int) borrowingRecord.getDueDate().toEpochDay());
+            segment.putInt(offset + RETURN_DAY_OFFSET, (int) borrowingRecord.getReturnDate().toEpochDay());
+            segment.putInt(offset + FINE_OFFSET, borrowingRecord.getFine());
+            link(slot);
+            return true;
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean contains(String recordId){
+        lock.readLock().lock();
+        try {
+            return slotOf(recordId) != LongIntHashMap.NO_VALUE;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Returns null if the record is not archived.
+    BorrowingRecordDTO get(String recordId){
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(recordId);
+            return slot == LongIntHashMap.NO_VALUE ? null : decode(slot);
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean remove(String recordId){
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(recordId);
+            if (slot == LongIntHashMap.NO_VALUE) return false;
+            slotsByIdHash.remove(hashOf(recordId.getBytes(StandardCharsets.UTF_8)));
+            unlink(slot);
+            segmentOf(slot).put(offsetOf(slot) + ID_LENGTH_OFFSET, (byte) 0);
+            if (freeSlotCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+            freeSlots[freeSlotCount++] = slot;
+            return true;
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void clear(){
+        lock.writeLock().lock();
+        try {
+            segments.clear();
+            slotsByIdHash.clear();
+            slotsByBorrower.clear();
+            slotsByIsbn.clear();
+            returnedSlots.size = 0;
+            overdueSlots.size = 0;
+            freeSlotCount = 0;
+            allocatedSlots = 0;
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void forEach(Consumer<BorrowingRecordDTO> consumer){
+        List<BorrowingRecordDTO> records = new ArrayList<>();
+        int slot = 0;
+        do {
+            records.clear();
+            slot = page(slot, 1024, records);
+            records.forEach(consumer);
+        } while (!records.isEmpty());
+    }
+
+    /**
+     * Decodes the used slots from the given slot on, in slot order, and at most maxRecords of them.
+     * @return the slot to read the next page from
+     */
+    int page(int fromSlot, int maxRecords, List<BorrowingRecordDTO> records){
+        lock.readLock().lock();
+        try {
+            int slot = fromSlot;
+            for (int decoded = 0; slot < allocatedSlots && decoded < maxRecords; slot++){
+                if (segmentOf(slot).get(offsetOf(slot) + ID_LENGTH_OFFSET) != 0){
+                    records.add(decode(slot));
+                    decoded++;
+                }
+            }
+            return slot;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<BorrowingRecordDTO> findByBorrowerEmail(String email){
+        lock.readLock().lock();
+        try {
+            int borrowerCode = borrowerCodes.find(email);
+            return borrowerCode < 0 || borrowerCode >= slotsByBorrower.size() ? List.of() : decodeAll(slotsByBorrower.get(borrowerCode));
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<BorrowingRecordDTO> findByBookIsbn(long isbn){
+        lock.readLock().lock();
+        try {
+            SlotList isbnSlots = slotsByIsbn.get(isbn);
+            return isbnSlots == null ? List.of() : decodeAll(isbnSlots);
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<BorrowingRecordDTO> findByStatus(BorrowingStatus status){
+        if (status != BorrowingStatus.RETURNED && status != BorrowingStatus.OVERDUE) return List.of();
+        lock.readLock().lock();
+        try {
+            return decodeAll(status == BorrowingStatus.OVERDUE ? overdueSlots : returnedSlots);
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<BorrowingRecordDTO> decodeAll(SlotList slotList){
+        List<BorrowingRecordDTO> records = new ArrayList<>(slotList.size);
+        for (int i = 0; i < slotList.size; i++){
+            records.add(decode(slotList.slots[i]));
+        }
+        return records;
+    }
+
+    // Adds the slot, just written, to the lists of its borrower, book and status.
+    private void link(int slot){
+        ByteBuffer segment = segmentOf(slot);
+        int offset = offsetOf(slot);
+        int borrowerCode = segment.getInt(offset + BORROWER_OFFSET);
+        while (slotsByBorrower.size() <= borrowerCode){
+            slotsByBorrower.add(new SlotList());
+        }
+        borrowerPositions[slot] = slotsByBorrower.get(borrowerCode).add(slot);
+        long isbn = segment.getLong(offset + ISBN_OFFSET);
+        SlotList isbnSlots = slotsByIsbn.get(isbn);
+        if (isbnSlots == null){
+            isbnSlots = new SlotList();
+            slotsByIsbn.put(isbn, isbnSlots);
+        }
+        isbnPositions[slot] = isbnSlots.add(slot);
+        statusPositions[slot] = (statusOf(slot) == BorrowingStatus.OVERDUE ? overdueSlots : returnedSlots).add(slot);
+    }
+
+    // Takes the slot out of the lists of its borrower, book and status, before it is overwritten or freed.
+    private void unlink(int slot){
+        ByteBuffer segment = segmentOf(slot);
+        int offset = offsetOf(slot);
+        slotsByBorrower.get(segment.getInt(offset + BORROWER_OFFSET)).remove(borrowerPositions[slot], borrowerPositions);
+        long isbn = segment.getLong(offset + ISBN_OFFSET);
+        SlotList isbnSlots = slotsByIsbn.get(isbn);
+        isbnSlots.remove(isbnPositions[slot], isbnPositions);
+        if (isbnSlots.size == 0) slotsByIsbn.remove(isbn);
+        (statusOf(slot) == BorrowingStatus.OVERDUE ? overdueSlots : returnedSlots).remove(statusPositions[slot], statusPositions);
+    }
+
+    private BorrowingRecordDTO decode(int slot){
+        ByteBuffer segment = segmentOf(slot);
+        int offset = offsetOf(slot);
+        return new BorrowingRecordDTO(new String(idOf(slot), StandardCharsets.UTF_8),
+                isbnText.apply(segment.getLong(offset + ISBN_OFFSET)),
+                borrowerCodes.decode(segment.getInt(offset + BORROWER_OFFSET)),
+                LocalDate.ofEpochDay(segment.getInt(offset + BORROW_DAY_OFFSET)),
+                LocalDate.ofEpochDay(segment.getInt(offset + DUE_DAY_OFFSET)),
+                LocalDate.ofEpochDay(segment.getInt(offset + RETURN_DAY_OFFSET)),
+                segment.getInt(offset + FINE_OFFSET),
+                statusOf(slot));
+    }
+
+    // Same rule as BorrowingRecord#updateStatus for a returned record.
+    private BorrowingStatus statusOf(int slot){
+        ByteBuffer segment = segmentOf(slot);
+        int offset = offsetOf(slot);
+        return segment.getInt(offset + RETURN_DAY_OFFSET) > segment.getInt(offset + DUE_DAY_OFFSET) ? BorrowingStatus.OVERDUE : BorrowingStatus.RETURNED;
+    }
+
+    private int slotOf(String recordId){
+        byte[] idBytes = recordId.getBytes(StandardCharsets.UTF_8);
+        int slot = slotsByIdHash.get(hashOf(idBytes));
+        return slot != LongIntHashMap.NO_VALUE && Arrays.equals(idOf(slot), idBytes) ? slot : LongIntHashMap.NO_VALUE;
+    }
+
+    private byte[] idOf(int slot){
+        ByteBuffer segment = segmentOf(slot);
+        int offset = offsetOf(slot);
+        byte[] idBytes = new byte[segment.get(offset + ID_LENGTH_OFFSET)];
+        segment.get(offset + ID_OFFSET, idBytes);
+        return idBytes;
+    }
+
+    private int allocateSlot(){
+        if (freeSlotCount > 0) return freeSlots[--freeSlotCount];
+        if (allocatedSlots == segments.size() * SLOTS_PER_SEGMENT){
+            segments.add(ByteBuffer.allocateDirect(SLOTS_PER_SEGMENT * SLOT_SIZE));
+        }
+        if (allocatedSlots == borrowerPositions.length){
+            borrowerPositions = Arrays.copyOf(borrowerPositions, allocatedSlots * 2);
+            isbnPositions = Arrays.copyOf(isbnPositions, allocatedSlots * 2);
+            statusPositions = Arrays.copyOf(statusPositions, allocatedSlots * 2);
+        }
+        return allocatedSlots++;
+    }
+
+    private ByteBuffer segmentOf(int slot){
+        return segments.get(slot / SLOTS_PER_SEGMENT);
+    }
+
+    private static int offsetOf(int slot){
+        return (slot % SLOTS_PER_SEGMENT) * SLOT_SIZE;
+    }
+
+    // 64 bit FNV-1a.
+    private static long hashOf(byte[] idBytes){
+        long hash = 0xcbf29ce484222325L;
+        for (byte idByte : idBytes){
+            hash ^= idByte & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,103 @@
+package com.adanali.library.repository;
+
+import com.adanali.library.dto.BorrowingRecordDTO;
+import com.adanali.library.model.Book;
+import com.adanali.library.model.BorrowingStatus;
+import com.adanali.library.model.Librarian;
+import com.adanali.library.model.Student;
+import com.adanali.library.model.User;
+import com.adanali.library.util.BinaryCodec;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+
+import static com.adanali.library.util.BinarySnapshotUtil.getDate;
+import static com.adanali.library.util.BinarySnapshotUtil.getString;
+import static com.adanali.library.util.BinarySnapshotUtil.putDate;
+import static com.adanali.library.util.BinarySnapshotUtil.putString;
+
+/**
+ * Binary snapshot codecs of the persisted entities. Changing a layout here requires bumping the snapshot format version.
+ */
+final class BinaryCodecs {
+    private static final byte LIBRARIAN = 0;
+    private static final byte STUDENT = 1;
+
+    private BinaryCodecs(){}
+
+    static final BinaryCodec<Book> BOOK = new BinaryCodec<>() {
+        @Override
+        public void encode(Book book, ByteBuffer buffer) {
+            putString(buffer, book.getIsbn());
+            putString(buffer, book.getTitle());
+            putString(buffer, book.getAuthor());
+            putString(buffer, book.getGenre());
+            putDate(buffer, book.getPublicationDate());
+            buffer.putInt(book.getQuantity());
+        }
+
+        @Override
+        public Book decode(ByteBuffer buffer) {
+            return new Book(getString(buffer), getString(buffer), getString(buffer), getString(buffer), getDate(buffer), buffer.getInt());
+        }
+    };
+
+    static final BinaryCodec<User> USER = new BinaryCodec<>() {
+        @Override
+        public void encode(User user, ByteBuffer buffer) {
+            if (user instanceof Student student){
+                buffer.put(STUDENT);
+                putString(buffer, student.getName());
+                putString(buffer, student.getEmail());
+                putString(buffer, student.getPassword());
+                putString(buffer, student.getAddress());
+                buffer.putInt(student.getPendingFine());
+            }else if (user instanceof Librarian librarian){
+                buffer.put(LIBRARIAN);
+                putString(buffer, librarian.getName());
+                putString(buffer, librarian.getEmail());
+                putString(buffer, librarian.getPassword());
+            }else throw new IllegalStateException("Unknown user type : "+user.getClass().getName());
+        }
+
+        @Override
+        public User decode(ByteBuffer buffer) {
+            byte role = buffer.get();
+            if (role == STUDENT){
+                Student student = new Student(getString(buffer), getString(buffer), getString(buffer), getString(buffer));
+                student.addPendingFine(buffer.getInt());
+                return student;
+            }else if (role == LIBRARIAN){
+                return new Librarian(getString(buffer), getString(buffer), getString(buffer));
+            }else throw new IllegalStateException("Unknown user type tag : "+role);
+        }
+    };
+
+    static final BinaryCodec<BorrowingRecordDTO> BORROWING_RECORD = new BinaryCodec<>() {
+        @Override
+        public void encode(BorrowingRecordDTO dto, ByteBuffer buffer) {
+            putString(buffer, dto.getRecordId());
+            putString(buffer, dto.getBookIsbn());
+            putString(buffer, dto.getBorrowerEmail());
+            putDate(buffer, dto.getBorrowDate());
+            putDate(buffer, dto.getDueDate());
+            putDate(buffer, dto.getReturnDate());
+            buffer.putInt(dto.getFine());
+            buffer.put(dto.getStatus() == null ? -1 : (byte) dto.getStatus().ordinal());
+        }
+
+        @Override
+        public BorrowingRecordDTO decode(ByteBuffer buffer) {
+            String recordId = getString(buffer);
+            String bookIsbn = getString(buffer);
+            String borrowerEmail = getString(buffer);
+            LocalDate borrowDate = getDate(buffer);
+            LocalDate dueDate = getDate(buffer);
+            LocalDate returnDate = getDate(buffer);
+            int fine = buffer.getInt();
+            byte status = buffer.get();
+            return new BorrowingRecordDTO(recordId, bookIsbn, borrowerEmail, borrowDate, dueDate, returnDate, fine,
+                    status < 0 ? null : BorrowingStatus.values()[status]);
+        }
+    };
+}
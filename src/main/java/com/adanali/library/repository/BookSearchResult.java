@@ -0,0 +1,40 @@
+package com.adanali.library.repository;
+
+import com.adanali.library.model.Book;
+import com.adanali.library.repository.index.FacetCount;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Books matching a search, with the number of matches per genre, per author and per publication year.
+ */
+public class BookSearchResult {
+    private final List<Book> books;
+    private final Map<String, FacetCount> genreFacets;
+    private final Map<String, FacetCount> authorFacets;
+    private final Map<Integer, FacetCount> yearFacets;
+
+    BookSearchResult(List<Book> books, Map<String, FacetCount> genreFacets, Map<String, FacetCount> authorFacets, Map<Integer, FacetCount> yearFacets) {
+        this.books = books;
+        this.genreFacets = genreFacets;
+        this.authorFacets = authorFacets;
+        this.yearFacets = yearFacets;
+    }
+
+    public List<Book> getBooks() {
+        return books;
+    }
+
+    public Map<String, FacetCount> getGenreFacets() {
+        return genreFacets;
+    }
+
+    public Map<String, FacetCount> getAuthorFacets() {
+        return authorFacets;
+    }
+
+    public Map<Integer, FacetCount> getYearFacets() {
+        return yearFacets;
+    }
+}
@@ -2,29 +2,116 @@ package com.adanali.library.repository;
 
 import com.adanali.library.exceptions.EntityDuplicationException;
 import com.adanali.library.model.Book;
-import com.adanali.library.util.JsonStorageUtil;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.adanali.library.repository.index.CompletionTrie;
+import com.adanali.library.repository.index.FacetCount;
+import com.adanali.library.repository.index.FacetIndex;
+import com.adanali.library.repository.index.FuzzyMatches;
+import com.adanali.library.repository.index.FuzzyTermIndex;
+import com.adanali.library.repository.index.NGramIndex;
+import com.adanali.library.repository.index.RangeIndex;
+import com.adanali.library.repository.index.RankedTermIndex;
+import com.adanali.library.util.LongObjectHashMap;
+import com.adanali.library.util.StringUtil;
+import com.adanali.library.util.StripedLock;
 
 import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 
 public class    BooksRepository implements RepositoryPattern<Book,String>{
-    private Set<Book> bookSet;
-    private final JsonStorageUtil<Book> bookJsonStorge;
+    // Keyed by the ISBN as a number, so the hyphenated and plain forms of an ISBN are the same book.
+    private final LongObjectHashMap<Book> booksByIsbn;
+    // Guards the map, the journal compactor and the flusher read it from their own threads.
+    private final ReadWriteLock catalogLock = new ReentrantReadWriteLock();
+    // Serializes the add, save and remove of the same ISBN, which update the map, the indexes and the storage in several steps.
+    private final StripedLock isbnLocks = new StripedLock(64);
+    private final RepositoryStorage<Book> bookStorage;
+    private final SortedIds sortedIsbns = new SortedIds();
+    private final VersionedSnapshot<Book> allBooks;
+    private final NGramIndex<Book> titleIndex = new NGramIndex<>();
+    // Keyed by author code, see Book.getAuthorCode : every distinct author is indexed once, and a match expands to the books of the author.
+    private final NGramIndex<Integer> authorIndex = new NGramIndex<>();
+    private final Map<Integer, Set<Book>> booksByAuthorCode = new ConcurrentHashMap<>();
+    private final Map<Book, Integer> indexedAuthorCodes = new ConcurrentHashMap<>();
+    private final NGramIndex<Book> genreIndex = new NGramIndex<>();
+    // Title and author terms, a fuzzy query term visits at most 20000 terms of the dictionary and a query gathers at most 10000 books.
+    private final FuzzyTermIndex<Book> fuzzyIndex = new FuzzyTermIndex<>(20_000, 10_000, Comparator.comparing(Book::getIsbn));
+    // Publication dates as epoch days.
+    private final RangeIndex<Book> publicationDateIndex = new RangeIndex<>();
+    // Keyed by genre code, see Book.getGenreCode.
+    private final FacetIndex<Book, Integer> genreFacets = new FacetIndex<>();
+    private final FacetIndex<Book, Integer> yearFacets = new FacetIndex<>();
+    private final FacetIndex<Book, Integer> authorFacets = new FacetIndex<>();
+    private final CompletionTrie<Book> titleCompletions = new CompletionTrie<>();
+    private final CompletionTrie<Book> authorCompletions = new CompletionTrie<>();
+    // Title, author and genre, a term matching the title counts the most.
+    private final RankedTermIndex<Book> rankedIndex = new RankedTermIndex<>(Comparator.comparing(Book::getIsbn), 3.0, 2.0, 1.0);
     private static final String BOOKS_JSON_FILE_PATH = "src\\main\\java\\com\\adanali\\library\\persistence\\Books.json";
+    private static final String BOOKS_BINARY_FILE_PATH = "src\\main\\java\\com\\adanali\\library\\persistence\\Books.bin";
+    private static final String BOOKS_JOURNAL_FILE_PATH = "src\\main\\java\\com\\adanali\\library\\persistence\\Books.journal";
 
     public BooksRepository(){
-        this.bookSet = new HashSet<>();
-        bookJsonStorge = new JsonStorageUtil<>(BOOKS_JSON_FILE_PATH);
+        this(PersistenceConfig.defaults());
+    }
+
+    public BooksRepository(PersistenceConfig persistenceConfig){
+        this.booksByIsbn = new LongObjectHashMap<>();
+        this.allBooks = new VersionedSnapshot<>(this::copyBooks);
+        bookStorage = new RepositoryStorage<>("books", BOOKS_JSON_FILE_PATH, BOOKS_BINARY_FILE_PATH, BOOKS_JOURNAL_FILE_PATH,
+                Book.class, Book::getIsbn, BinaryCodecs.BOOK, persistenceConfig, this::getAll);
         loadBooks();
     }
 
     public void loadBooks(){
         try {
-            bookSet = bookJsonStorge.loadData(new TypeReference<Set<Book>>() {
+            catalogLock.writeLock().lock();
+            try {
+                booksByIsbn.clear();
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+            sortedIsbns.clear();
+            allBooks.invalidate();
+            titleIndex.clear();
+            authorIndex.clear();
+            booksByAuthorCode.clear();
+            indexedAuthorCodes.clear();
+            genreIndex.clear();
+            rankedIndex.clear();
+            fuzzyIndex.clear();
+            publicationDateIndex.clear();
+            genreFacets.clear();
+            yearFacets.clear();
+            authorFacets.clear();
+            titleCompletions.clear();
+            authorCompletions.clear();
+            bookStorage.load(book -> {
+                long isbnKey = StringUtil.parseIsbn(book.getIsbn());
+                Book replaced = putBook(isbnKey, book);
+                if (replaced != null) unindexBook(replaced);
+                sortedIsbns.add(sortKeyOf(isbnKey));
+                allBooks.invalidate();
+                indexBook(book);
+            }, isbn -> {
+                long isbnKey = StringUtil.parseIsbn(isbn);
+                Book removed = removeBook(isbnKey);
+                sortedIsbns.remove(sortKeyOf(isbnKey));
+                if (removed != null) unindexBook(removed);
+                allBooks.invalidate();
             });
         } catch (IOException e) {
             System.out.println(e.getMessage());
@@ -34,53 +121,385 @@ public class    BooksRepository implements RepositoryPattern<Book,String>{
 
     public void saveBooks(){
         try {
-            bookJsonStorge.saveData(bookSet);
+            bookStorage.compact();
+        }catch (IOException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    public void exportToJson(){
+        try {
+            bookStorage.exportJson();
         }catch (IOException e){
             System.out.println(e.getMessage());
         }
     }
 
+    // Persists a change made to a single book and refreshes its entries in the search indexes.
+    public void saveBook(Book book){
+        long isbnKey = StringUtil.parseIsbn(book.getIsbn());
+        Lock isbnLock = isbnLocks.get(isbnKey);
+        isbnLock.lock();
+        try {
+            if (getByIsbn(isbnKey) == book) indexBook(book);
+            bookStorage.put(book);
+        }catch (IOException e){
+            System.out.println(e.getMessage());
+        }finally {
+            isbnLock.unlock();
+        }
+    }
+
     public enum SearchAttribute{
         TITLE, AUTHOR, GENRE, ALL
     }
 
     public List<Book> searchBooks(String query , SearchAttribute attribute){
-        String queryLower = query.toLowerCase();
-
-        return bookSet.stream()
-                .filter(book -> switch (attribute) {
-                    case AUTHOR -> book.getAuthor().toLowerCase().contains(queryLower);
-                    case TITLE -> book.getTitle().toLowerCase().contains(queryLower);
-                    case GENRE -> book.getGenre().toLowerCase().contains(queryLower);
-                    case ALL -> book.getAuthor().toLowerCase().contains(queryLower) ||
-                            book.getTitle().toLowerCase().contains(queryLower) ||
-                            book.getGenre().toLowerCase().contains(queryLower);
-                })
+        Set<Book> matches = switch (attribute) {
+            case AUTHOR -> searchAuthors(query);
+            case TITLE -> titleIndex.search(query);
+            case GENRE -> genreIndex.search(query);
+            case ALL -> {
+                Set<Book> union = searchAuthors(query);
+                union.addAll(titleIndex.search(query));
+                union.addAll(genreIndex.search(query));
+                yield union;
+            }
+        };
+        return List.copyOf(matches);
+    }
+
+    // Books of the authors whose name contains the query.
+    private Set<Book> searchAuthors(String query){
+        Set<Book> matches = new HashSet<>();
+        for (int authorCode : authorIndex.search(query)){
+            matches.addAll(booksByAuthorCode.getOrDefault(authorCode, Set.of()));
+        }
+        return matches;
+    }
+
+    // Books published from the first date to the last one, both inclusive, the oldest first.
+    public List<Book> getBooksPublishedBetween(LocalDate from, LocalDate to){
+        return publicationDateIndex.range(from.toEpochDay(), to.toEpochDay());
+    }
+
+    // Matches of the search published within the dates, the oldest first. The matches are already collected, so they are filtered instead of walking the whole range.
+    public List<Book> searchBooks(String query, SearchAttribute attribute, LocalDate from, LocalDate to){
+        return searchBooks(query, attribute).stream()
+                .filter(book -> !book.getPublicationDate().isBefore(from) && !book.getPublicationDate().isAfter(to))
+                .sorted(Comparator.comparing(Book::getPublicationDate).thenComparing(Book::getIsbn))
                 .toList();
     }
 
+    // Matches of the search, counted per genre, author and publication year while they are collected.
+    public BookSearchResult searchBooksWithFacets(String query, SearchAttribute attribute){
+        List<Book> matches = searchBooks(query, attribute);
+        List<Book> books = new ArrayList<>(matches.size());
+        Map<Integer, int[]> genreCounts = new HashMap<>();
+        Map<Integer, int[]> authorCounts = new HashMap<>();
+        Map<Integer, int[]> yearCounts = new TreeMap<>();
+        for (Book book : matches){
+            books.add(book);
+            int available = book.isAvailableForBorrow() ? 1 : 0;
+            int[] genreCount = genreCounts.computeIfAbsent(book.getGenreCode(), genreCode -> new int[2]);
+            genreCount[0]++;
+            genreCount[1] += available;
+            int[] authorCount = authorCounts.computeIfAbsent(book.getAuthorCode(), authorCode -> new int[2]);
+            authorCount[0]++;
+            authorCount[1] += available;
+            int[] yearCount = yearCounts.computeIfAbsent(book.getPublicationDate().getYear(), year -> new int[2]);
+            yearCount[0]++;
+            yearCount[1] += available;
+        }
+        return new BookSearchResult(List.copyOf(books), byGenre(toFacetCounts(genreCounts)), byAuthor(toFacetCounts(authorCounts)),
+                toFacetCounts(yearCounts));
+    }
+
+    // Number of books and available books per genre across the whole catalog.
+    public Map<String, FacetCount> getGenreFacets(){
+        return byGenre(genreFacets.getCounts());
+    }
+
+    public Map<Integer, FacetCount> getYearFacets(){
+        return yearFacets.getCounts();
+    }
+
+    // Number of books and available books per author across the whole catalog.
+    public Map<String, FacetCount> getAuthorFacets(){
+        return byAuthor(authorFacets.getCounts());
+    }
+
+    // Replaces the genre codes by the genres, sorted by name.
+    private static Map<String, FacetCount> byGenre(Map<Integer, FacetCount> countsByGenreCode){
+        Map<String, FacetCount> countsByGenre = new TreeMap<>();
+        countsByGenreCode.forEach((genreCode, count) -> countsByGenre.put(Book.genreOfCode(genreCode), count));
+        return countsByGenre;
+    }
+
+    // Replaces the author codes by the authors, sorted by name.
+    private static Map<String, FacetCount> byAuthor(Map<Integer, FacetCount> countsByAuthorCode){
+        Map<String, FacetCount> countsByAuthor = new TreeMap<>();
+        countsByAuthorCode.forEach((authorCode, count) -> countsByAuthor.put(Book.authorOfCode(authorCode), count));
+        return countsByAuthor;
+    }
+
+    private static <K> Map<K, FacetCount> toFacetCounts(Map<K, int[]> counts){
+        Map<K, FacetCount> facetCounts = new TreeMap<>();
+        counts.forEach((value, count) -> facetCounts.put(value, new FacetCount(count[0], count[1])));
+        return facetCounts;
+    }
+
+    // Matches of the search in the order of their ISBN, a page at a time. Only the candidates of the n-gram postings are read :
+    // the ones past the cursor are sorted by ISBN, then confirmed in that order until the page and the next match are found.
+    public Page<Book> searchBooks(String query, SearchAttribute attribute, String cursor, int pageSize){
+        if (pageSize <= 0) throw new IllegalArgumentException("Page size should be greater than 0");
+        long lastIsbn = lastIsbnOf(cursor);
+        long[] candidateIsbns = new long[16];
+        int candidateCount = 0;
+        for (Book candidate : candidatesOf(query, attribute)){
+            long isbn = StringUtil.parseIsbn(candidate.getIsbn());
+            if (isbn <= lastIsbn) continue;
+            if (candidateCount == candidateIsbns.length) candidateIsbns = Arrays.copyOf(candidateIsbns, candidateCount * 2);
+            candidateIsbns[candidateCount++] = isbn;
+        }
+        Arrays.sort(candidateIsbns, 0, candidateCount);
+        List<Book> items = new ArrayList<>(pageSize);
+        long lastItemIsbn = lastIsbn;
+        for (int i = 0; i < candidateCount; i++){
+            // A book matching several attributes is a candidate of each.
+            if (i > 0 && candidateIsbns[i] == candidateIsbns[i - 1]) continue;
+            Book book = getByIsbn(candidateIsbns[i]);
+            if (book == null || !matches(book, query, attribute)) continue;
+            if (items.size() == pageSize) return new Page<>(items, Page.encodeCursor(sortKeyOf(lastItemIsbn)));
+            items.add(book);
+            lastItemIsbn = candidateIsbns[i];
+        }
+        return new Page<>(items, null);
+    }
+
+    // Books that may match the search, from the n-gram postings. Authors are candidates by code and expand to their books.
+    private List<Book> candidatesOf(String query, SearchAttribute attribute){
+        return switch (attribute) {
+            case TITLE -> titleIndex.candidates(query);
+            case GENRE -> genreIndex.candidates(query);
+            case AUTHOR -> {
+                List<Book> candidates = new ArrayList<>();
+                for (int authorCode : authorIndex.candidates(query)){
+                    candidates.addAll(booksByAuthorCode.getOrDefault(authorCode, Set.of()));
+                }
+                yield candidates;
+            }
+            case ALL -> {
+                List<Book> candidates = new ArrayList<>(candidatesOf(query, SearchAttribute.TITLE));
+                candidates.addAll(candidatesOf(query, SearchAttribute.AUTHOR));
+                candidates.addAll(candidatesOf(query, SearchAttribute.GENRE));
+                yield candidates;
+            }
+        };
+    }
+
+    private boolean matches(Book book, String query, SearchAttribute attribute){
+        return switch (attribute) {
+            case TITLE -> titleIndex.matches(book, query);
+            case GENRE -> genreIndex.matches(book, query);
+            case AUTHOR -> authorIndex.matches(book.getAuthorCode(), query);
+            case ALL -> matches(book, query, SearchAttribute.TITLE)
+                    || matches(book, query, SearchAttribute.AUTHOR)
+                    || matches(book, query, SearchAttribute.GENRE);
+        };
+    }
+
+    // The ISBN the previous page ended with, or -1 for the first page.
+    private static long lastIsbnOf(String cursor){
+        String lastSortKey = Page.decodeCursor(cursor);
+        if (lastSortKey == null) return -1;
+        try {
+            return Long.parseLong(lastSortKey);
+        }catch (NumberFormatException e){
+            throw new IllegalArgumentException("Invalid page cursor!");
+        }
+    }
+
+    // Best matches for the terms of the query, the most relevant first.
+    public List<Book> searchBooksRanked(String query, int limit){
+        return rankedIndex.search(query, limit);
+    }
+
+    // Books whose title or author matches every term of the query within a couple of typos, the closest first.
+    public FuzzyMatches<Book> searchBooksFuzzy(String query, int limit){
+        return fuzzyIndex.search(query, limit);
+    }
+
+    public List<String> completeTitles(String prefix, int limit){
+        return titleCompletions.complete(prefix, limit);
+    }
+
+    public List<String> completeAuthors(String prefix, int limit){
+        return authorCompletions.complete(prefix, limit);
+    }
+
+    private void indexBook(Book book){
+        titleIndex.index(book, book.getTitle());
+        indexAuthor(book);
+        genreIndex.index(book, book.getGenre());
+        rankedIndex.index(book, book.getTitle(), book.getAuthor(), book.getGenre());
+        fuzzyIndex.index(book, book.getTitle(), book.getAuthor());
+        publicationDateIndex.index(book, book.getPublicationDate().toEpochDay());
+        genreFacets.index(book, book.getGenreCode(), book.isAvailableForBorrow());
+        yearFacets.index(book, book.getPublicationDate().getYear(), book.isAvailableForBorrow());
+        authorFacets.index(book, book.getAuthorCode(), book.isAvailableForBorrow());
+        titleCompletions.index(book, book.getTitle());
+        authorCompletions.index(book, book.getAuthor());
+    }
+
+    private void unindexBook(Book book){
+        titleIndex.remove(book);
+        unindexAuthor(book);
+        genreIndex.remove(book);
+        rankedIndex.remove(book);
+        fuzzyIndex.remove(book);
+        publicationDateIndex.remove(book);
+        genreFacets.remove(book);
+        yearFacets.remove(book);
+        authorFacets.remove(book);
+        titleCompletions.remove(book);
+        authorCompletions.remove(book);
+    }
+
+    // The n-gram index holds an author while at least one book has them. Called under the lock of the book's ISBN.
+    private void indexAuthor(Book book){
+        int authorCode = book.getAuthorCode();
+        Integer previousAuthorCode = indexedAuthorCodes.put(book, authorCode);
+        if (previousAuthorCode != null && previousAuthorCode == authorCode) return;
+        if (previousAuthorCode != null) removeFromAuthor(previousAuthorCode, book);
+        booksByAuthorCode.compute(authorCode, (code, books) -> {
+            if (books == null){
+                books = ConcurrentHashMap.newKeySet();
+                authorIndex.index(code, Book.authorOfCode(code));
+            }
+            books.add(book);
+            return books;
+        });
+    }
+
+    private void unindexAuthor(Book book){
+        Integer authorCode = indexedAuthorCodes.remove(book);
+        if (authorCode != null) removeFromAuthor(authorCode, book);
+    }
+
+    private void removeFromAuthor(int authorCode, Book book){
+        booksByAuthorCode.computeIfPresent(authorCode, (code, books) -> {
+            books.remove(book);
+            if (!books.isEmpty()) return books;
+            authorIndex.remove(code);
+            return null;
+        });
+    }
+
     @Override
     public void add(Book book) throws EntityDuplicationException {
-        if (getById(book.getIsbn()).isEmpty()){
-            bookSet.add(book);
-            saveBooks();
-        }else throw new EntityDuplicationException(book.getClass(),"Book with ISBN ("+book.getIsbn()+") already exists!");
+        long isbnKey = StringUtil.parseIsbn(book.getIsbn());
+        if (isbnKey < 0) throw new IllegalArgumentException("Invalid ISBN format");
+        Lock isbnLock = isbnLocks.get(isbnKey);
+        isbnLock.lock();
+        try {
+            Book existing;
+            catalogLock.writeLock().lock();
+            try {
+                existing = booksByIsbn.putIfAbsent(isbnKey, book);
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+            if (existing == null){
+                sortedIsbns.add(sortKeyOf(isbnKey));
+                allBooks.invalidate();
+                saveBook(book);
+            }else throw new EntityDuplicationException(book.getClass(),"Book with ISBN ("+existing.getIsbn()+") already exists!");
+        }finally {
+            isbnLock.unlock();
+        }
     }
 
     @Override
     public boolean remove(String isbn) {
-        boolean isRemoved = bookSet.removeIf(book -> book.getIsbn().equals(isbn));
-        if (isRemoved) saveBooks();
-        return isRemoved;
+        long isbnKey = StringUtil.parseIsbn(isbn);
+        Lock isbnLock = isbnLocks.get(isbnKey);
+        isbnLock.lock();
+        try {
+            Book removed = removeBook(isbnKey);
+            boolean isRemoved = removed != null;
+            if (isRemoved) {
+                sortedIsbns.remove(sortKeyOf(isbnKey));
+                allBooks.invalidate();
+                unindexBook(removed);
+                try {
+                    bookStorage.remove(removed.getIsbn());
+                }catch (IOException e){
+                    System.out.println(e.getMessage());
+                }
+            }
+            return isRemoved;
+        }finally {
+            isbnLock.unlock();
+        }
     }
 
     @Override
     public Optional<Book> getById(String isbn) {
-        return bookSet.stream().filter(book -> book.getIsbn().equals(isbn)).findFirst();
+        return Optional.ofNullable(getByIsbn(StringUtil.parseIsbn(isbn)));
+    }
+
+    // Lookup by the ISBN as returned by StringUtil.parseIsbn, without allocating. Returns null if there is no such book.
+    public Book getByIsbn(long isbn){
+        if (isbn < 0) return null;
+        catalogLock.readLock().lock();
+        try {
+            return booksByIsbn.get(isbn);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
     }
 
     @Override
     public List<Book> getAll() {
-        return List.copyOf(bookSet);
+        return allBooks.get();
+    }
+
+    @Override
+    public Page<Book> getPage(String cursor, int pageSize, Predicate<Book> filter) {
+        return sortedIsbns.page(cursor, pageSize, sortKey -> getByIsbn(Long.parseLong(sortKey)), filter);
+    }
+
+    private Book putBook(long isbn, Book book){
+        catalogLock.writeLock().lock();
+        try {
+            return booksByIsbn.put(isbn, book);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    private Book removeBook(long isbn){
+        if (isbn < 0) return null;
+        catalogLock.writeLock().lock();
+        try {
+            return booksByIsbn.remove(isbn);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    private List<Book> copyBooks(){
+        catalogLock.readLock().lock();
+        try {
+            return booksByIsbn.values();
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    // ISBN-13s all have 13 digits, so their decimal strings sort like the numbers and the pages follow the ISBN order.
+    private static String sortKeyOf(long isbn){
+        return Long.toString(isbn);
     }
 }
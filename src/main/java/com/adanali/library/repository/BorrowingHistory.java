@@ -0,0 +1,178 @@
+package com.adanali.library.repository;
+
+import com.adanali.library.model.BorrowingRecord;
+import com.adanali.library.model.BorrowingStatus;
+import com.adanali.library.model.User;
+import com.adanali.library.util.StringDictionary;
+import com.adanali.library.util.StringUtil;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Columnar copy of the borrowing records for reports : one primitive array per attribute, a row per record.
+ * Dates are epoch days, the status is its ordinal, and the book and borrower are dense codes instead of references,
+ * so a scan reads a few contiguous arrays instead of chasing the objects of every record.
+ */
+public class BorrowingHistory {
+    public static final int NO_DATE = Integer.MIN_VALUE;
+    private static final BorrowingStatus[] STATUSES = BorrowingStatus.values();
+
+    // Visits the attributes of one row, see BorrowingHistory#scan.
+    public interface RowVisitor {
+        void visit(int borrowDay, int dueDay, int returnDay, BorrowingStatus status, int fine, int bookCode, int borrowerCode);
+    }
+
+    private final StringDictionary bookCodes = new StringDictionary();
+    private final StringDictionary borrowerCodes = new StringDictionary();
+    private final Map<String, Integer> rowsByRecordId = new HashMap<>();
+    private String[] recordIds = new String[16];
+    private int[] borrowDays = new int[16];
+    private int[] dueDays = new int[16];
+    private int[] returnDays = new int[16];
+    private byte[] statuses = new byte[16];
+    private int[] fines = new int[16];
+    private int[] bookRefs = new int[16];
+    private int[] borrowerRefs = new int[16];
+    private int size;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Adds the record, or overwrites its row with its current state.
+    void upsert(BorrowingRecord borrowingRecord){
+        int bookCode = bookCodes.encode(Long.toString(StringUtil.parseIsbn(borrowingRecord.getBorrowedBook().getIsbn())));
+        int borrowerCode = borrowerCodes.encode(((User) borrowingRecord.getBorrower()).getEmail());
+        lock.writeLock().lock();
+        try {
+            Integer row = rowsByRecordId.get(borrowingRecord.getRecordId());
+            if (row == null){
+                if (size == borrowDays.length) grow();
+                row = size++;
+                rowsByRecordId.put(borrowingRecord.getRecordId(), row);
+                recordIds[row] = borrowingRecord.getRecordId();
+            }
+            borrowDays[row] = (int) borrowingRecord.getBorrowDate().toEpochDay();
+            dueDays[row] = (int) borrowingRecord.getDueDate().toEpochDay();
+            returnDays[row] = borrowingRecord.getReturnDate() == null ? NO_DATE : (int) borrowingRecord.getReturnDate().toEpochDay();
+            statuses[row] = (byte) borrowingRecord.getStatus().ordinal();
+            fines[row] = borrowingRecord.getFine();
+            bookRefs[row] = bookCode;
+            borrowerRefs[row] = borrowerCode;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Moves the last row into the row of the removed record, so the columns stay dense.
+    void remove(String recordId){
+        lock.writeLock().lock();
+        try {
+            Integer row = rowsByRecordId.remove(recordId);
+            if (row == null) return;
+            int lastRow = --size;
+            if (row != lastRow){
+                recordIds[row] = recordIds[lastRow];
+                borrowDays[row] = borrowDays[lastRow];
+                dueDays[row] = dueDays[lastRow];
+                returnDays[row] = returnDays[lastRow];
+                statuses[row] = statuses[lastRow];
+                fines[row] = fines[lastRow];
+                bookRefs[row] = bookRefs[lastRow];
+                borrowerRefs[row] = borrowerRefs[lastRow];
+                rowsByRecordId.put(recordIds[row], row);
+            }
+            recordIds[lastRow] = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void clear(){
+        lock.writeLock().lock();
+        try {
+            rowsByRecordId.clear();
+            Arrays.fill(recordIds, null);
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size(){
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Visits every row, in no particular order. Books and borrowers are given as codes, see bookOfCode and borrowerOfCode.
+    public void scan(RowVisitor visitor){
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < size; row++){
+                visitor.visit(borrowDays[row], dueDays[row], returnDays[row], STATUSES[statuses[row]], fines[row], bookRefs[row], borrowerRefs[row]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Counts and fine totals of the whole history in a single pass over the columns.
+    public BorrowingStatistics summarize(LocalDate today){
+        int todayDay = (int) today.toEpochDay();
+        int[] countsByStatus = new int[STATUSES.length];
+        long totalFines = 0;
+        int openLoans = 0;
+        int overdueOpenLoans = 0;
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < size; row++){
+                countsByStatus[statuses[row]]++;
+                totalFines += fines[row];
+                if (returnDays[row] == NO_DATE){
+                    openLoans++;
+                    if (dueDays[row] < todayDay) overdueOpenLoans++;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new BorrowingStatistics(countsByStatus, totalFines, openLoans, overdueOpenLoans);
+    }
+
+    // Code of the book in the rows, or -1 if it has never been borrowed.
+    public int bookCodeOf(String isbn){
+        return bookCodes.find(Long.toString(StringUtil.parseIsbn(isbn)));
+    }
+
+    public int borrowerCodeOf(String email){
+        return borrowerCodes.find(email);
+    }
+
+    // ISBN of a book code, as its 13 digits.
+    public String bookOfCode(int bookCode){
+        return bookCodes.decode(bookCode);
+    }
+
+    // E-mail of a borrower code.
+    public String borrowerOfCode(int borrowerCode){
+        return borrowerCodes.decode(borrowerCode);
+    }
+
+    private void grow(){
+        int capacity = borrowDays.length * 2;
+        recordIds = Arrays.copyOf(recordIds, capacity);
+        borrowDays = Arrays.copyOf(borrowDays, capacity);
+        dueDays = Arrays.copyOf(dueDays, capacity);
+        returnDays = Arrays.copyOf(returnDays, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        fines = Arrays.copyOf(fines, capacity);
+        bookRefs = Arrays.copyOf(bookRefs, capacity);
+        borrowerRefs = Arrays.copyOf(borrowerRefs, capacity);
+    }
+}
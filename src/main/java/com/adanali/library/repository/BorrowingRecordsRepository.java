@@ -5,36 +5,224 @@ import com.adanali.library.exceptions.EntityDuplicationException;
 import com.adanali.library.model.Book;
 import com.adanali.library.model.Borrower;
 import com.adanali.library.model.BorrowingRecord;
+import com.adanali.library.model.BorrowingStatus;
 import com.adanali.library.model.User;
-import com.adanali.library.util.JsonStorageUtil;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.adanali.library.util.LongObjectHashMap;
+import com.adanali.library.util.StringUtil;
+import com.adanali.library.util.StripedLock;
 
 import java.io.IOException;
-import java.util.HashSet;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 
-public class BorrowingRecordsRepository implements RepositoryPattern<BorrowingRecord, String>{
-    private Set<BorrowingRecord> borrowingRecordSet;
-    private final JsonStorageUtil<BorrowingRecordDTO> borrowingRecordsDTOJsonStorage;
+public class BorrowingRecordsRepository implements RepositoryPattern<BorrowingRecord, String>, AutoCloseable {
+    private final Map<String, BorrowingRecord> borrowingRecordsById;
+    // Secondary indexes, kept in step with borrowingRecordsById by indexRecord/unindexRecord/reindexStatus.
+    private final Map<String, Set<BorrowingRecord>> recordsByBorrowerEmail;
+    // Keyed by the ISBN as a number, see StringUtil.parseIsbn, without boxing it. The map is guarded by bookIndexLock, its sets are concurrent.
+    private final LongObjectHashMap<Set<BorrowingRecord>> recordsByBookIsbn;
+    private final ReadWriteLock bookIndexLock = new ReentrantReadWriteLock();
+    private final Map<BorrowingStatus, Set<BorrowingRecord>> recordsByStatus;
+    // Records not returned yet, ordered by due date (epoch day).
+    private final ConcurrentSkipListMap<Long, Set<BorrowingRecord>> openRecordsByDueDay;
+    // Closed records, moved out of the map and the indexes above. Their ids stay in sortedRecordIds and their rows in history.
+    private final ArchivedRecordStore archivedRecords;
+    private final SortedIds sortedRecordIds = new SortedIds();
+    // Serializes the add, save, archiving and remove of the same record, which update the map, the indexes and the storage in several steps.
+    private final StripedLock recordLocks = new StripedLock(64);
+    // Serializes the changes to the records and the pending fine of a borrower, taken before any record lock.
+    private final StripedLock borrowerLocks = new StripedLock(64);
+    private final BorrowingHistory history = new BorrowingHistory();
+    private final VersionedSnapshot<BorrowingRecord> allRecords;
+    // One daemon thread sweeps the records of every repository, a closed repository cancels its next sweep.
+    private static final ScheduledExecutorService OVERDUE_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "overdue-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Clock clock;
+    private ScheduledFuture<?> nextOverdueSweep;
+    private boolean closed;
+    private long lastOverdueSweepDay = Long.MIN_VALUE;
+    private final RepositoryStorage<BorrowingRecordDTO> borrowingRecordsDTOStorage;
     private final String BORROWING_RECORDS_JSON_FILE_PATH = "src\\main\\java\\com\\adanali\\library\\persistence\\BorrowingRecords.json";
+    private final String BORROWING_RECORDS_BINARY_FILE_PATH = "src\\main\\java\\com\\adanali\\library\\persistence\\BorrowingRecords.bin";
+    private final String BORROWING_RECORDS_JOURNAL_FILE_PATH = "src\\main\\java\\com\\adanali\\library\\persistence\\BorrowingRecords.journal";
     private final UsersRepository usersRepository;
     private final BooksRepository booksRepository;
 
     public BorrowingRecordsRepository(UsersRepository usersRepository, BooksRepository booksRepository){
-        borrowingRecordSet = new HashSet<>();
-        borrowingRecordsDTOJsonStorage = new JsonStorageUtil<>(BORROWING_RECORDS_JSON_FILE_PATH);
+        this(usersRepository, booksRepository, PersistenceConfig.defaults());
+    }
+
+    public BorrowingRecordsRepository(UsersRepository usersRepository, BooksRepository booksRepository, PersistenceConfig persistenceConfig){
+        this(usersRepository, booksRepository, persistenceConfig, Clock.systemDefaultZone());
+    }
+
+    // The clock tells the overdue sweep what day it is.
+    public BorrowingRecordsRepository(UsersRepository usersRepository, BooksRepository booksRepository, PersistenceConfig persistenceConfig, Clock clock){
+        this.clock = clock;
+        // Concurrent map, because the journal compactor and the flusher read it from their own threads.
+        borrowingRecordsById = new ConcurrentHashMap<>();
+        allRecords = new VersionedSnapshot<>(this::copyRecords);
+        archivedRecords = new ArchivedRecordStore(this::isbnTextOf);
+        recordsByBorrowerEmail = new ConcurrentHashMap<>();
+        recordsByBookIsbn = new LongObjectHashMap<>();
+        recordsByStatus = new EnumMap<>(BorrowingStatus.class);
+        for (BorrowingStatus status : BorrowingStatus.values()){
+            recordsByStatus.put(status, ConcurrentHashMap.newKeySet());
+        }
+        openRecordsByDueDay = new ConcurrentSkipListMap<>();
+        borrowingRecordsDTOStorage = new RepositoryStorage<>("borrowing-records", BORROWING_RECORDS_JSON_FILE_PATH, BORROWING_RECORDS_BINARY_FILE_PATH,
+                BORROWING_RECORDS_JOURNAL_FILE_PATH, BorrowingRecordDTO.class, BorrowingRecordDTO::getRecordId, BinaryCodecs.BORROWING_RECORD, persistenceConfig,
+                this::copyRecordDtos);
         this.usersRepository = usersRepository;
         this.booksRepository = booksRepository;
         loadBorrowingRecords();
+        synchronized (this){
+            nextOverdueSweep = OVERDUE_SCHEDULER.schedule(this::runScheduledSweep, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Flips to OVERDUE the open records whose due date has passed since the previous sweep, charging their fines.
+     * Only the slice of the due-date index between the two sweeps is read, and a second sweep on the same day does nothing.
+     * Runs every midnight on its own, call it to sweep straight away.
+     * @return the number of records flipped to OVERDUE
+     */
+    public synchronized int sweepOverdueRecords(){
+        LocalDate today = LocalDate.now(clock);
+        long todayEpochDay = today.toEpochDay();
+        if (todayEpochDay <= lastOverdueSweepDay) return 0;
+        Map<Long, Set<BorrowingRecord>> newlyDue = lastOverdueSweepDay == Long.MIN_VALUE
+                ? openRecordsByDueDay.headMap(todayEpochDay, false)
+                : openRecordsByDueDay.subMap(lastOverdueSweepDay, true, todayEpochDay, false);
+        List<BorrowingRecord> dueRecords = newlyDue.values().stream()
+                .flatMap(Set::stream)
+                .filter(borrowingRecord -> borrowingRecord.getStatus() == BorrowingStatus.ACTIVE)
+                .toList();
+        int flipped = 0;
+        for (BorrowingRecord borrowingRecord : dueRecords){
+            if (markOverdue(borrowingRecord, today)) flipped++;
+        }
+        lastOverdueSweepDay = todayEpochDay;
+        return flipped;
+    }
+
+    // Sweeps, then schedules the next sweep for the coming midnight. A sweep firing before the date has changed does nothing
+    // and is simply scheduled again for the start of the next day.
+    private void runScheduledSweep(){
+        try {
+            sweepOverdueRecords();
+        } catch (RuntimeException e) {
+            System.out.println("Overdue sweep failed : "+e.getMessage());
+        } finally {
+            // Zoned, so a day shortened or lengthened by a DST change is still measured to its real start.
+            ZonedDateTime now = ZonedDateTime.now(clock);
+            ZonedDateTime nextDay = now.toLocalDate().plusDays(1).atStartOfDay(now.getZone());
+            long millisToNextDay = Math.max(0, Duration.between(now, nextDay).toMillis());
+            synchronized (this){
+                if (!closed) nextOverdueSweep = OVERDUE_SCHEDULER.schedule(this::runScheduledSweep, millisToNextDay + 1, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // Cancels the next overdue sweep, so the shared scheduler no longer holds on to the repository.
+    @Override
+    public synchronized void close(){
+        closed = true;
+        nextOverdueSweep.cancel(false);
+    }
+
+    // Updating the status also charges the fine to the borrower, so both are saved. Holds the borrower lock like a return does,
+    // so a return racing the sweep cannot charge or refund the fine twice.
+    private boolean markOverdue(BorrowingRecord borrowingRecord, LocalDate today){
+        Lock borrowerLock = getBorrowerLock(borrowerEmailOf(borrowingRecord));
+        borrowerLock.lock();
+        try {
+            if (borrowingRecord.getReturnDate() != null) return false;
+            borrowingRecord.updateStatus(today);
+            saveBorrowingRecord(borrowingRecord);
+            if (borrowingRecord.getBorrower() instanceof User user){
+                usersRepository.saveUser(user);
+            }
+            return borrowingRecord.getStatus() == BorrowingStatus.OVERDUE;
+        }finally {
+            borrowerLock.unlock();
+        }
+    }
+
+    // The lock of the borrower, for the service changing their records and pending fine.
+    public Lock getBorrowerLock(String email){
+        return borrowerLocks.get(email);
     }
 
     public void loadBorrowingRecords(){
         try {
-            Set<BorrowingRecordDTO> borrowingRecordsDTOSet = borrowingRecordsDTOJsonStorage.loadData(new TypeReference<Set<BorrowingRecordDTO>>() {});
-            borrowingRecordSet = borrowingRecordsDTOSet.stream().map(this::fromDto).collect(Collectors.toSet());
+            borrowingRecordsById.clear();
+            recordsByBorrowerEmail.clear();
+            bookIndexLock.writeLock().lock();
+            try {
+                recordsByBookIsbn.clear();
+            } finally {
+                bookIndexLock.writeLock().unlock();
+            }
+            recordsByStatus.values().forEach(Set::clear);
+            openRecordsByDueDay.clear();
+            sortedRecordIds.clear();
+            history.clear();
+            archivedRecords.clear();
+            allRecords.invalidate();
+            // The journal replays the records of a removed book or user before their removal, so a record whose book or user
+            // is missing is only reported if no later entry removes it.
+            Map<String, String> unresolvedRecords = new HashMap<>();
+            borrowingRecordsDTOStorage.load(dto -> {
+                BorrowingRecord borrowingRecord;
+                try {
+                    borrowingRecord = fromDto(dto);
+                }catch (IllegalStateException e){
+                    unresolvedRecords.put(dto.getRecordId(), e.getMessage());
+                    return;
+                }
+                unresolvedRecords.remove(dto.getRecordId());
+                BorrowingRecord replacedRecord = borrowingRecordsById.put(borrowingRecord.getRecordId(), borrowingRecord);
+                if (replacedRecord != null) unindexRecord(replacedRecord);
+                archivedRecords.remove(borrowingRecord.getRecordId());
+                indexRecord(borrowingRecord);
+                archiveIfClosed(borrowingRecord);
+            }, recordId -> {
+                unresolvedRecords.remove(recordId);
+                removeRecord(recordId);
+            });
+            unresolvedRecords.forEach((recordId, message) -> System.out.println("Skipped the borrowing record "+recordId+" : "+message));
+            // Records are restored without touching the fines, so a record replayed several times is only charged once, here.
+            borrowingRecordsById.values().stream()
+                    .filter(borrowingRecord -> borrowingRecord.getReturnDate() == null)
+                    .forEach(borrowingRecord -> {
+                        borrowingRecord.updateStatus();
+                        history.upsert(borrowingRecord);
+                    });
         } catch (IOException e) {
             System.out.println(e.getMessage());
             if (e.getCause() != null) System.out.println(e.getCause().getMessage());
@@ -43,14 +231,276 @@ public class BorrowingRecordsRepository implements RepositoryPattern<BorrowingRe
 
     public void saveBorrowingRecords(){
         try {
-            Set<BorrowingRecordDTO> borrowingRecordsDTOSet = borrowingRecordSet.stream().map(this::toDto).collect(Collectors.toSet());
-            borrowingRecordsDTOJsonStorage.saveData(borrowingRecordsDTOSet);
+            borrowingRecordsDTOStorage.compact();
+        }catch (IOException e){
+            System.out.println(e.getMessage());
+            if (e.getCause() != null) System.out.println(e.getCause().getMessage());
+        }
+    }
+
+    public void exportToJson(){
+        try {
+            borrowingRecordsDTOStorage.exportJson();
         }catch (IOException e){
             System.out.println(e.getMessage());
             if (e.getCause() != null) System.out.println(e.getCause().getMessage());
         }
     }
 
+    // Persists a change made to a single borrowing record, moving it to the indexes of its current status and return state.
+    // A record closed by the change is archived, and a decoded copy of an archived record overwrites its slot.
+    public void saveBorrowingRecord(BorrowingRecord borrowingRecord){
+        Lock recordLock = recordLocks.get(borrowingRecord.getRecordId());
+        recordLock.lock();
+        try {
+            reindexStatus(borrowingRecord);
+            if (borrowingRecord.getReturnDate() != null) removeFromDueIndex(borrowingRecord);
+            boolean isHeld = borrowingRecordsById.get(borrowingRecord.getRecordId()) == borrowingRecord;
+            boolean isArchived = !isHeld && archivedRecords.contains(borrowingRecord.getRecordId());
+            if (isHeld || isArchived) history.upsert(borrowingRecord);
+            try {
+                borrowingRecordsDTOStorage.put(toDto(borrowingRecord));
+            }catch (IOException e){
+                System.out.println(e.getMessage());
+                if (e.getCause() != null) System.out.println(e.getCause().getMessage());
+            }
+            if (isHeld){
+                archiveIfClosed(borrowingRecord);
+            }else if (isArchived && archivedRecords.put(borrowingRecord)){
+                allRecords.invalidate();
+            }
+        }finally {
+            recordLock.unlock();
+        }
+    }
+
+    // Archives the returned records of a borrower once their pending fine is paid off.
+    public void archiveClosedRecordsOf(String email){
+        recordsByBorrowerEmail.getOrDefault(email, Set.of()).stream()
+                .filter(borrowingRecord -> borrowingRecord.getReturnDate() != null)
+                .toList()
+                .forEach(this::archiveIfClosed);
+    }
+
+    // Closed : returned, and either no fine was charged or the borrower has paid all of it.
+    private static boolean isClosed(BorrowingRecord borrowingRecord){
+        return borrowingRecord.getReturnDate() != null
+                && (borrowingRecord.getFine() == 0 || borrowingRecord.getBorrower().getPendingFine() == 0);
+    }
+
+    // Written to the archive before leaving the map, so a concurrent compaction sees the record in one of them.
+    private void archiveIfClosed(BorrowingRecord borrowingRecord){
+        Lock recordLock = recordLocks.get(borrowingRecord.getRecordId());
+        recordLock.lock();
+        try {
+            if (isClosed(borrowingRecord) && borrowingRecordsById.get(borrowingRecord.getRecordId()) == borrowingRecord
+                    && archivedRecords.put(borrowingRecord)){
+                borrowingRecordsById.remove(borrowingRecord.getRecordId());
+                removeFromLookupIndexes(borrowingRecord);
+                allRecords.invalidate();
+            }
+        }finally {
+            recordLock.unlock();
+        }
+    }
+
+    private boolean removeRecord(String recordId){
+        Lock recordLock = recordLocks.get(recordId);
+        recordLock.lock();
+        try {
+            BorrowingRecord removedRecord = borrowingRecordsById.remove(recordId);
+            if (removedRecord != null){
+                unindexRecord(removedRecord);
+                return true;
+            }else if (archivedRecords.remove(recordId)){
+                sortedRecordIds.remove(recordId);
+                history.remove(recordId);
+                allRecords.invalidate();
+                return true;
+            }else return false;
+        }finally {
+            recordLock.unlock();
+        }
+    }
+
+    private void indexRecord(BorrowingRecord borrowingRecord){
+        sortedRecordIds.add(borrowingRecord.getRecordId());
+        allRecords.invalidate();
+        history.upsert(borrowingRecord);
+        recordsByBorrowerEmail.computeIfAbsent(borrowerEmailOf(borrowingRecord), email -> ConcurrentHashMap.newKeySet()).add(borrowingRecord);
+        addToBookIndex(borrowingRecord);
+        recordsByStatus.get(borrowingRecord.getStatus()).add(borrowingRecord);
+        if (borrowingRecord.getReturnDate() == null){
+            openRecordsByDueDay.computeIfAbsent(borrowingRecord.getDueDate().toEpochDay(), day -> ConcurrentHashMap.newKeySet()).add(borrowingRecord);
+        }
+    }
+
+    private void unindexRecord(BorrowingRecord borrowingRecord){
+        sortedRecordIds.remove(borrowingRecord.getRecordId());
+        allRecords.invalidate();
+        history.remove(borrowingRecord.getRecordId());
+        removeFromLookupIndexes(borrowingRecord);
+    }
+
+    private void removeFromLookupIndexes(BorrowingRecord borrowingRecord){
+        removeFromIndex(recordsByBorrowerEmail, borrowerEmailOf(borrowingRecord), borrowingRecord);
+        removeFromBookIndex(borrowingRecord);
+        recordsByStatus.values().forEach(records -> records.remove(borrowingRecord));
+        removeFromDueIndex(borrowingRecord);
+    }
+
+    private void addToBookIndex(BorrowingRecord borrowingRecord){
+        long isbn = isbnOf(borrowingRecord);
+        bookIndexLock.writeLock().lock();
+        try {
+            Set<BorrowingRecord> records = recordsByBookIsbn.get(isbn);
+            if (records == null){
+                records = ConcurrentHashMap.newKeySet();
+                recordsByBookIsbn.put(isbn, records);
+            }
+            records.add(borrowingRecord);
+        } finally {
+            bookIndexLock.writeLock().unlock();
+        }
+    }
+
+    private void removeFromBookIndex(BorrowingRecord borrowingRecord){
+        long isbn = isbnOf(borrowingRecord);
+        bookIndexLock.writeLock().lock();
+        try {
+            Set<BorrowingRecord> records = recordsByBookIsbn.get(isbn);
+            if (records != null && records.remove(borrowingRecord) && records.isEmpty()) recordsByBookIsbn.remove(isbn);
+        } finally {
+            bookIndexLock.writeLock().unlock();
+        }
+    }
+
+    // The records of the book held on the heap.
+    private Set<BorrowingRecord> recordsOfBook(long isbn){
+        bookIndexLock.readLock().lock();
+        try {
+            Set<BorrowingRecord> records = recordsByBookIsbn.get(isbn);
+            return records != null ? records : Set.of();
+        } finally {
+            bookIndexLock.readLock().unlock();
+        }
+    }
+
+    private void removeFromDueIndex(BorrowingRecord borrowingRecord){
+        openRecordsByDueDay.computeIfPresent(borrowingRecord.getDueDate().toEpochDay(), (day, records) -> {
+            records.remove(borrowingRecord);
+            return records.isEmpty() ? null : records;
+        });
+    }
+
+    private void reindexStatus(BorrowingRecord borrowingRecord){
+        if (!borrowingRecordsById.containsKey(borrowingRecord.getRecordId())) return;
+        for (Map.Entry<BorrowingStatus, Set<BorrowingRecord>> statusEntry : recordsByStatus.entrySet()){
+            if (statusEntry.getKey() == borrowingRecord.getStatus()){
+                statusEntry.getValue().add(borrowingRecord);
+            }else statusEntry.getValue().remove(borrowingRecord);
+        }
+    }
+
+    private static <K> void removeFromIndex(Map<K, Set<BorrowingRecord>> index, K key, BorrowingRecord borrowingRecord){
+        index.computeIfPresent(key, (k, records) -> {
+            records.remove(borrowingRecord);
+            return records.isEmpty() ? null : records;
+        });
+    }
+
+    private static long isbnOf(BorrowingRecord borrowingRecord){
+        return StringUtil.parseIsbn(borrowingRecord.getBorrowedBook().getIsbn());
+    }
+
+    // The ISBN as the book has it, the archive only keeps its number.
+    private String isbnTextOf(long isbn){
+        Book book = booksRepository.getByIsbn(isbn);
+        return book != null ? book.getIsbn() : Long.toString(isbn);
+    }
+
+    private static String borrowerEmailOf(BorrowingRecord borrowingRecord){
+        if (borrowingRecord.getBorrower() instanceof User user){
+            return user.getEmail();
+        }else throw new IllegalStateException("Borrower is not a User"); // Unreachable
+    }
+
+    // Columnar copy of every record, for reports scanning the whole history.
+    public BorrowingHistory getHistory(){
+        return history;
+    }
+
+    public List<BorrowingRecord> getByBorrowerEmail(String email){
+        return withArchived(recordsByBorrowerEmail.getOrDefault(email, Set.of()), archivedRecords.findByBorrowerEmail(email));
+    }
+
+    public List<BorrowingRecord> getByBookIsbn(String isbn){
+        long isbnKey = StringUtil.parseIsbn(isbn);
+        return withArchived(recordsOfBook(isbnKey), archivedRecords.findByBookIsbn(isbnKey));
+    }
+
+    public List<BorrowingRecord> getByStatus(BorrowingStatus status){
+        return withArchived(recordsByStatus.get(status), archivedRecords.findByStatus(status));
+    }
+
+    private List<BorrowingRecord> withArchived(Collection<BorrowingRecord> heldRecords, List<BorrowingRecordDTO> archivedDtos){
+        List<BorrowingRecord> records = new ArrayList<>(heldRecords);
+        archivedDtos.forEach(dto -> records.add(fromDto(dto)));
+        return List.copyOf(records);
+    }
+
+    // Only the records held on the heap are copied into the snapshot, the archived ones are decoded by getAll.
+    private List<BorrowingRecord> copyRecords(){
+        return new ArrayList<>(borrowingRecordsById.values());
+    }
+
+    private List<BorrowingRecordDTO> copyRecordDtos(){
+        List<BorrowingRecordDTO> dtos = new ArrayList<>(borrowingRecordsById.values().stream().map(this::toDto).toList());
+        archivedRecords.forEach(dtos::add);
+        return dtos;
+    }
+
+    // Range read over the due-date index : the records not returned yet whose due date is before the given date.
+    public List<BorrowingRecord> getOpenRecordsDueBefore(LocalDate date){
+        return openRecordsByDueDay.headMap(date.toEpochDay(), false).values().stream()
+                .flatMap(Set::stream)
+                .toList();
+    }
+
+    // Finds the record of a book the borrower has not returned yet, ACTIVE or already OVERDUE.
+    // Only walks the records of the borrower, which are far fewer than the records of a popular book.
+    public Optional<BorrowingRecord> findOpenRecord(String email, String isbn){
+        long isbnKey = StringUtil.parseIsbn(isbn);
+        return recordsByBorrowerEmail.getOrDefault(email, Set.of()).stream()
+                .filter(borrowingRecord -> borrowingRecord.getReturnDate() == null && isbnOf(borrowingRecord) == isbnKey)
+                .findFirst();
+    }
+
+    public boolean hasOpenRecordsForBook(String isbn){
+        return recordsOfBook(StringUtil.parseIsbn(isbn)).stream()
+                .anyMatch(borrowingRecord -> borrowingRecord.getReturnDate() == null);
+    }
+
+    public boolean hasOpenRecordsForBorrower(String email){
+        return recordsByBorrowerEmail.getOrDefault(email, Set.of()).stream()
+                .anyMatch(borrowingRecord -> borrowingRecord.getReturnDate() == null);
+    }
+
+    // Deletes every record of a book, held or archived, so none is left referring to the book once it is removed.
+    public void removeByBookIsbn(String isbn){
+        long isbnKey = StringUtil.parseIsbn(isbn);
+        List<String> recordIds = new ArrayList<>(recordsOfBook(isbnKey).stream().map(BorrowingRecord::getRecordId).toList());
+        archivedRecords.findByBookIsbn(isbnKey).forEach(dto -> recordIds.add(dto.getRecordId()));
+        recordIds.forEach(this::remove);
+    }
+
+    // Deletes every record of a borrower, held or archived, so none is left referring to the user once they are removed.
+    public void removeByBorrowerEmail(String email){
+        List<String> recordIds = new ArrayList<>(recordsByBorrowerEmail.getOrDefault(email, Set.of()).stream().map(BorrowingRecord::getRecordId).toList());
+        archivedRecords.findByBorrowerEmail(email).forEach(dto -> recordIds.add(dto.getRecordId()));
+        recordIds.forEach(this::remove);
+    }
+
     private BorrowingRecordDTO toDto(BorrowingRecord borrowingRecord){
         if (borrowingRecord.getBorrower() instanceof User user){
             return new BorrowingRecordDTO(borrowingRecord.getRecordId(),
@@ -65,38 +515,73 @@ public class BorrowingRecordsRepository implements RepositoryPattern<BorrowingRe
     }
 
     private BorrowingRecord fromDto(BorrowingRecordDTO dto) {
-        Book book = booksRepository.getById(dto.getBookIsbn())
-                .orElseThrow(() -> new IllegalStateException("Referenced book not found for ISBN: " + dto.getBookIsbn()));
+        Book book = booksRepository.getByIsbn(StringUtil.parseIsbn(dto.getBookIsbn()));
+        if (book == null) throw new IllegalStateException("Referenced book not found for ISBN: " + dto.getBookIsbn());
         User user = usersRepository.getById(dto.getBorrowerEmail())
                 .orElseThrow(() -> new IllegalStateException("Referenced user not found for E-mail: " + dto.getBorrowerEmail()));
         if (user instanceof Borrower borrower){
-            return new BorrowingRecord(dto.getRecordId(), book, borrower, dto.getBorrowDate(), dto.getDueDate(),dto.getReturnDate(), dto.getFine());
+            return BorrowingRecord.restore(dto.getRecordId(), book, borrower, dto.getBorrowDate(), dto.getDueDate(),dto.getReturnDate(), dto.getFine());
         }else throw new IllegalStateException("Referenced user is not a Borrower: " + dto.getBorrowerEmail());
     }
 
     @Override
     public void add(BorrowingRecord borrowingRecord) throws EntityDuplicationException {
-        if (getById(borrowingRecord.getRecordId()).isEmpty()){
-            borrowingRecordSet.add(borrowingRecord);
-            saveBorrowingRecords();
-        }else throw new EntityDuplicationException(borrowingRecord.getClass(),"Borrowing record with Id ("+borrowingRecord.getRecordId()+") already exists!");
+        Lock recordLock = recordLocks.get(borrowingRecord.getRecordId());
+        recordLock.lock();
+        try {
+            if (!archivedRecords.contains(borrowingRecord.getRecordId()) && borrowingRecordsById.putIfAbsent(borrowingRecord.getRecordId(), borrowingRecord) == null){
+                indexRecord(borrowingRecord);
+                saveBorrowingRecord(borrowingRecord);
+            }else throw new EntityDuplicationException(borrowingRecord.getClass(),"Borrowing record with Id ("+borrowingRecord.getRecordId()+") already exists!");
+        }finally {
+            recordLock.unlock();
+        }
     }
 
-    // May add functionality later to remove a record. I may delete the related records when removing a User permanently.
+    // Used to delete the related records when a book or a user is removed permanently, see removeByBookIsbn and removeByBorrowerEmail.
     @Override
     public boolean remove(String recordId) {
-        boolean isRemoved = borrowingRecordSet.removeIf(borrowingRecord -> borrowingRecord.getRecordId().equals(recordId));
-        if (isRemoved) saveBorrowingRecords();
-        return isRemoved;
+        Lock recordLock = recordLocks.get(recordId);
+        recordLock.lock();
+        try {
+            boolean isRemoved = removeRecord(recordId);
+            if (isRemoved) {
+                try {
+                    borrowingRecordsDTOStorage.remove(recordId);
+                }catch (IOException e){
+                    System.out.println(e.getMessage());
+                    if (e.getCause() != null) System.out.println(e.getCause().getMessage());
+                }
+            }
+            return isRemoved;
+        }finally {
+            recordLock.unlock();
+        }
     }
 
     @Override
     public Optional<BorrowingRecord> getById(String recordId) {
-        return borrowingRecordSet.stream().filter(borrowingRecord -> borrowingRecord.getRecordId().equals(recordId)).findFirst();
+        return Optional.ofNullable(findRecord(recordId));
+    }
+
+    // Looks in the map first, then decodes the record from the archive.
+    private BorrowingRecord findRecord(String recordId){
+        BorrowingRecord borrowingRecord = borrowingRecordsById.get(recordId);
+        if (borrowingRecord != null) return borrowingRecord;
+        BorrowingRecordDTO archivedDto = archivedRecords.get(recordId);
+        return archivedDto != null ? fromDto(archivedDto) : null;
     }
 
+    // A snapshot : the records held on the heap, followed by the archived ones decoded for this call. Use getPage to walk a large archive.
     @Override
     public List<BorrowingRecord> getAll() {
-        return List.copyOf(borrowingRecordSet);
+        List<BorrowingRecord> records = new ArrayList<>(allRecords.get());
+        archivedRecords.forEach(dto -> records.add(fromDto(dto)));
+        return Collections.unmodifiableList(records);
+    }
+
+    @Override
+    public Page<BorrowingRecord> getPage(String cursor, int pageSize, Predicate<BorrowingRecord> filter) {
+        return sortedRecordIds.page(cursor, pageSize, this::findRecord, filter);
     }
 }
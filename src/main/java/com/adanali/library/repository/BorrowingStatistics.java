@@ -0,0 +1,43 @@
+package com.adanali.library.repository;
+
+import com.adanali.library.model.BorrowingStatus;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Summary of the borrowing history at a given day.
+ */
+public class BorrowingStatistics {
+    private final Map<BorrowingStatus, Integer> countsByStatus = new EnumMap<>(BorrowingStatus.class);
+    private final long totalFines;
+    private final int openLoans;
+    private final int overdueOpenLoans;
+
+    BorrowingStatistics(int[] countsByStatus, long totalFines, int openLoans, int overdueOpenLoans) {
+        for (BorrowingStatus status : BorrowingStatus.values()){
+            this.countsByStatus.put(status, countsByStatus[status.ordinal()]);
+        }
+        this.totalFines = totalFines;
+        this.openLoans = openLoans;
+        this.overdueOpenLoans = overdueOpenLoans;
+    }
+
+    public int getCount(BorrowingStatus status) {
+        return countsByStatus.get(status);
+    }
+
+    public long getTotalFines() {
+        return totalFines;
+    }
+
+    // Books not returned yet.
+    public int getOpenLoans() {
+        return openLoans;
+    }
+
+    // Books not returned yet and past their due date.
+    public int getOverdueOpenLoans() {
+        return overdueOpenLoans;
+    }
+}
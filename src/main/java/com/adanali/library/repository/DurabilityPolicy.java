@@ -0,0 +1,13 @@
+package com.adanali.library.repository;
+
+/**
+ * When a change saved by a repository is written to the disk.
+ */
+public enum DurabilityPolicy {
+    /** Written on the caller's thread before the save returns. */
+    SYNC,
+    /** Written by the background flusher together with the other changes of its window, the save returns once it is on disk. */
+    BATCHED,
+    /** Written by the background flusher together with the other changes of its window, the save returns straight away. */
+    ASYNC
+}
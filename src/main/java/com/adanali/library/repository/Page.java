@@ -0,0 +1,45 @@
+package com.adanali.library.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One page of entities in the order of their ids, and the cursor to pass back to get the page after it.
+ * The cursor is opaque to callers, it is null on the last page.
+ */
+public class Page<E> {
+    private final List<E> items;
+    private final String nextCursor;
+
+    Page(List<E> items, String nextCursor) {
+        this.items = List.copyOf(items);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<E> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext(){
+        return nextCursor != null;
+    }
+
+    static String encodeCursor(String lastId){
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns the id the previous page ended with, or null for the first page.
+    static String decodeCursor(String cursor){
+        if (cursor == null) return null;
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        }catch (IllegalArgumentException e){
+            throw new IllegalArgumentException("Invalid page cursor!");
+        }
+    }
+}
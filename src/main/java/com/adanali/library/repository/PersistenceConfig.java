@@ -0,0 +1,88 @@
+package com.adanali.library.repository;
+
+import com.adanali.library.util.WriteBehindFlusher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * How the repositories persist their data. One instance is shared by all the repositories of a LibraryService,
+ * so that their write-behind saves go through the same flusher.
+ */
+public class PersistenceConfig {
+    private static final long DEFAULT_FLUSH_WINDOW_MILLIS = 50;
+
+    private final PersistenceMode mode;
+    private final StorageFormat format;
+    private final DurabilityPolicy durabilityPolicy;
+    private final long flushWindowMillis;
+    // Directory holding the files of the Database, null to keep the paths the repositories were written with.
+    private final String dataDirectory;
+    private WriteBehindFlusher flusher;
+
+    public PersistenceConfig(PersistenceMode mode, StorageFormat format) {
+        this(mode, format, DurabilityPolicy.SYNC, DEFAULT_FLUSH_WINDOW_MILLIS);
+    }
+
+    public PersistenceConfig(PersistenceMode mode, StorageFormat format, DurabilityPolicy durabilityPolicy, long flushWindowMillis) {
+        this(mode, format, durabilityPolicy, flushWindowMillis, null);
+    }
+
+    public PersistenceConfig(PersistenceMode mode, StorageFormat format, DurabilityPolicy durabilityPolicy, long flushWindowMillis, String dataDirectory) {
+        this.mode = Objects.requireNonNull(mode);
+        this.format = Objects.requireNonNull(format);
+        this.durabilityPolicy = Objects.requireNonNull(durabilityPolicy);
+        if (flushWindowMillis < 0) throw new IllegalArgumentException("Flush window cannot be negative!");
+        this.flushWindowMillis = flushWindowMillis;
+        this.dataDirectory = dataDirectory;
+    }
+
+    public static PersistenceConfig defaults(){
+        return new PersistenceConfig(PersistenceMode.SNAPSHOT, StorageFormat.JSON);
+    }
+
+    public PersistenceMode getMode() {
+        return mode;
+    }
+
+    public StorageFormat getFormat() {
+        return format;
+    }
+
+    public DurabilityPolicy getDurabilityPolicy() {
+        return durabilityPolicy;
+    }
+
+    public long getFlushWindowMillis() {
+        return flushWindowMillis;
+    }
+
+    public String getDataDirectory() {
+        return dataDirectory;
+    }
+
+    // Moves the file to the data directory, if there is one, keeping only its name.
+    String resolvePath(String filePath){
+        if (dataDirectory == null) return filePath;
+        String fileName = filePath.substring(Math.max(filePath.lastIndexOf('\\'), filePath.lastIndexOf('/')) + 1);
+        return new File(dataDirectory, fileName).getPath();
+    }
+
+    // The flusher thread is only started by the first repository that needs it.
+    synchronized WriteBehindFlusher getFlusher(){
+        if (flusher == null){
+            flusher = new WriteBehindFlusher(flushWindowMillis);
+        }
+        return flusher;
+    }
+
+    // Returns once every change saved so far is on disk, throws if one of them could not be written.
+    public void flush() throws IOException {
+        WriteBehindFlusher currentFlusher;
+        synchronized (this){
+            currentFlusher = flusher;
+        }
+        if (currentFlusher != null) currentFlusher.flush();
+    }
+}
@@ -0,0 +1,11 @@
+package com.adanali.library.repository;
+
+/**
+ * How a repository writes its changes to the Database.
+ */
+public enum PersistenceMode {
+    /** Every change rewrites the whole JSON file of the repository. */
+    SNAPSHOT,
+    /** Every change is appended to a journal, which is compacted into the JSON file in the background. */
+    JOURNAL
+}
@@ -4,10 +4,21 @@ import com.adanali.library.exceptions.EntityDuplicationException;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 public interface RepositoryPattern<E, ID>{
     void add(E entity) throws EntityDuplicationException;
     boolean remove(ID id);
     Optional<E> getById(ID id);
+    // Immutable snapshot of every entity, repeated calls share the same list until the repository changes.
     List<E> getAll();
+
+    /**
+     * Entities in the order of their ids, starting after the cursor of the previous page (null for the first page).
+     */
+    Page<E> getPage(String cursor, int pageSize, Predicate<E> filter);
+
+    default Page<E> getPage(String cursor, int pageSize){
+        return getPage(cursor, pageSize, entity -> true);
+    }
 }
@@ -0,0 +1,160 @@
+package com.adanali.library.repository;
+
+import com.adanali.library.util.BinaryCodec;
+import com.adanali.library.util.BinarySnapshotUtil;
+import com.adanali.library.util.JournalStorageUtil;
+import com.adanali.library.util.JsonStorageUtil;
+import com.adanali.library.util.WriteBehindFlusher;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Persists the entities of one repository, either as a snapshot rewritten on every change
+ * or as a snapshot plus a journal of the changes made since that snapshot.
+ * The snapshot is a JSON file or, in binary format, a memory-mapped binary file with the JSON file kept for import/export.
+ * Unless the durability policy is SYNC, changes are only marked pending here and written by the shared write-behind flusher.
+ */
+class RepositoryStorage<T> implements WriteBehindFlusher.FlushTarget {
+    private static final int COMPACTION_THRESHOLD = 1000;
+    private static final long COMPACTION_INTERVAL_SECONDS = 30;
+
+    private final String name;
+    private final PersistenceConfig config;
+    private final JsonStorageUtil<T> jsonStorage;
+    private final BinarySnapshotUtil<T> binaryStorage;
+    private final JournalStorageUtil<T> journal;
+    private final Class<T> entityType;
+    private final Function<T, String> idOf;
+    private final Supplier<Collection<T>> snapshotSource;
+    private ScheduledExecutorService compactor;
+    // Write-behind state : the latest change of every id not written yet (null for a removal), or a snapshot to rewrite.
+    private final Map<String, T> pendingChanges = new LinkedHashMap<>();
+    private boolean snapshotPending;
+
+    /**
+     * @param snapshotSource supplies the current state of the repository whenever a snapshot is written,
+     *                       it is called from the compaction thread so it must be safe to iterate concurrently.
+     */
+    RepositoryStorage(String name, String jsonFilePath, String binaryFilePath, String journalFilePath, Class<T> entityType,
+                      Function<T, String> idOf, BinaryCodec<T> codec, PersistenceConfig config, Supplier<Collection<T>> snapshotSource) {
+        this.name = name;
+        this.config = config;
+        this.jsonStorage = new JsonStorageUtil<>(config.resolvePath(jsonFilePath));
+        this.binaryStorage = new BinarySnapshotUtil<>(config.resolvePath(binaryFilePath), codec);
+        this.journal = new JournalStorageUtil<>(config.resolvePath(journalFilePath), entityType);
+        this.entityType = entityType;
+        this.idOf = idOf;
+        this.snapshotSource = snapshotSource;
+    }
+
+    /**
+     * Streams the snapshot into the repository and replays the journal written after it on top.
+     * A journal left over by a previous run in journal mode is folded into the snapshot straight away when running in snapshot mode,
+     * and so is a JSON file imported into a binary snapshot for the first time.
+     */
+    synchronized void load(Consumer<T> onPut, Consumer<String> onRemove) throws IOException {
+        boolean imported = false;
+        if (config.getFormat() == StorageFormat.BINARY && binaryStorage.exists()){
+            binaryStorage.loadData(onPut);
+        }else {
+            imported = jsonStorage.loadData(entityType, onPut) > 0 && config.getFormat() == StorageFormat.BINARY;
+        }
+        int replayedEntries = journal.replay(onPut, onRemove);
+        if (config.getMode() == PersistenceMode.JOURNAL){
+            if (imported) compact();
+            startCompactor();
+        }else if (replayedEntries > 0 || imported){
+            compact();
+        }
+    }
+
+    void put(T entity) throws IOException {
+        if (config.getDurabilityPolicy() == DurabilityPolicy.SYNC){
+            synchronized (this){
+                if (config.getMode() == PersistenceMode.JOURNAL){
+                    journal.appendPut(entity);
+                }else compact();
+            }
+        }else writeBehind(idOf.apply(entity), entity);
+    }
+
+    void remove(String id) throws IOException {
+        if (config.getDurabilityPolicy() == DurabilityPolicy.SYNC){
+            synchronized (this){
+                if (config.getMode() == PersistenceMode.JOURNAL){
+                    journal.appendRemove(id);
+                }else compact();
+            }
+        }else writeBehind(id, null);
+    }
+
+    // The wait for a batched save happens outside the lock, so the flusher can take it meanwhile.
+    private void writeBehind(String id, T entity) throws IOException {
+        WriteBehindFlusher flusher = config.getFlusher();
+        long ticket;
+        synchronized (this){
+            if (config.getMode() == PersistenceMode.JOURNAL){
+                pendingChanges.remove(id);
+                pendingChanges.put(id, entity);
+            }else snapshotPending = true;
+            ticket = flusher.markDirty(this);
+        }
+        if (config.getDurabilityPolicy() == DurabilityPolicy.BATCHED){
+            flusher.awaitFlushed(ticket);
+        }
+    }
+
+    @Override
+    public synchronized void flushPending() throws IOException {
+        // On failure the changes stay pending and go out with the next flush.
+        if (snapshotPending){
+            compact();
+            snapshotPending = false;
+        }
+        if (!pendingChanges.isEmpty()){
+            journal.appendBatch(pendingChanges);
+            pendingChanges.clear();
+        }
+    }
+
+    // Any change made after the snapshot source is read is appended to the journal only once this returns, so nothing is lost by the truncation.
+    synchronized void compact() throws IOException {
+        if (config.getFormat() == StorageFormat.BINARY){
+            binaryStorage.saveData(snapshotSource.get());
+        }else {
+            jsonStorage.saveData(snapshotSource.get());
+        }
+        journal.truncate();
+    }
+
+    // Writes the current state to the JSON file, whatever the snapshot format is.
+    synchronized void exportJson() throws IOException {
+        jsonStorage.saveData(snapshotSource.get());
+    }
+
+    private void startCompactor(){
+        if (compactor != null) return;
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                if (journal.getEntryCount() >= COMPACTION_THRESHOLD) compact();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                if (e.getCause() != null) System.out.println(e.getCause().getMessage());
+            }
+        }, COMPACTION_INTERVAL_SECONDS, COMPACTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+}
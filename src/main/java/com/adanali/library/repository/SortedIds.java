@@ -0,0 +1,51 @@
+package com.adanali.library.repository;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Ids of a repository kept in order, so a page starts with a seek to the cursor instead of a copy and a sort of every entity.
+ */
+class SortedIds {
+    private final NavigableSet<String> ids = new ConcurrentSkipListSet<>();
+
+    void add(String id){
+        ids.add(id);
+    }
+
+    void remove(String id){
+        ids.remove(id);
+    }
+
+    void clear(){
+        ids.clear();
+    }
+
+    /**
+     * @param lookup returns the entity of an id, or null if it was removed in the meantime
+     * @param filter entities left out of the page, they are skipped without counting towards the page size
+     */
+    <E> Page<E> page(String cursor, int pageSize, Function<String, E> lookup, Predicate<E> filter){
+        if (pageSize <= 0) throw new IllegalArgumentException("Page size should be greater than 0");
+        String lastId = Page.decodeCursor(cursor);
+        Iterator<String> iterator = (lastId == null ? ids : ids.tailSet(lastId, false)).iterator();
+        List<E> items = new ArrayList<>(pageSize);
+        String lastItemId = null;
+        while (iterator.hasNext()){
+            String id = iterator.next();
+            E entity = lookup.apply(id);
+            if (entity == null || !filter.test(entity)) continue;
+            if (items.size() == pageSize){
+                return new Page<>(items, Page.encodeCursor(lastItemId));
+            }
+            items.add(entity);
+            lastItemId = id;
+        }
+        return new Page<>(items, null);
+    }
+}
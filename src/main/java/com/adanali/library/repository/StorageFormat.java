@@ -0,0 +1,11 @@
+package com.adanali.library.repository;
+
+/**
+ * Format of the snapshot a repository is loaded from and compacted into.
+ */
+public enum StorageFormat {
+    /** Pretty printed JSON files, readable and editable by hand. */
+    JSON,
+    /** Versioned binary files, memory-mapped on load. JSON files are still read when no binary snapshot exists yet. */
+    BINARY
+}
@@ -2,29 +2,64 @@ package com.adanali.library.repository;
 
 import com.adanali.library.exceptions.EntityDuplicationException;
 import com.adanali.library.model.User;
-import com.adanali.library.util.JsonStorageUtil;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.adanali.library.repository.index.NGramIndex;
+import com.adanali.library.util.StripedLock;
 
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 
 public class UsersRepository implements RepositoryPattern<User,String>{
-    private Set<User> userSet ;
-    private final JsonStorageUtil<User> userJsonStorge;
+    private final Map<String, User> usersByEmail;
+    private final RepositoryStorage<User> userStorage;
+    // Serializes the add, save and remove of the same e-mail, which update the map, the indexes and the storage in several steps.
+    private final StripedLock emailLocks = new StripedLock(64);
+    private final SortedIds sortedEmails = new SortedIds();
+    private final VersionedSnapshot<User> allUsers;
+    private final NGramIndex<User> nameIndex = new NGramIndex<>();
+    private final NGramIndex<User> emailIndex = new NGramIndex<>();
     private static final String USERS_JSON_FILE_PATH = "src\\main\\java\\com\\adanali\\library\\persistence\\Users.json";
+    private static final String USERS_BINARY_FILE_PATH = "src\\main\\java\\com\\adanali\\library\\persistence\\Users.bin";
+    private static final String USERS_JOURNAL_FILE_PATH = "src\\main\\java\\com\\adanali\\library\\persistence\\Users.journal";
 
     public UsersRepository(){
-        this.userSet = new HashSet<>();
-        userJsonStorge = new JsonStorageUtil<>(USERS_JSON_FILE_PATH);
+        this(PersistenceConfig.defaults());
+    }
+
+    public UsersRepository(PersistenceConfig persistenceConfig){
+        // Concurrent map, because the journal compactor and the flusher read it from their own threads.
+        this.usersByEmail = new ConcurrentHashMap<>();
+        this.allUsers = new VersionedSnapshot<>(usersByEmail::values);
+        userStorage = new RepositoryStorage<>("users", USERS_JSON_FILE_PATH, USERS_BINARY_FILE_PATH, USERS_JOURNAL_FILE_PATH,
+                User.class, User::getEmail, BinaryCodecs.USER, persistenceConfig, this::getAll);
         loadUsers();
     }
 
     public void loadUsers(){
         try {
-            userSet = userJsonStorge.loadData(new TypeReference<Set<User>>() {});
+            usersByEmail.clear();
+            sortedEmails.clear();
+            allUsers.invalidate();
+            nameIndex.clear();
+            emailIndex.clear();
+            userStorage.load(user -> {
+                User replaced = usersByEmail.put(user.getEmail(), user);
+                if (replaced != null) unindexUser(replaced);
+                sortedEmails.add(user.getEmail());
+                allUsers.invalidate();
+                indexUser(user);
+            }, email -> {
+                User removed = usersByEmail.remove(email);
+                sortedEmails.remove(email);
+                if (removed != null) unindexUser(removed);
+                allUsers.invalidate();
+            });
         } catch (IOException e) {
             System.out.println(e.getMessage());
             if (e.getCause() != null) System.out.println(e.getCause().getMessage());
@@ -33,42 +68,104 @@ public class UsersRepository implements RepositoryPattern<User,String>{
 
     public void saveUsers(){
         try {
-            userJsonStorge.saveData(userSet);
+            userStorage.compact();
+        }catch (IOException e){
+            System.out.println(e.getMessage());
+            System.out.println(e.getCause().getMessage());
+        }
+    }
+
+    public void exportToJson(){
+        try {
+            userStorage.exportJson();
         }catch (IOException e){
             System.out.println(e.getMessage());
             System.out.println(e.getCause().getMessage());
         }
     }
 
+    // Persists a change made to a single user and refreshes its entries in the search indexes.
+    public void saveUser(User user){
+        Lock emailLock = emailLocks.get(user.getEmail());
+        emailLock.lock();
+        try {
+            if (usersByEmail.get(user.getEmail()) == user) indexUser(user);
+            userStorage.put(user);
+        }catch (IOException e){
+            System.out.println(e.getMessage());
+            System.out.println(e.getCause().getMessage());
+        }finally {
+            emailLock.unlock();
+        }
+    }
+
     public List<User> search(String query){
-        String finalQuery = query.toLowerCase();
-        return userSet.stream()
-                .filter(user -> user.getName().toLowerCase().contains(finalQuery) || user.getEmail().toLowerCase().contains(finalQuery))
-                .toList();
+        Set<User> matches = new HashSet<>(nameIndex.search(query));
+        matches.addAll(emailIndex.search(query));
+        return List.copyOf(matches);
+    }
+
+    private void indexUser(User user){
+        nameIndex.index(user, user.getName());
+        emailIndex.index(user, user.getEmail());
+    }
+
+    private void unindexUser(User user){
+        nameIndex.remove(user);
+        emailIndex.remove(user);
     }
 
     @Override
     public void add(User user) throws EntityDuplicationException {
-        if (getById(user.getEmail()).isEmpty()){
-            userSet.add(user);
-            saveUsers();
-        }else throw new EntityDuplicationException(user.getClass(),"User with email "+user.getEmail()+" already exists!");
+        Lock emailLock = emailLocks.get(user.getEmail());
+        emailLock.lock();
+        try {
+            if (usersByEmail.putIfAbsent(user.getEmail(), user) == null){
+                sortedEmails.add(user.getEmail());
+                allUsers.invalidate();
+                saveUser(user);
+            }else throw new EntityDuplicationException(user.getClass(),"User with email "+user.getEmail()+" already exists!");
+        }finally {
+            emailLock.unlock();
+        }
     }
 
     @Override
     public boolean remove(String email) {
-        boolean isRemoved = userSet.removeIf(user -> user.getEmail().equals(email));
-        if (isRemoved) saveUsers();
-        return isRemoved;
+        Lock emailLock = emailLocks.get(email);
+        emailLock.lock();
+        try {
+            User removed = usersByEmail.remove(email);
+            boolean isRemoved = removed != null;
+            if (isRemoved) {
+                sortedEmails.remove(email);
+                allUsers.invalidate();
+                unindexUser(removed);
+                try {
+                    userStorage.remove(email);
+                }catch (IOException e){
+                    System.out.println(e.getMessage());
+                    System.out.println(e.getCause().getMessage());
+                }
+            }
+            return isRemoved;
+        }finally {
+            emailLock.unlock();
+        }
     }
 
     @Override
     public Optional<User> getById(String email) {
-        return userSet.stream().filter(user -> user.getEmail().equals(email)).findFirst();
+        return Optional.ofNullable(usersByEmail.get(email));
     }
 
     @Override
     public List<User> getAll() {
-        return List.copyOf(userSet);
+        return allUsers.get();
+    }
+
+    @Override
+    public Page<User> getPage(String cursor, int pageSize, Predicate<User> filter) {
+        return sortedEmails.page(cursor, pageSize, usersByEmail::get, filter);
     }
 }
@@ -0,0 +1,39 @@
+package com.adanali.library.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Immutable list of the entities of a repository, shared by every reader until the repository changes.
+ * Writers only bump the version, the next reader copies the entities once and publishes the copy for that version.
+ * The copy is of the whole repository, so a write followed by a read costs O(n) : this pays off when reads of the
+ * whole list outnumber the writes, callers looking for a few entities should use the keyed lookups instead.
+ */
+class VersionedSnapshot<E> {
+    private record Snapshot<E>(long version, List<E> entities) {}
+
+    private final Supplier<Collection<E>> source;
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot<E> snapshot;
+
+    VersionedSnapshot(Supplier<Collection<E>> source) {
+        this.source = source;
+    }
+
+    // Called after every change of the entities, the change is then part of any snapshot published later.
+    void invalidate(){
+        version.incrementAndGet();
+    }
+
+    List<E> get(){
+        Snapshot<E> current = snapshot;
+        // Read before copying, so a change made during the copy leaves the published snapshot already out of date.
+        long currentVersion = version.get();
+        if (current != null && current.version() == currentVersion) return current.entities();
+        List<E> entities = List.copyOf(source.get());
+        snapshot = new Snapshot<>(currentVersion, entities);
+        return entities;
+    }
+}
@@ -0,0 +1,179 @@
+package com.adanali.library.repository.index;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Prefix completion over one text attribute of the entities, backed by a radix trie of the lower-cased values.
+ * A value is weighted by the number of entities having it, and every node knows the heaviest value below it,
+ * so the top completions of a prefix are found best first without visiting the rest of its subtree.
+ */
+public class CompletionTrie<E> {
+    private final Map<E, String> indexedValues = new HashMap<>();
+    private final Node root = new Node("");
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static class Node {
+        private String edgeLabel;
+        private final Map<Character, Node> children = new HashMap<>();
+        // Number of entities whose value ends at this node, and the value as it was first written.
+        private int weight;
+        private String displayValue;
+        private int maxWeight;
+
+        private Node(String edgeLabel) {
+            this.edgeLabel = edgeLabel;
+        }
+
+        private void updateMaxWeight(){
+            int max = weight;
+            for (Node child : children.values()){
+                max = Math.max(max, child.maxWeight);
+            }
+            maxWeight = max;
+        }
+    }
+
+    private record Candidate(Node node, String key, int priority, boolean isValue) {}
+
+    public void index(E entity, String value){
+        lock.writeLock().lock();
+        try {
+            String previousValue = indexedValues.put(entity, value);
+            if (value.equals(previousValue)) return;
+            if (previousValue != null) remove(root, normalize(previousValue));
+            insert(root, normalize(value), value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(E entity){
+        lock.writeLock().lock();
+        try {
+            String previousValue = indexedValues.remove(entity);
+            if (previousValue != null) remove(root, normalize(previousValue));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear(){
+        lock.writeLock().lock();
+        try {
+            indexedValues.clear();
+            root.children.clear();
+            root.weight = 0;
+            root.maxWeight = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return at most limit values starting with the prefix, ignoring case, the ones shared by the most entities first
+     */
+    public List<String> complete(String prefix, int limit){
+        if (limit <= 0) throw new IllegalArgumentException("Limit should be greater than 0");
+        String key = normalize(prefix);
+        List<String> completions = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            String path = "";
+            int matched = 0;
+            while (matched < key.length()){
+                Node child = node.children.get(key.charAt(matched));
+                if (child == null) return completions;
+                String label = child.edgeLabel;
+                int common = commonPrefixLength(label, key, matched);
+                if (matched + common < key.length() && common < label.length()) return completions;
+                path += label;
+                matched += common;
+                node = child;
+            }
+            PriorityQueue<Candidate> candidates = new PriorityQueue<>(Comparator.comparingInt(Candidate::priority).reversed()
+                    .thenComparing(Candidate::key)
+                    .thenComparing(Candidate::isValue, Comparator.reverseOrder()));
+            if (node.maxWeight > 0) candidates.add(new Candidate(node, path, node.maxWeight, false));
+            while (!candidates.isEmpty() && completions.size() < limit){
+                Candidate candidate = candidates.poll();
+                if (candidate.isValue()){
+                    completions.add(candidate.node().displayValue);
+                    continue;
+                }
+                Node current = candidate.node();
+                if (current.weight > 0) candidates.add(new Candidate(current, candidate.key(), current.weight, true));
+                for (Node child : current.children.values()){
+                    if (child.maxWeight > 0) candidates.add(new Candidate(child, candidate.key() + child.edgeLabel, child.maxWeight, false));
+                }
+            }
+            return completions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void insert(Node node, String key, String displayValue){
+        if (key.isEmpty()){
+            if (node.weight++ == 0) node.displayValue = displayValue;
+        }else {
+            Node child = node.children.get(key.charAt(0));
+            if (child == null){
+                child = new Node(key);
+                node.children.put(key.charAt(0), child);
+                insert(child, "", displayValue);
+            }else {
+                int common = commonPrefixLength(child.edgeLabel, key, 0);
+                if (common < child.edgeLabel.length()){
+                    // Splits the edge, the new node takes the shared part of the label.
+                    Node split = new Node(child.edgeLabel.substring(0, common));
+                    child.edgeLabel = child.edgeLabel.substring(common);
+                    split.children.put(child.edgeLabel.charAt(0), child);
+                    split.updateMaxWeight();
+                    node.children.put(key.charAt(0), split);
+                    child = split;
+                }
+                insert(child, key.substring(common), displayValue);
+            }
+        }
+        node.updateMaxWeight();
+    }
+
+    private static void remove(Node node, String key){
+        if (key.isEmpty()){
+            if (node.weight > 0 && --node.weight == 0) node.displayValue = null;
+        }else {
+            Node child = node.children.get(key.charAt(0));
+            if (child == null || !key.startsWith(child.edgeLabel)) return;
+            remove(child, key.substring(child.edgeLabel.length()));
+            if (child.weight == 0 && child.children.isEmpty()){
+                node.children.remove(key.charAt(0));
+            }else if (child.weight == 0 && child.children.size() == 1){
+                // Merges a node left without a value into its only child, so the trie stays compact.
+                Node grandChild = child.children.values().iterator().next();
+                grandChild.edgeLabel = child.edgeLabel + grandChild.edgeLabel;
+                node.children.put(key.charAt(0), grandChild);
+            }
+        }
+        node.updateMaxWeight();
+    }
+
+    private static int commonPrefixLength(String label, String key, int keyOffset){
+        int length = 0;
+        while (length < label.length() && keyOffset + length < key.length() && label.charAt(length) == key.charAt(keyOffset + length)){
+            length++;
+        }
+        return length;
+    }
+
+    private static String normalize(String value){
+        return value.strip().toLowerCase();
+    }
+}
@@ -0,0 +1,27 @@
+package com.adanali.library.repository.index;
+
+/**
+ * Number of entities having a facet value, and how many of them are available.
+ */
+public class FacetCount {
+    private final int total;
+    private final int available;
+
+    public FacetCount(int total, int available) {
+        this.total = total;
+        this.available = available;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getAvailable() {
+        return available;
+    }
+
+    @Override
+    public String toString() {
+        return total+" ("+available+" available)";
+    }
+}
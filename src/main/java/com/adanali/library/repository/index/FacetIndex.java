@@ -0,0 +1,70 @@
+package com.adanali.library.repository.index;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Counts of the entities per facet value, kept up to date as entities change instead of recounted for every request.
+ */
+public class FacetIndex<E, K extends Comparable<K>> {
+    private record Entry<K>(K value, boolean available) {}
+
+    private final Map<E, Entry<K>> indexedEntries = new HashMap<>();
+    private final Map<K, int[]> counts = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void index(E entity, K value, boolean available){
+        Entry<K> entry = new Entry<>(value, available);
+        lock.writeLock().lock();
+        try {
+            Entry<K> previousEntry = indexedEntries.put(entity, entry);
+            if (entry.equals(previousEntry)) return;
+            if (previousEntry != null) count(previousEntry, -1);
+            count(entry, 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(E entity){
+        lock.writeLock().lock();
+        try {
+            Entry<K> previousEntry = indexedEntries.remove(entity);
+            if (previousEntry != null) count(previousEntry, -1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear(){
+        lock.writeLock().lock();
+        try {
+            indexedEntries.clear();
+            counts.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Counts of every facet value, in the natural order of the values.
+    public Map<K, FacetCount> getCounts(){
+        lock.readLock().lock();
+        try {
+            Map<K, FacetCount> facetCounts = new TreeMap<>();
+            counts.forEach((value, count) -> facetCounts.put(value, new FacetCount(count[0], count[1])));
+            return facetCounts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void count(Entry<K> entry, int delta){
+        int[] count = counts.computeIfAbsent(entry.value(), value -> new int[2]);
+        count[0] += delta;
+        if (entry.available()) count[1] += delta;
+        if (count[0] == 0) counts.remove(entry.value());
+    }
+}
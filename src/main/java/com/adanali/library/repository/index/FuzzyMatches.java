@@ -0,0 +1,26 @@
+package com.adanali.library.repository.index;
+
+import java.util.List;
+
+/**
+ * Entities found by a typo tolerant query, and whether the query ran out of its visit budget.
+ */
+public class FuzzyMatches<E> {
+    private final List<E> entities;
+    private final boolean truncated;
+
+    public FuzzyMatches(List<E> entities, boolean truncated) {
+        this.entities = entities;
+        this.truncated = truncated;
+    }
+
+    // The closest entities first.
+    public List<E> getEntities() {
+        return entities;
+    }
+
+    // True when some terms within the allowed edits may not have been visited, so close matches may be missing.
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
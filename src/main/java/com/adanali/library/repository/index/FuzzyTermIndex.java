@@ -0,0 +1,267 @@
+package com.adanali.library.repository.index;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Typo tolerant lookup of the entities by the terms of their text attributes.
+ * The term dictionary is kept in a BK-tree, so the terms within a few edits of a query term are found
+ * by visiting only the branches the triangle inequality cannot rule out, and never more nodes than the visit budget.
+ * Branches are visited closest first, so a query cut short by the budget has still seen the likeliest terms, and says it was cut short.
+ * The entities gathered for a query are capped as well, and a query hitting the cap says so the same way.
+ */
+public class FuzzyTermIndex<E> {
+    private static final int MAX_DISTANCE = 2;
+    private static final int DEFAULT_MAX_CANDIDATES = 10_000;
+
+    private final int maxVisitedNodes;
+    private final int maxCandidates;
+    private final Comparator<E> tieBreaker;
+    private final Map<E, String[]> indexedValues = new HashMap<>();
+    private final Map<String, Set<E>> postings = new HashMap<>();
+    private Node root;
+    private int treeSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // A branch left to visit, with the fewest edits its terms can be away from the query term.
+    private record Candidate(Node node, int minDistance) {}
+
+    private static class Node {
+        private final String term;
+        private final Map<Integer, Node> children = new HashMap<>();
+
+        private Node(String term) {
+            this.term = term;
+        }
+    }
+
+    /**
+     * @param maxVisitedNodes most BK-tree nodes a query term may visit, bounding the cost of a query whatever the size of the dictionary
+     * @param tieBreaker orders entities matching the query with the same number of edits
+     */
+    public FuzzyTermIndex(int maxVisitedNodes, Comparator<E> tieBreaker) {
+        this(maxVisitedNodes, DEFAULT_MAX_CANDIDATES, tieBreaker);
+    }
+
+    /**
+     * @param maxCandidates most entities gathered for the first term of a query, the later terms only narrow them down
+     */
+    public FuzzyTermIndex(int maxVisitedNodes, int maxCandidates, Comparator<E> tieBreaker) {
+        if (maxCandidates <= 0) throw new IllegalArgumentException("Candidate cap should be greater than 0");
+        this.maxVisitedNodes = maxVisitedNodes;
+        this.maxCandidates = maxCandidates;
+        this.tieBreaker = tieBreaker;
+    }
+
+    public void index(E entity, String... values){
+        String[] valuesToIndex = values.clone();
+        lock.writeLock().lock();
+        try {
+            String[] previousValues = indexedValues.put(entity, valuesToIndex);
+            if (previousValues != null) removeTerms(entity, previousValues);
+            for (String term : terms(valuesToIndex)){
+                Set<E> posting = postings.get(term);
+                if (posting == null){
+                    posting = new HashSet<>();
+                    postings.put(term, posting);
+                    insertTerm(term);
+                }
+                posting.add(entity);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(E entity){
+        lock.writeLock().lock();
+        try {
+            String[] previousValues = indexedValues.remove(entity);
+            if (previousValues != null) removeTerms(entity, previousValues);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear(){
+        lock.writeLock().lock();
+        try {
+            indexedValues.clear();
+            postings.clear();
+            root = null;
+            treeSize = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Every term of the query has to match a term of the entity within 2 edits (1 for terms of up to 4 characters).
+     * The first term gathers at most maxCandidates entities, through its closest terms first, and the best ones are kept
+     * in a heap bounded by the limit, so neither the gathering nor the ranking grows with the catalog.
+     * @return at most limit entities, the ones needing the fewest edits first, truncated when the visit budget or the candidate cap was hit
+     */
+    public FuzzyMatches<E> search(String query, int limit){
+        if (limit <= 0) throw new IllegalArgumentException("Limit should be greater than 0");
+        Set<String> queryTerms = new LinkedHashSet<>(RankedTermIndex.tokenize(query));
+        if (queryTerms.isEmpty()) return new FuzzyMatches<>(List.of(), false);
+        Map<E, Integer> edits = null;
+        boolean truncated = false;
+        lock.readLock().lock();
+        try {
+            for (String queryTerm : queryTerms){
+                Map<E, Integer> termEdits = new HashMap<>();
+                Map<String, Integer> similarTerms = new HashMap<>();
+                truncated |= collectSimilarTerms(queryTerm, similarTerms);
+                List<Map.Entry<String, Integer>> closestFirst = new ArrayList<>(similarTerms.entrySet());
+                closestFirst.sort(Map.Entry.comparingByValue());
+                for (Map.Entry<String, Integer> match : closestFirst){
+                    Set<E> posting = postings.get(match.getKey());
+                    if (edits == null){
+                        for (E entity : posting){
+                            if (termEdits.size() < maxCandidates || termEdits.containsKey(entity)){
+                                termEdits.merge(entity, match.getValue(), Math::min);
+                            }else truncated = true;
+                        }
+                    }else if (edits.size() < posting.size()){
+                        // Narrowing down : walk the fewer of the candidates and the posting.
+                        for (E entity : edits.keySet()){
+                            if (posting.contains(entity)) termEdits.merge(entity, match.getValue(), Math::min);
+                        }
+                    }else {
+                        for (E entity : posting){
+                            if (edits.containsKey(entity)) termEdits.merge(entity, match.getValue(), Math::min);
+                        }
+                    }
+                }
+                if (edits != null){
+                    Map<E, Integer> previousEdits = edits;
+                    termEdits.replaceAll((entity, distance) -> distance + previousEdits.get(entity));
+                }
+                edits = termEdits;
+                if (edits.isEmpty()) break;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Map<E, Integer> totalEdits = edits;
+        Comparator<E> byEdits = Comparator.<E>comparingInt(totalEdits::get).thenComparing(tieBreaker);
+        // Max-heap of the best matches seen so far, its head is the first to be evicted.
+        PriorityQueue<E> best = new PriorityQueue<>(Math.min(limit, Math.max(totalEdits.size(), 1)), byEdits.reversed());
+        for (E entity : totalEdits.keySet()){
+            if (best.size() < limit){
+                best.add(entity);
+            }else if (byEdits.compare(entity, best.peek()) < 0){
+                best.poll();
+                best.add(entity);
+            }
+        }
+        List<E> entities = new ArrayList<>(best);
+        entities.sort(byEdits);
+        return new FuzzyMatches<>(entities, truncated);
+    }
+
+    /**
+     * Puts the terms of the dictionary within the allowed distance of the query term in matches, with their distance.
+     * The exact term is looked up first, outside the budget. The branches are then visited by the fewest edits their terms
+     * can be away from the query term, |d(query, node) - edge| by the triangle inequality, so the budget is spent on the closest ones.
+     * @return true when the budget ran out before every branch that may hold a match was visited
+     */
+    private boolean collectSimilarTerms(String queryTerm, Map<String, Integer> matches){
+        if (postings.containsKey(queryTerm)) matches.put(queryTerm, 0);
+        if (root == null) return false;
+        int maxDistance = queryTerm.length() <= 4 ? 1 : MAX_DISTANCE;
+        PriorityQueue<Candidate> nodesToVisit = new PriorityQueue<>(Comparator.comparingInt(Candidate::minDistance));
+        nodesToVisit.add(new Candidate(root, 0));
+        int visitedNodes = 0;
+        while (!nodesToVisit.isEmpty() && visitedNodes < maxVisitedNodes){
+            Node node = nodesToVisit.poll().node();
+            visitedNodes++;
+            int distance = editDistance(queryTerm, node.term);
+            // Terms removed since they were inserted stay in the tree until it is rebuilt, but have no postings.
+            if (distance <= maxDistance && postings.containsKey(node.term)) matches.put(node.term, distance);
+            for (int childDistance = Math.max(1, distance - maxDistance); childDistance <= distance + maxDistance; childDistance++){
+                Node child = node.children.get(childDistance);
+                if (child != null) nodesToVisit.add(new Candidate(child, Math.abs(distance - childDistance)));
+            }
+        }
+        return !nodesToVisit.isEmpty();
+    }
+
+    private void insertTerm(String term){
+        treeSize++;
+        if (root == null){
+            root = new Node(term);
+            return;
+        }
+        Node node = root;
+        while (true){
+            int distance = editDistance(term, node.term);
+            if (distance == 0) {
+                treeSize--;
+                return;
+            }
+            Node child = node.children.get(distance);
+            if (child == null){
+                node.children.put(distance, new Node(term));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    private void removeTerms(E entity, String[] values){
+        for (String term : terms(values)){
+            Set<E> posting = postings.get(term);
+            if (posting != null){
+                posting.remove(entity);
+                if (posting.isEmpty()) postings.remove(term);
+            }
+        }
+        // Rebuilds the tree once most of its terms are gone, deletions are lazy until then.
+        if (treeSize > 64 && postings.size() < treeSize / 2){
+            root = null;
+            treeSize = 0;
+            for (String term : postings.keySet()){
+                insertTerm(term);
+            }
+        }
+    }
+
+    private static Set<String> terms(String[] values){
+        Set<String> terms = new HashSet<>();
+        for (String value : values){
+            terms.addAll(RankedTermIndex.tokenize(value));
+        }
+        return terms;
+    }
+
+    // Levenshtein distance, computed with two rows of the dynamic programming table.
+    private static int editDistance(String first, String second){
+        int[] previousRow = new int[second.length() + 1];
+        int[] currentRow = new int[second.length() + 1];
+        for (int j = 0; j <= second.length(); j++){
+            previousRow[j] = j;
+        }
+        for (int i = 1; i <= first.length(); i++){
+            currentRow[0] = i;
+            for (int j = 1; j <= second.length(); j++){
+                int substitution = previousRow[j - 1] + (first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1);
+                currentRow[j] = Math.min(substitution, Math.min(previousRow[j], currentRow[j - 1]) + 1);
+            }
+            int[] row = previousRow;
+            previousRow = currentRow;
+            currentRow = row;
+        }
+        return previousRow[second.length()];
+    }
+}
@@ -0,0 +1,155 @@
+package com.adanali.library.repository.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index answering case-insensitive substring queries over one text attribute of the entities.
+ * Every 1, 2 and 3 character gram of the lower-cased value has a posting set, so a query of up to 3 characters
+ * is a single posting lookup, and a longer one intersects the postings of its trigrams and confirms the few candidates left.
+ */
+public class NGramIndex<E> {
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<E, String> indexedValues = new HashMap<>();
+    private final Map<String, Set<E>> postings = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Indexes the value of the entity, replacing the value it was indexed with before. Unchanged values cost a single comparison.
+    public void index(E entity, String value){
+        String normalizedValue = value.toLowerCase();
+        lock.writeLock().lock();
+        try {
+            String previousValue = indexedValues.put(entity, normalizedValue);
+            if (normalizedValue.equals(previousValue)) return;
+            if (previousValue != null){
+                for (String gram : grams(previousValue)){
+                    removePosting(gram, entity);
+                }
+            }
+            for (String gram : grams(normalizedValue)){
+                postings.computeIfAbsent(gram, g -> new HashSet<>()).add(entity);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(E entity){
+        lock.writeLock().lock();
+        try {
+            String previousValue = indexedValues.remove(entity);
+            if (previousValue != null){
+                for (String gram : grams(previousValue)){
+                    removePosting(gram, entity);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear(){
+        lock.writeLock().lock();
+        try {
+            indexedValues.clear();
+            postings.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Same matches as value.toLowerCase().contains(query.toLowerCase()) over every indexed entity.
+    public Set<E> search(String query){
+        String normalizedQuery = query.toLowerCase();
+        lock.readLock().lock();
+        try {
+            if (normalizedQuery.isEmpty()) return new HashSet<>(indexedValues.keySet());
+            if (normalizedQuery.length() <= GRAM_LENGTH){
+                return new HashSet<>(postings.getOrDefault(normalizedQuery, Set.of()));
+            }
+            List<Set<E>> trigramPostings = new ArrayList<>();
+            for (int i = 0; i + GRAM_LENGTH <= normalizedQuery.length(); i++){
+                Set<E> posting = postings.get(normalizedQuery.substring(i, i + GRAM_LENGTH));
+                if (posting == null) return new HashSet<>();
+                trigramPostings.add(posting);
+            }
+            trigramPostings.sort((first, second) -> Integer.compare(first.size(), second.size()));
+            Set<E> matches = new HashSet<>();
+            for (E candidate : trigramPostings.get(0)){
+                if (indexedValues.get(candidate).contains(normalizedQuery)) matches.add(candidate);
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Entities that may match the query, for a caller confirming them one at a time with matches, in an order of its own.
+     * A query of up to 3 characters gets its posting, which is exact, a longer one the intersection of the postings of its trigrams.
+     */
+    public List<E> candidates(String query){
+        String normalizedQuery = query.toLowerCase();
+        lock.readLock().lock();
+        try {
+            if (normalizedQuery.isEmpty()) return new ArrayList<>(indexedValues.keySet());
+            if (normalizedQuery.length() <= GRAM_LENGTH){
+                return new ArrayList<>(postings.getOrDefault(normalizedQuery, Set.of()));
+            }
+            List<Set<E>> trigramPostings = new ArrayList<>();
+            for (int i = 0; i + GRAM_LENGTH <= normalizedQuery.length(); i++){
+                Set<E> posting = postings.get(normalizedQuery.substring(i, i + GRAM_LENGTH));
+                if (posting == null) return new ArrayList<>();
+                trigramPostings.add(posting);
+            }
+            trigramPostings.sort((first, second) -> Integer.compare(first.size(), second.size()));
+            List<E> candidates = new ArrayList<>();
+            for (E candidate : trigramPostings.get(0)){
+                boolean inEveryPosting = true;
+                for (int i = 1; i < trigramPostings.size() && inEveryPosting; i++){
+                    inEveryPosting = trigramPostings.get(i).contains(candidate);
+                }
+                if (inEveryPosting) candidates.add(candidate);
+            }
+            return candidates;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Whether the value the entity is indexed with contains the query, ignoring case. False for an entity no longer indexed.
+    public boolean matches(E entity, String query){
+        lock.readLock().lock();
+        try {
+            String indexedValue = indexedValues.get(entity);
+            return indexedValue != null && indexedValue.contains(query.toLowerCase());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removePosting(String gram, E entity){
+        Set<E> posting = postings.get(gram);
+        if (posting != null){
+            posting.remove(entity);
+            if (posting.isEmpty()) postings.remove(gram);
+        }
+    }
+
+    private static Set<String> grams(String value){
+        Set<String> grams = new HashSet<>();
+        for (int length = 1; length <= GRAM_LENGTH; length++){
+            for (int i = 0; i + length <= value.length(); i++){
+                grams.add(value.substring(i, i + length));
+            }
+        }
+        return grams;
+    }
+}
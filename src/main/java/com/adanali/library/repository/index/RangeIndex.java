@@ -0,0 +1,77 @@
+package com.adanali.library.repository.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Entities sorted by a numeric key, such as a date stored as its epoch day, answering range queries
+ * by walking only the keys inside the range.
+ */
+public class RangeIndex<E> {
+    private final Map<E, Long> indexedKeys = new HashMap<>();
+    private final NavigableMap<Long, Set<E>> entitiesByKey = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void index(E entity, long key){
+        lock.writeLock().lock();
+        try {
+            Long previousKey = indexedKeys.put(entity, key);
+            if (previousKey != null){
+                if (previousKey == key) return;
+                removeFromKey(previousKey, entity);
+            }
+            entitiesByKey.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(entity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(E entity){
+        lock.writeLock().lock();
+        try {
+            Long previousKey = indexedKeys.remove(entity);
+            if (previousKey != null) removeFromKey(previousKey, entity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear(){
+        lock.writeLock().lock();
+        try {
+            indexedKeys.clear();
+            entitiesByKey.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Entities with a key from fromKey to toKey, both inclusive, in the order of their keys.
+    public List<E> range(long fromKey, long toKey){
+        lock.readLock().lock();
+        try {
+            List<E> entities = new ArrayList<>();
+            if (fromKey > toKey) return entities;
+            entitiesByKey.subMap(fromKey, true, toKey, true).values().forEach(entities::addAll);
+            return entities;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeFromKey(long key, E entity){
+        Set<E> entities = entitiesByKey.get(key);
+        if (entities != null){
+            entities.remove(entity);
+            if (entities.isEmpty()) entitiesByKey.remove(key);
+        }
+    }
+}
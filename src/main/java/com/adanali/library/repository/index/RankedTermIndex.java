@@ -0,0 +1,308 @@
+package com.adanali.library.repository.index;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Term index over several text fields of the entities that scores matches with BM25.
+ * Each field keeps its own postings, term frequencies and lengths, and its score is multiplied by the boost of the field.
+ * Entities are numbered with dense document ids, so postings are plain int arrays sorted by document id.
+ * The scores of a query are summed in a table sized to the postings it reads, never to the whole catalog.
+ */
+public class RankedTermIndex<E> {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final double[] fieldBoosts;
+    private final Comparator<E> tieBreaker;
+    private final Map<E, Integer> documentIds = new HashMap<>();
+    private final List<E> documents = new ArrayList<>();
+    private final List<String[]> documentValues = new ArrayList<>();
+    private final Deque<Integer> freeDocumentIds = new ArrayDeque<>();
+    private final List<Map<String, PostingList>> postingsByField = new ArrayList<>();
+    private final int[][] lengthsByField;
+    private final long[] totalLengths;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param tieBreaker orders entities with the same score, so the results of a query are always the same
+     * @param fieldBoosts weight of every field, in the order the values are passed to {@link #index(Object, String...)}
+     */
+    public RankedTermIndex(Comparator<E> tieBreaker, double... fieldBoosts) {
+        this.tieBreaker = tieBreaker;
+        this.fieldBoosts = fieldBoosts.clone();
+        this.lengthsByField = new int[fieldBoosts.length][16];
+        this.totalLengths = new long[fieldBoosts.length];
+        for (int field = 0; field < fieldBoosts.length; field++){
+            postingsByField.add(new HashMap<>());
+        }
+    }
+
+    public void index(E entity, String... fieldValues){
+        if (fieldValues.length != fieldBoosts.length) throw new IllegalArgumentException("Expected "+fieldBoosts.length+" field values");
+        String[] values = fieldValues.clone();
+        lock.writeLock().lock();
+        try {
+            Integer existingId = documentIds.get(entity);
+            int documentId;
+            String[] previousValues = null;
+            if (existingId != null){
+                documentId = existingId;
+                previousValues = documentValues.get(documentId);
+                documents.set(documentId, entity);
+                documentValues.set(documentId, values);
+            }else {
+                documentId = allocateDocumentId(entity, values);
+            }
+            for (int field = 0; field < values.length; field++){
+                if (previousValues != null){
+                    if (previousValues[field].equals(values[field])) continue;
+                    removeField(field, documentId, previousValues[field]);
+                }
+                addField(field, documentId, values[field]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(E entity){
+        lock.writeLock().lock();
+        try {
+            Integer documentId = documentIds.remove(entity);
+            if (documentId != null){
+                String[] previousValues = documentValues.get(documentId);
+                for (int field = 0; field < fieldBoosts.length; field++){
+                    removeField(field, documentId, previousValues[field]);
+                }
+                documents.set(documentId, null);
+                documentValues.set(documentId, null);
+                freeDocumentIds.push(documentId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear(){
+        lock.writeLock().lock();
+        try {
+            documentIds.clear();
+            documents.clear();
+            documentValues.clear();
+            freeDocumentIds.clear();
+            for (int field = 0; field < fieldBoosts.length; field++){
+                postingsByField.get(field).clear();
+                Arrays.fill(lengthsByField[field], 0);
+                totalLengths[field] = 0;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Scores every entity containing at least one term of the query and keeps the best ones in a heap bounded by the limit,
+     * so a query matching most of the catalog still returns, and sorts, no more than the limit.
+     * @return at most limit entities, the most relevant first
+     */
+    public List<E> search(String query, int limit){
+        if (limit <= 0) throw new IllegalArgumentException("Limit should be greater than 0");
+        Set<String> queryTerms = new LinkedHashSet<>(tokenize(query));
+        lock.readLock().lock();
+        try {
+            int documentCount = documentIds.size();
+            int postingsRead = 0;
+            for (int field = 0; field < fieldBoosts.length; field++){
+                for (String term : queryTerms){
+                    PostingList posting = postingsByField.get(field).get(term);
+                    if (posting != null) postingsRead += posting.size;
+                }
+            }
+            ScoreTable scores = new ScoreTable(Math.min(postingsRead, documentCount));
+            for (int field = 0; field < fieldBoosts.length; field++){
+                if (totalLengths[field] == 0) continue;
+                double averageLength = (double) totalLengths[field] / documentCount;
+                int[] lengths = lengthsByField[field];
+                for (String term : queryTerms){
+                    PostingList posting = postingsByField.get(field).get(term);
+                    if (posting == null) continue;
+                    double idf = Math.log(1 + (documentCount - posting.size + 0.5) / (posting.size + 0.5));
+                    double weight = fieldBoosts[field] * idf * (K1 + 1);
+                    for (int i = 0; i < posting.size; i++){
+                        int documentId = posting.documentIds[i];
+                        int frequency = posting.frequencies[i];
+                        double normalization = K1 * (1 - B + B * lengths[documentId] / averageLength);
+                        scores.add(documentId, weight * frequency / (frequency + normalization));
+                    }
+                }
+            }
+            // The heap holds positions in the score table, matches are compared by score then by the tie breaker.
+            Comparator<Integer> byRelevance = Comparator.<Integer>comparingDouble(match -> scores.matchedScores[match])
+                    .thenComparing(match -> documents.get(scores.matchedIds[match]), tieBreaker.reversed());
+            // Min-heap of the best matches seen so far, its head is the first to be evicted.
+            PriorityQueue<Integer> best = new PriorityQueue<>(Math.min(limit, Math.max(scores.size, 1)), byRelevance);
+            for (int match = 0; match < scores.size; match++){
+                if (best.size() < limit){
+                    best.add(match);
+                }else if (scores.matchedScores[match] >= scores.matchedScores[best.peek()] && byRelevance.compare(match, best.peek()) > 0){
+                    best.poll();
+                    best.add(match);
+                }
+            }
+            List<E> results = new ArrayList<>(best.size());
+            while (!best.isEmpty()){
+                results.add(documents.get(scores.matchedIds[best.poll()]));
+            }
+            return results.reversed();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int allocateDocumentId(E entity, String[] values){
+        int documentId;
+        if (freeDocumentIds.isEmpty()){
+            documentId = documents.size();
+            documents.add(entity);
+            documentValues.add(values);
+            if (documentId == lengthsByField[0].length){
+                for (int field = 0; field < fieldBoosts.length; field++){
+                    lengthsByField[field] = Arrays.copyOf(lengthsByField[field], documentId * 2);
+                }
+            }
+        }else {
+            documentId = freeDocumentIds.pop();
+            documents.set(documentId, entity);
+            documentValues.set(documentId, values);
+        }
+        documentIds.put(entity, documentId);
+        return documentId;
+    }
+
+    private void addField(int field, int documentId, String value){
+        List<String> terms = tokenize(value);
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : terms){
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        Map<String, PostingList> postings = postingsByField.get(field);
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()){
+            postings.computeIfAbsent(entry.getKey(), t -> new PostingList()).add(documentId, entry.getValue());
+        }
+        lengthsByField[field][documentId] = terms.size();
+        totalLengths[field] += terms.size();
+    }
+
+    private void removeField(int field, int documentId, String previousValue){
+        Map<String, PostingList> postings = postingsByField.get(field);
+        for (String term : new LinkedHashSet<>(tokenize(previousValue))){
+            PostingList posting = postings.get(term);
+            if (posting != null){
+                posting.remove(documentId);
+                if (posting.size == 0) postings.remove(term);
+            }
+        }
+        totalLengths[field] -= lengthsByField[field][documentId];
+        lengthsByField[field][documentId] = 0;
+    }
+
+    // Splits the lower-cased text into runs of letters and digits.
+    static List<String> tokenize(String text){
+        List<String> terms = new ArrayList<>();
+        String lowerText = text.toLowerCase();
+        int start = -1;
+        for (int i = 0; i <= lowerText.length(); i++){
+            boolean isTermChar = i < lowerText.length() && Character.isLetterOrDigit(lowerText.charAt(i));
+            if (isTermChar && start < 0){
+                start = i;
+            }else if (!isTermChar && start >= 0){
+                terms.add(lowerText.substring(start, i));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    // Postings of one term sorted by document id, a document is found by binary search.
+    // New documents mostly get the highest id and are appended, only reused ids are inserted in the middle.
+    private static class PostingList {
+        private int[] documentIds = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+
+        private void add(int documentId, int frequency){
+            int position = Arrays.binarySearch(documentIds, 0, size, documentId);
+            if (position >= 0){
+                frequencies[position] = frequency;
+                return;
+            }
+            position = -position - 1;
+            if (size == documentIds.length){
+                documentIds = Arrays.copyOf(documentIds, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            System.arraycopy(documentIds, position, documentIds, position + 1, size - position);
+            System.arraycopy(frequencies, position, frequencies, position + 1, size - position);
+            documentIds[position] = documentId;
+            frequencies[position] = frequency;
+            size++;
+        }
+
+        private void remove(int documentId){
+            int position = Arrays.binarySearch(documentIds, 0, size, documentId);
+            if (position < 0) return;
+            size--;
+            System.arraycopy(documentIds, position + 1, documentIds, position, size - position);
+            System.arraycopy(frequencies, position + 1, frequencies, position, size - position);
+        }
+    }
+
+    // Open-addressing table of the scores of one query, keyed by document id. Matches are also listed in the order they were first scored.
+    private static class ScoreTable {
+        private final int[] slots;
+        private final int mask;
+        private final int[] matchedIds;
+        private final double[] matchedScores;
+        private int size;
+
+        private ScoreTable(int maxMatches){
+            int capacity = 2;
+            while (capacity < maxMatches * 2){
+                capacity <<= 1;
+            }
+            // A slot holds the position of its match plus one, zero for an empty slot.
+            slots = new int[capacity];
+            mask = capacity - 1;
+            matchedIds = new int[Math.max(maxMatches, 1)];
+            matchedScores = new double[Math.max(maxMatches, 1)];
+        }
+
+        private void add(int documentId, double score){
+            int hash = documentId * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (slots[slot] != 0){
+                int match = slots[slot] - 1;
+                if (matchedIds[match] == documentId){
+                    matchedScores[match] += score;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            matchedIds[size] = documentId;
+            matchedScores[size] = score;
+            slots[slot] = ++size;
+        }
+    }
+}
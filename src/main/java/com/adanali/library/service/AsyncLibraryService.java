@@ -0,0 +1,268 @@
+package com.adanali.library.service;
+
+import com.adanali.library.model.Book;
+import com.adanali.library.model.BorrowingRecord;
+import com.adanali.library.model.User;
+import com.adanali.library.repository.BookSearchResult;
+import com.adanali.library.repository.BooksRepository;
+import com.adanali.library.repository.BorrowingStatistics;
+import com.adanali.library.repository.Page;
+import com.adanali.library.repository.index.FuzzyMatches;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous facade of the library services : every operation returns a CompletableFuture instead of blocking the caller.
+ * The operations themselves run on a pool sized to the cores. A change completes its future only once it is on disk,
+ * and that wait runs on a separate I/O executor, so a caller can pipeline many changes while the flusher writes them in groups.
+ * Best used with the ASYNC durability policy, under SYNC and BATCHED the saves still block a thread of the CPU pool.
+ * A failed operation completes its future exceptionally with the exception the service threw.
+ */
+public class AsyncLibraryService implements AutoCloseable {
+    private final LibraryService library;
+    private final LibraryCommands libraryCommands;
+    private final ExecutorService cpuExecutor;
+    private final ExecutorService ioExecutor;
+
+    public AsyncLibraryService(LibraryService library){
+        this(library, Runtime.getRuntime().availableProcessors());
+    }
+
+    public AsyncLibraryService(LibraryService library, int cpuThreads){
+        this.library = library;
+        this.libraryCommands = new LibraryCommands(library);
+        AtomicInteger cpuThreadCount = new AtomicInteger();
+        this.cpuExecutor = Executors.newFixedThreadPool(cpuThreads, runnable -> {
+            Thread thread = new Thread(runnable, "library-cpu-"+cpuThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The I/O side only waits on the disk, a virtual thread per wait costs next to nothing.
+        this.ioExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("library-io-", 1).factory());
+    }
+
+    // Users
+
+    public CompletableFuture<User> login(String email, String password){
+        return read(() -> library.getUserService().authenticate(email, password));
+    }
+
+    public CompletableFuture<Void> registerStudent(String name, String email, String password, String address){
+        return write(() -> {
+            library.getUserService().addUser(name, email, password, address, UserService.UserRole.STUDENT);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> removeUser(String email){
+        return write(() -> {
+            libraryCommands.removeUser(email);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> updateUserName(String email, String name){
+        return write(() -> {
+            library.getUserService().updateUserName(email, name);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> updateUserPassword(String email, String password){
+        return write(() -> {
+            library.getUserService().updatePassword(email, password);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Optional<User>> getUser(String email){
+        return read(() -> library.getUserService().getUserByEmail(email));
+    }
+
+    public CompletableFuture<Page<User>> listUsersByRole(String role, String cursor, int pageSize){
+        return read(() -> library.getUserService().listUsersByRole(role, cursor, pageSize));
+    }
+
+    // Books
+
+    public CompletableFuture<Void> addBook(String isbn, String title, String authorName, String genre, LocalDate publicationDate, int quantity){
+        return write(() -> {
+            library.getBookService().addBook(isbn, title, authorName, genre, publicationDate, quantity);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> removeBook(String isbn){
+        return write(() -> {
+            libraryCommands.removeBook(isbn);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> increaseBookQuantity(String isbn, int value){
+        return write(() -> {
+            library.getBookService().increaseBookQuantity(isbn, value);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> decreaseBookQuantity(String isbn, int value){
+        return write(() -> {
+            library.getBookService().decreaseBookQuantity(isbn, value);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> updateBookTitle(String isbn, String title){
+        return write(() -> {
+            library.getBookService().updateBookTitle(isbn, title);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> updateBookAuthor(String isbn, String author){
+        return write(() -> {
+            library.getBookService().updateBookAuthor(isbn, author);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> updateBookGenre(String isbn, String genre){
+        return write(() -> {
+            library.getBookService().updateBookGenre(isbn, genre);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> updateBookPublicationDate(String isbn, LocalDate publicationDate){
+        return write(() -> {
+            library.getBookService().updateBookPublicationDate(isbn, publicationDate);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Optional<Book>> getBook(String isbn){
+        return read(() -> library.getBookService().getBookByIsbn(isbn));
+    }
+
+    public CompletableFuture<Page<Book>> listBooks(String cursor, int pageSize){
+        return read(() -> library.getBookService().listBooks(cursor, pageSize));
+    }
+
+    public CompletableFuture<List<Book>> searchBooks(String query, BooksRepository.SearchAttribute searchAttribute){
+        return read(() -> library.getBookService().searchBooks(query, searchAttribute));
+    }
+
+    public CompletableFuture<BookSearchResult> searchBooksWithFacets(String query, BooksRepository.SearchAttribute searchAttribute){
+        return read(() -> library.getBookService().searchBooksWithFacets(query, searchAttribute));
+    }
+
+    public CompletableFuture<List<Book>> searchBooksRanked(String query, int limit){
+        return read(() -> library.getBookService().searchBooksRanked(query, limit));
+    }
+
+    public CompletableFuture<FuzzyMatches<Book>> searchBooksFuzzy(String query, int limit){
+        return read(() -> library.getBookService().searchBooksFuzzy(query, limit));
+    }
+
+    public CompletableFuture<List<String>> completeTitles(String prefix, int limit){
+        return read(() -> library.getBookService().completeTitles(prefix, limit));
+    }
+
+    public CompletableFuture<List<String>> completeAuthors(String prefix, int limit){
+        return read(() -> library.getBookService().completeAuthors(prefix, limit));
+    }
+
+    public CompletableFuture<List<Book>> getBooksPublishedBetween(LocalDate from, LocalDate to){
+        return read(() -> library.getBookService().getBooksPublishedBetween(from, to));
+    }
+
+    public CompletableFuture<List<Book>> searchBooks(String query, BooksRepository.SearchAttribute searchAttribute, LocalDate from, LocalDate to){
+        return read(() -> library.getBookService().searchBooks(query, searchAttribute, from, to));
+    }
+
+    // Borrowing
+
+    public CompletableFuture<Void> borrowBook(String email, String isbn){
+        return write(() -> {
+            library.getBorrowingService().borrowBook(libraryCommands.borrowerOf(email), libraryCommands.bookOf(isbn));
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> returnBook(String email, String isbn){
+        return write(() -> {
+            library.getBorrowingService().returnBook(libraryCommands.borrowerOf(email), libraryCommands.bookOf(isbn));
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> payFine(String email, int amount){
+        return write(() -> {
+            library.getBorrowingService().payFine(libraryCommands.borrowerOf(email), amount);
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<BorrowingRecord>> getBorrowingsByBorrower(String email){
+        return read(() -> library.getBorrowingService().getBorrowingsByBorrower(libraryCommands.borrowerOf(email)));
+    }
+
+    public CompletableFuture<Page<BorrowingRecord>> listRecords(String cursor, int pageSize){
+        return read(() -> library.getBorrowingService().listRecords(cursor, pageSize));
+    }
+
+    public CompletableFuture<BorrowingStatistics> getStatistics(){
+        return read(() -> library.getBorrowingService().getStatistics());
+    }
+
+    // Persistence
+
+    // Rewrites the snapshot of every repository, entirely on the I/O executor.
+    public CompletableFuture<Void> saveAll(){
+        return CompletableFuture.runAsync(() -> {
+            library.getUserService().getUsersRepository().saveUsers();
+            library.getBookService().getBooksRepository().saveBooks();
+            library.getBorrowingService().getBorrowingRecordsRepository().saveBorrowingRecords();
+        }, ioExecutor);
+    }
+
+    // Waits for the operations already submitted, then for their changes to reach the disk.
+    @Override
+    public void close(){
+        cpuExecutor.close();
+        ioExecutor.close();
+        library.flushAndReport();
+    }
+
+    private <T> CompletableFuture<T> read(LibraryCommands.Operation<T> operation){
+        return CompletableFuture.supplyAsync(() -> call(operation), cpuExecutor);
+    }
+
+    // The change is made on the CPU pool, then its future waits on the I/O executor until the flusher has written it.
+    // A change the flusher could not write fails its future with the IOException.
+    private <T> CompletableFuture<T> write(LibraryCommands.Operation<T> operation){
+        return CompletableFuture.supplyAsync(() -> call(operation), cpuExecutor)
+                .thenApplyAsync(result -> call(() -> {
+                    library.flush();
+                    return result;
+                }), ioExecutor);
+    }
+
+    private static <T> T call(LibraryCommands.Operation<T> operation){
+        try {
+            return operation.run();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+}
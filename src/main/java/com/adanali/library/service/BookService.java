@@ -3,18 +3,28 @@ package com.adanali.library.service;
 import com.adanali.library.exceptions.EntityDuplicationException;
 import com.adanali.library.exceptions.EntityNotFoundException;
 import com.adanali.library.model.Book;
+import com.adanali.library.repository.BookSearchResult;
 import com.adanali.library.repository.BooksRepository;
+import com.adanali.library.repository.Page;
+import com.adanali.library.repository.PersistenceConfig;
+import com.adanali.library.repository.index.FacetCount;
+import com.adanali.library.repository.index.FuzzyMatches;
 import com.adanali.library.util.StringUtil;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class BookService {
     private final BooksRepository booksRepository;
 
     public BookService(){
-        booksRepository = new BooksRepository();
+        this(PersistenceConfig.defaults());
+    }
+
+    public BookService(PersistenceConfig persistenceConfig){
+        booksRepository = new BooksRepository(persistenceConfig);
     }
 
     public void addBook(String isbn,String title,String authorName,String genre,LocalDate publicationDate,int quantity) throws EntityDuplicationException {
@@ -46,35 +56,40 @@ public class BookService {
         return booksRepository.getAll();
     }
 
+    // Books in the order of their ISBN, starting after the cursor of the previous page (null for the first page).
+    public Page<Book> listBooks(String cursor, int pageSize){
+        return booksRepository.getPage(cursor,pageSize);
+    }
+
     public void updateBookTitle(String isbn, String newTitle) throws EntityNotFoundException {
         Book book = getBookByIsbn(isbn).orElseThrow(()-> new EntityNotFoundException("Book not found with ISBN : "+isbn));
         book.setTitle(newTitle);
-        booksRepository.saveBooks();
+        booksRepository.saveBook(book);
     }
 
     public void updateBookAuthor(String isbn, String author) throws EntityNotFoundException {
         Book book = getBookByIsbn(isbn).orElseThrow(()->new EntityNotFoundException("Book not found with ISBN : "+isbn));
         book.setAuthor(author);
-        booksRepository.saveBooks();
+        booksRepository.saveBook(book);
     }
 
     public void updateBookGenre(String isbn, String genre) throws EntityNotFoundException {
         Book book = getBookByIsbn(isbn).orElseThrow(()->new EntityNotFoundException("Book not found with ISBN : "+isbn));
         book.setGenre(genre);
-        booksRepository.saveBooks();
+        booksRepository.saveBook(book);
     }
 
     public void updateBookPublicationDate(String isbn, LocalDate publicationDate) throws EntityNotFoundException {
         Book book = getBookByIsbn(isbn).orElseThrow(()->new EntityNotFoundException("Book not found with ISBN : "+isbn));
         book.setPublicationDate(publicationDate);
-        booksRepository.saveBooks();
+        booksRepository.saveBook(book);
     }
 
     public void increaseBookQuantity(String isbn, int value) throws EntityNotFoundException {
         Book book = getBookByIsbn(isbn).orElseThrow(()->new EntityNotFoundException("Book not found with ISBN : "+isbn));
         if (value>0) {
             book.increaseQuantity(value);
-            booksRepository.saveBooks();
+            booksRepository.saveBook(book);
         }else throw new IllegalArgumentException("Invalid increment value");
     }
 
@@ -82,7 +97,7 @@ public class BookService {
         Book book = getBookByIsbn(isbn).orElseThrow(()->new EntityNotFoundException("Book not found with ISBN : "+isbn));
         if (value>0) {
             book.decreaseQuantity(value);
-            booksRepository.saveBooks();
+            booksRepository.saveBook(book);
         }else throw new IllegalArgumentException("Invalid decrement value");
     }
 
@@ -91,6 +106,65 @@ public class BookService {
         return booksRepository.searchBooks(query,searchAttribute);
     }
 
+    public List<Book> getBooksPublishedBetween(LocalDate from, LocalDate to){
+        validateDateRange(from, to);
+        return booksRepository.getBooksPublishedBetween(from,to);
+    }
+
+    public List<Book> searchBooks(String query , BooksRepository.SearchAttribute searchAttribute, LocalDate from, LocalDate to){
+        StringUtil.validateNotNullOrBlank(query,"Search Query");
+        validateDateRange(from, to);
+        return booksRepository.searchBooks(query,searchAttribute,from,to);
+    }
+
+    private static void validateDateRange(LocalDate from, LocalDate to){
+        if (from == null || to == null) throw new IllegalArgumentException("Dates cannot be null");
+        if (from.isAfter(to)) throw new IllegalArgumentException("Start date cannot be after the end date");
+    }
+
+    public BookSearchResult searchBooksWithFacets(String query , BooksRepository.SearchAttribute searchAttribute){
+        StringUtil.validateNotNullOrBlank(query,"Search Query");
+        return booksRepository.searchBooksWithFacets(query,searchAttribute);
+    }
+
+    public Map<String, FacetCount> getGenreFacets(){
+        return booksRepository.getGenreFacets();
+    }
+
+    public Map<Integer, FacetCount> getYearFacets(){
+        return booksRepository.getYearFacets();
+    }
+
+    public Map<String, FacetCount> getAuthorFacets(){
+        return booksRepository.getAuthorFacets();
+    }
+
+    public Page<Book> searchBooks(String query , BooksRepository.SearchAttribute searchAttribute, String cursor, int pageSize){
+        StringUtil.validateNotNullOrBlank(query,"Search Query");
+        return booksRepository.searchBooks(query,searchAttribute,cursor,pageSize);
+    }
+
+    public List<Book> searchBooksRanked(String query, int limit){
+        StringUtil.validateNotNullOrBlank(query,"Search Query");
+        return booksRepository.searchBooksRanked(query,limit);
+    }
+
+    public FuzzyMatches<Book> searchBooksFuzzy(String query, int limit){
+        StringUtil.validateNotNullOrBlank(query,"Search Query");
+        return booksRepository.searchBooksFuzzy(query,limit);
+    }
+
+    // Titles starting with the prefix, the ones shared by the most books first.
+    public List<String> completeTitles(String prefix, int limit){
+        StringUtil.validateNotNullOrBlank(prefix,"Prefix");
+        return booksRepository.completeTitles(prefix,limit);
+    }
+
+    public List<String> completeAuthors(String prefix, int limit){
+        StringUtil.validateNotNullOrBlank(prefix,"Prefix");
+        return booksRepository.completeAuthors(prefix,limit);
+    }
+
     public BooksRepository getBooksRepository() {
         return booksRepository;
     }
@@ -5,24 +5,35 @@ import com.adanali.library.model.Book;
 import com.adanali.library.model.Borrower;
 import com.adanali.library.model.BorrowingRecord;
 import com.adanali.library.model.BorrowingStatus;
+import com.adanali.library.model.User;
 import com.adanali.library.repository.BooksRepository;
+import com.adanali.library.repository.BorrowingHistory;
 import com.adanali.library.repository.BorrowingRecordsRepository;
+import com.adanali.library.repository.BorrowingStatistics;
+import com.adanali.library.repository.Page;
+import com.adanali.library.repository.PersistenceConfig;
 import com.adanali.library.repository.UsersRepository;
 import com.adanali.library.util.StringUtil;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 public class BorrowingService {
     private BorrowingRecordsRepository borrowingRecordsRepository;
     private UsersRepository usersRepository;
     private BooksRepository booksRepository;
-
+    // Several desks may serve borrowers at once. A checkout, return or payment locks the borrower with the lock
+    // of the repository, which the overdue sweep takes too. The copies of a book are reserved with compare-and-set instead, see Book.tryReserveCopy.
 
     public BorrowingService(UsersRepository usersRepository, BooksRepository booksRepository) {
+        this(usersRepository, booksRepository, PersistenceConfig.defaults());
+    }
+
+    public BorrowingService(UsersRepository usersRepository, BooksRepository booksRepository, PersistenceConfig persistenceConfig) {
         this.usersRepository = usersRepository;
         this.booksRepository = booksRepository;
-        borrowingRecordsRepository = new BorrowingRecordsRepository(usersRepository,booksRepository);
+        borrowingRecordsRepository = new BorrowingRecordsRepository(usersRepository,booksRepository,persistenceConfig);
     }
 
     public void addRecord(String recordId, Book book, Borrower borrower, LocalDate borrowDate, LocalDate dueDate) throws EntityDuplicationException {
@@ -37,46 +48,100 @@ public class BorrowingService {
         return borrowingRecordsRepository.getById(recordId);
     }
 
+    // The copy is reserved first and the record is only created for a reserved copy, a failed record gives the copy back.
     public void borrowBook(Borrower borrower , Book book) throws EntityDuplicationException {
-        if (borrower.canBorrow()){
-            if (book.isAvailableForBorrow()){
-                String newId;
-                do {
-                    newId = System.currentTimeMillis()+ "-" + UUID.randomUUID();
-                }while (getRecordById(newId).isPresent());
-                addRecord(newId, book, borrower, LocalDate.now(), LocalDate.now().plusDays(borrower.getBorrowDurationInDays()));
-                book.decreaseQuantity(1);
-                booksRepository.saveBooks();
-            }else throw new IllegalStateException("Book is not available for borrowing right now.");
-        }else throw new IllegalStateException("Borrower has a pending fine!");
+        Lock borrowerLock = borrowingRecordsRepository.getBorrowerLock(emailOf(borrower));
+        borrowerLock.lock();
+        try {
+            if (borrower.canBorrow()){
+                if (book.tryReserveCopy()){
+                    try {
+                        String newId;
+                        do {
+                            newId = System.currentTimeMillis()+ "-" + UUID.randomUUID();
+                        }while (getRecordById(newId).isPresent());
+                        addRecord(newId, book, borrower, LocalDate.now(), LocalDate.now().plusDays(borrower.getBorrowDurationInDays()));
+                    }catch (EntityDuplicationException | RuntimeException e){
+                        book.releaseCopy();
+                        throw e;
+                    }
+                    booksRepository.saveBook(book);
+                }else throw new IllegalStateException("Book is not available for borrowing right now.");
+            }else throw new IllegalStateException("Borrower has a pending fine!");
+        }finally {
+            borrowerLock.unlock();
+        }
     }
 
     public void returnBook(Borrower borrower, Book book){
-        BorrowingRecord relatedBorrowingRecord = borrowingRecordsRepository.getAll().stream()
-                .filter(borrowingRecord -> borrowingRecord.getBorrower().equals(borrower) && borrowingRecord.getBorrowedBook().equals(book) && borrowingRecord.getStatus().equals(BorrowingStatus.ACTIVE))
-                .findFirst()
-                .orElseThrow(()->new IllegalStateException("This Borrower does not have an active borrowing record for the book : "+book.getTitle()));
-        relatedBorrowingRecord.setReturnDate(LocalDate.now());
-        book.increaseQuantity(1);
-        borrowingRecordsRepository.saveBorrowingRecords();
-        booksRepository.saveBooks();
-        usersRepository.saveUsers();
+        Lock borrowerLock = borrowingRecordsRepository.getBorrowerLock(emailOf(borrower));
+        borrowerLock.lock();
+        try {
+            BorrowingRecord relatedBorrowingRecord = borrowingRecordsRepository.findOpenRecord(emailOf(borrower), book.getIsbn())
+                    .orElseThrow(()->new IllegalStateException("This Borrower does not have an active borrowing record for the book : "+book.getTitle()));
+            relatedBorrowingRecord.setReturnDate(LocalDate.now());
+            book.releaseCopy();
+            borrowingRecordsRepository.saveBorrowingRecord(relatedBorrowingRecord);
+            booksRepository.saveBook(book);
+            saveBorrower(borrower);
+        }finally {
+            borrowerLock.unlock();
+        }
     }
 
     public void payFine(Borrower borrower, int amount){
         if (amount > 0){
-            if (borrower.getPendingFine() > 0 ){
-                borrower.reducePendingFine(amount);
-                usersRepository.saveUsers();
-                borrowingRecordsRepository.saveBorrowingRecords();
-            }else throw new IllegalStateException("No pending fine");
+            Lock borrowerLock = borrowingRecordsRepository.getBorrowerLock(emailOf(borrower));
+            borrowerLock.lock();
+            try {
+                if (borrower.getPendingFine() > 0 ){
+                    borrower.reducePendingFine(amount);
+                    saveBorrower(borrower);
+                    if (borrower.getPendingFine() == 0) borrowingRecordsRepository.archiveClosedRecordsOf(emailOf(borrower));
+                }else throw new IllegalStateException("No pending fine");
+            }finally {
+                borrowerLock.unlock();
+            }
         }else throw new IllegalArgumentException("Invalid payment amount!");
     }
 
+    // A book leaves the catalog with its borrowing records, and only once every copy is back.
+    public void removeBook(Book book){
+        if (hasActiveBorrowings(book)) throw new IllegalStateException("Could not remove the Book, it has active borrowings!");
+        borrowingRecordsRepository.removeByBookIsbn(book.getIsbn());
+        booksRepository.remove(book.getIsbn());
+    }
+
+    // A borrower leaves with their borrowing records, once every book is back and every fine is paid.
+    // Holds the borrower lock, so no checkout or payment slips in between the checks and the removal.
+    public void removeBorrower(Borrower borrower){
+        String email = emailOf(borrower);
+        Lock borrowerLock = borrowingRecordsRepository.getBorrowerLock(email);
+        borrowerLock.lock();
+        try {
+            if (borrowingRecordsRepository.hasOpenRecordsForBorrower(email)) throw new IllegalStateException("Could not remove the User, they have books to return!");
+            if (borrower.getPendingFine() > 0) throw new IllegalStateException("Could not remove the User, they have a pending fine!");
+            borrowingRecordsRepository.removeByBorrowerEmail(email);
+            usersRepository.remove(email);
+        }finally {
+            borrowerLock.unlock();
+        }
+    }
+
+    private void saveBorrower(Borrower borrower){
+        if (borrower instanceof User user){
+            usersRepository.saveUser(user);
+        }else throw new IllegalStateException("Borrower is not a User"); // Unreachable
+    }
+
+    private static String emailOf(Borrower borrower){
+        if (borrower instanceof User user){
+            return user.getEmail();
+        }else throw new IllegalStateException("Borrower is not a User"); // Unreachable
+    }
+
     public List<BorrowingRecord> getBorrowingsByStatus(BorrowingStatus status){
-        return borrowingRecordsRepository.getAll().stream()
-                .filter(borrowingRecord -> borrowingRecord.getStatus().equals(status))
-                .toList();
+        return borrowingRecordsRepository.getByStatus(status);
     }
 
     public List<BorrowingRecord> getActiveBorrowings(){
@@ -88,33 +153,49 @@ public class BorrowingService {
     }
 
     public List<BorrowingRecord> getOverdueBorrowings(){
-        return borrowingRecordsRepository.getAll()
-                .stream()
-                .filter(borrowingRecord->( borrowingRecord.getReturnDate() == null ) && LocalDate.now().isAfter( borrowingRecord.getDueDate() ) )
-                .toList();
+        return borrowingRecordsRepository.getOpenRecordsDueBefore(LocalDate.now());
     }
 
     public List<BorrowingRecord> getBorrowingsByBorrower(Borrower borrower){
-        return borrowingRecordsRepository.getAll().stream()
-                .filter(record->record.getBorrower().equals(borrower))
-                .toList();
+        return borrowingRecordsRepository.getByBorrowerEmail(emailOf(borrower));
     }
 
     public List<BorrowingRecord> getBorrowingsByBook(Book book){
-        return borrowingRecordsRepository.getAll().stream()
-                .filter(record->record.getBorrowedBook().equals(book))
-                .toList();
+        return borrowingRecordsRepository.getByBookIsbn(book.getIsbn());
     }
 
     public boolean hasActiveBorrowings (Book book){
         if (book != null){
-            return borrowingRecordsRepository.getAll().stream()
-                    .filter(record->record.getBorrowedBook().equals(book))
-                    .anyMatch(record->record.getStatus().equals(BorrowingStatus.ACTIVE));
+            return borrowingRecordsRepository.hasOpenRecordsForBook(book.getIsbn());
         }else throw new IllegalArgumentException("Pass valid Book!");
     }
 
+    // Counts per status, fine totals and open loans, computed from the columnar history instead of the records.
+    public BorrowingStatistics getStatistics(){
+        return borrowingRecordsRepository.getHistory().summarize(LocalDate.now());
+    }
+
+    // Total of the fines charged on the borrowings of a book, however many records it has.
+    public long getTotalFinesOfBook(Book book){
+        BorrowingHistory history = borrowingRecordsRepository.getHistory();
+        int bookCode = history.bookCodeOf(book.getIsbn());
+        if (bookCode < 0) return 0;
+        long[] totalFines = new long[1];
+        history.scan((borrowDay, dueDay, returnDay, status, fine, recordBookCode, borrowerCode) -> {
+            if (recordBookCode == bookCode) totalFines[0] += fine;
+        });
+        return totalFines[0];
+    }
+
     public List<BorrowingRecord> getAllRecords(){
         return borrowingRecordsRepository.getAll();
     }
+
+    public Page<BorrowingRecord> listRecords(String cursor, int pageSize){
+        return borrowingRecordsRepository.getPage(cursor,pageSize);
+    }
+
+    public BorrowingRecordsRepository getBorrowingRecordsRepository() {
+        return borrowingRecordsRepository;
+    }
 }
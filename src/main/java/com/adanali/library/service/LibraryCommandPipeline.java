@@ -0,0 +1,207 @@
+package com.adanali.library.service;
+
+import com.adanali.library.repository.DurabilityPolicy;
+import com.adanali.library.util.RingBuffer;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional execution mode where every change to the library goes through a single writer thread.
+ * Desks submit commands to a bounded ring buffer and get a future back. The writer applies the commands one by one in
+ * submission order, so two changes never contend with each other however hot the title, then flushes the Database once
+ * for the whole batch and completes the futures of the batch. Reads do not go through the pipeline, they query the services directly.
+ * Requires the ASYNC durability policy, so the saves of a batch are only written by its flush : under SYNC or BATCHED
+ * every save would block the single writer on the disk or on the flush window.
+ */
+public class LibraryCommandPipeline implements AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int MAX_BATCH_SIZE = 512;
+    private static final long WRITER_PARK_MILLIS = 10;
+
+    private final LibraryService library;
+    private final LibraryCommands libraryCommands;
+    private final RingBuffer<Command<?>> commands;
+    private final Thread writer;
+    private volatile boolean running = true;
+    // Desks between their check of running and the publication of their command, the writer waits for them before it stops.
+    private final AtomicInteger submitting = new AtomicInteger();
+
+    private static final class Command<T> {
+        private final LibraryCommands.Operation<T> operation;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Throwable failure;
+
+        private Command(LibraryCommands.Operation<T> operation) {
+            this.operation = operation;
+        }
+
+        // Any failure, an Error included, fails this command only and never stops the writer.
+        private void apply(){
+            try {
+                result = operation.run();
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+
+        // A command applied in memory but not written to the Database fails with the flush failure.
+        private void complete(IOException flushFailure){
+            if (failure != null){
+                future.completeExceptionally(failure);
+            }else if (flushFailure != null){
+                future.completeExceptionally(flushFailure);
+            }else future.complete(result);
+        }
+    }
+
+    public LibraryCommandPipeline(LibraryService library){
+        this(library, DEFAULT_CAPACITY);
+    }
+
+    // The capacity is rounded up to a power of two.
+    public LibraryCommandPipeline(LibraryService library, int capacity){
+        if (library.getPersistenceConfig().getDurabilityPolicy() != DurabilityPolicy.ASYNC){
+            throw new IllegalArgumentException("The command pipeline needs the ASYNC durability policy!");
+        }
+        this.library = library;
+        this.libraryCommands = new LibraryCommands(library);
+        this.commands = new RingBuffer<>(Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+        this.writer = new Thread(this::runWriter, "library-command-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Users
+
+    public CompletableFuture<Void> addUser(String name, String email, String password, String address, UserService.UserRole role){
+        return submit(() -> {
+            library.getUserService().addUser(name, email, password, address, role);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> removeUser(String email){
+        return submit(() -> {
+            libraryCommands.removeUser(email);
+            return null;
+        });
+    }
+
+    // Books
+
+    public CompletableFuture<Void> addBook(String isbn, String title, String authorName, String genre, LocalDate publicationDate, int quantity){
+        return submit(() -> {
+            library.getBookService().addBook(isbn, title, authorName, genre, publicationDate, quantity);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> removeBook(String isbn){
+        return submit(() -> {
+            libraryCommands.removeBook(isbn);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> increaseBookQuantity(String isbn, int value){
+        return submit(() -> {
+            library.getBookService().increaseBookQuantity(isbn, value);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> decreaseBookQuantity(String isbn, int value){
+        return submit(() -> {
+            library.getBookService().decreaseBookQuantity(isbn, value);
+            return null;
+        });
+    }
+
+    // Borrowing
+
+    public CompletableFuture<Void> borrowBook(String email, String isbn){
+        return submit(() -> {
+            library.getBorrowingService().borrowBook(libraryCommands.borrowerOf(email), libraryCommands.bookOf(isbn));
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> returnBook(String email, String isbn){
+        return submit(() -> {
+            library.getBorrowingService().returnBook(libraryCommands.borrowerOf(email), libraryCommands.bookOf(isbn));
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> payFine(String email, int amount){
+        return submit(() -> {
+            library.getBorrowingService().payFine(libraryCommands.borrowerOf(email), amount);
+            return null;
+        });
+    }
+
+    /**
+     * Applies the commands already submitted, flushes them and stops the writer.
+     * Commands submitted once closing has started fail with an IllegalStateException.
+     */
+    @Override
+    public void close(){
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Waits while the ring buffer is full, which holds back the desks when the writer falls behind.
+    // Counted in submitting before running is checked : either the desk sees the pipeline closing, or the writer sees the desk.
+    private <T> CompletableFuture<T> submit(LibraryCommands.Operation<T> operation){
+        Command<T> command = new Command<>(operation);
+        submitting.incrementAndGet();
+        try {
+            if (!running){
+                command.future.completeExceptionally(new IllegalStateException("Command pipeline is closed"));
+                return command.future;
+            }
+            commands.put(command);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            command.future.completeExceptionally(e);
+        } finally {
+            submitting.decrementAndGet();
+        }
+        return command.future;
+    }
+
+    private void runWriter(){
+        List<Command<?>> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running || submitting.get() > 0 || !commands.isDrained()){
+            if (commands.drain(batch::add, MAX_BATCH_SIZE) == 0){
+                commands.awaitPublished(WRITER_PARK_MILLIS, TimeUnit.MILLISECONDS);
+                continue;
+            }
+            for (Command<?> command : batch){
+                command.apply();
+            }
+            // Group commit : one flush makes the whole batch durable before any of its futures completes.
+            IOException flushFailure = null;
+            try {
+                library.flush();
+            } catch (IOException e) {
+                flushFailure = e;
+            }
+            for (Command<?> command : batch){
+                command.complete(flushFailure);
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.adanali.library.service;
+
+import com.adanali.library.exceptions.EntityNotFoundException;
+import com.adanali.library.model.Book;
+import com.adanali.library.model.Borrower;
+import com.adanali.library.model.User;
+
+/**
+ * The pieces the asynchronous front ends build their operations from : the lookups by e-mail and ISBN, and the removals,
+ * which go through the same checks as the console.
+ */
+final class LibraryCommands {
+    private final LibraryService library;
+
+    // An operation run for a caller, its exception fails the caller's future.
+    @FunctionalInterface
+    interface Operation<T> {
+        T run() throws Exception;
+    }
+
+    LibraryCommands(LibraryService library){
+        this.library = library;
+    }
+
+    Borrower borrowerOf(String email) throws EntityNotFoundException {
+        User user = library.getUserService().getUserByEmail(email)
+                .orElseThrow(() -> new EntityNotFoundException("There is no Borrower registered with the email : "+email));
+        if (user instanceof Borrower borrower){
+            return borrower;
+        }else throw new IllegalArgumentException("The User don't even have borrowing rights!");
+    }
+
+    Book bookOf(String isbn) throws EntityNotFoundException {
+        return library.getBookService().getBookByIsbn(isbn)
+                .orElseThrow(() -> new EntityNotFoundException("There is no book in library with ISBN : "+isbn));
+    }
+
+    // A borrower is only removed once their books are back and their fines paid, see BorrowingService.removeBorrower.
+    void removeUser(String email) throws EntityNotFoundException {
+        User user = library.getUserService().getUserByEmail(email)
+                .orElseThrow(() -> new EntityNotFoundException("User not found with email : "+email));
+        if (user instanceof Borrower borrower){
+            library.getBorrowingService().removeBorrower(borrower);
+        }else library.getUserService().removeUser(email);
+    }
+
+    // Refused while copies of the book are out, see BorrowingService.removeBook.
+    void removeBook(String isbn) throws EntityNotFoundException {
+        library.getBorrowingService().removeBook(bookOf(isbn));
+    }
+}
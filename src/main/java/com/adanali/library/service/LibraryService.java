@@ -5,9 +5,17 @@ import com.adanali.library.exceptions.InvalidCredentialsException;
 import com.adanali.library.exceptions.EntityNotFoundException;
 import com.adanali.library.model.Book;
 import com.adanali.library.model.Borrower;
+import com.adanali.library.model.BorrowingStatus;
 import com.adanali.library.model.User;
+import com.adanali.library.repository.BookSearchResult;
 import com.adanali.library.repository.BooksRepository;
+import com.adanali.library.repository.BorrowingStatistics;
+import com.adanali.library.repository.DurabilityPolicy;
+import com.adanali.library.repository.Page;
+import com.adanali.library.repository.PersistenceConfig;
+import com.adanali.library.repository.index.FuzzyMatches;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.Optional;
 
@@ -15,11 +23,66 @@ public class LibraryService {
     private UserService userService;
     private BookService bookService;
     private BorrowingService borrowingService;
+    private final PersistenceConfig persistenceConfig;
+    private static final int BEST_MATCHES_LIMIT = 20;
+    private static final int SUGGESTIONS_LIMIT = 10;
+    private static final int PAGE_SIZE = 20;
 
     public LibraryService(){
-        userService = new UserService();
-        bookService = new BookService();
-        borrowingService = new BorrowingService(userService.getUsersRepository(), bookService.getBooksRepository());
+        this(PersistenceConfig.defaults());
+    }
+
+    public LibraryService(PersistenceConfig persistenceConfig){
+        this.persistenceConfig = persistenceConfig;
+        userService = new UserService(persistenceConfig);
+        bookService = new BookService(persistenceConfig);
+        borrowingService = new BorrowingService(userService.getUsersRepository(), bookService.getBooksRepository(), persistenceConfig);
+        if (persistenceConfig.getDurabilityPolicy() != DurabilityPolicy.SYNC){
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flushAndReport, "library-shutdown-flush"));
+        }
+    }
+
+    // The services behind the console screens, for the front ends that need their results rather than printed output.
+    public UserService getUserService() {
+        return userService;
+    }
+
+    public BookService getBookService() {
+        return bookService;
+    }
+
+    public BorrowingService getBorrowingService() {
+        return borrowingService;
+    }
+
+    public PersistenceConfig getPersistenceConfig() {
+        return persistenceConfig;
+    }
+
+    /**
+     * Returns once every change made so far is written to the Database.
+     * @throws IOException if a change could not be written, it stays pending and is retried by the next flush
+     */
+    public void flush() throws IOException {
+        persistenceConfig.flush();
+    }
+
+    // Flush for the console and the shutdown hook, which can only report a failure.
+    public void flushAndReport(){
+        try {
+            flush();
+        }catch (IOException e){
+            System.out.println(e.getMessage());
+            if (e.getCause() != null) System.out.println(e.getCause().getMessage());
+        }
+    }
+
+    // Writes every repository to its JSON file, whatever the configured storage format is.
+    public void exportToJson(){
+        userService.getUsersRepository().exportToJson();
+        bookService.getBooksRepository().exportToJson();
+        borrowingService.getBorrowingRecordsRepository().exportToJson();
+        System.out.println("Database exported to JSON.");
     }
 
     // User Management
@@ -74,8 +137,8 @@ public class LibraryService {
     public void removeStudent(String email){
         try {
             User studentToRemove = userService.getUserByEmail(email).orElseThrow(() -> new EntityNotFoundException("User not found with email : "+email));
-            if (studentToRemove.getRole().equals("Student")){
-                userService.removeUser(email);
+            if (studentToRemove.getRole().equals("Student") && studentToRemove instanceof Borrower student){
+                borrowingService.removeBorrower(student);
                 System.out.println("Student removed successfully");
             }else throw new IllegalStateException("Provided email ("+email+") does not belongs to a Student");
         } catch (IllegalStateException | IllegalArgumentException e){
@@ -85,14 +148,16 @@ public class LibraryService {
         }
     }
 
-    public void printAllLibrarians(){
+    // The list screens print a page at a time, each returns the cursor of the next page or null after the last one.
+
+    public String printAllLibrarians(String cursor){
         System.out.printf("%-25s | %-25s%n","NAME","E-MAIL");
-        userService.listAllUsers().stream().filter(x->x.getRole().equalsIgnoreCase("Librarian")).forEach(System.out::println);
+        return printPage(userService.listUsersByRole("Librarian", cursor, PAGE_SIZE));
     }
 
-    public void printAllStudents(){
+    public String printAllStudents(String cursor){
         System.out.printf("%-15s | %-25s | %-20s | %-12s%n","NAME","E-MAIL","ADDRESS","PENDING FINE");
-        userService.listAllUsers().stream().filter(x->x.getRole().equalsIgnoreCase("Student")).forEach(System.out::println);
+        return printPage(userService.listUsersByRole("Student", cursor, PAGE_SIZE));
     }
 
     public void searchForUser(String query){
@@ -116,10 +181,8 @@ public class LibraryService {
     public void removeABook(String isbn){
         try {
             Book book = bookService.getBookByIsbn(isbn).orElseThrow(()-> new EntityNotFoundException("Book not found with ISBN : "+isbn));
-            if (!borrowingService.hasActiveBorrowings(book)){
-                bookService.removeBook(isbn);
-                System.out.println("Book is successfully removed!");
-            }else throw new IllegalStateException("Could not remove the Book, it has active borrowings!");
+            borrowingService.removeBook(book);
+            System.out.println("Book is successfully removed!");
         }catch (IllegalArgumentException | IllegalStateException e){
             System.out.println(e.getMessage());
         }catch (EntityNotFoundException e) {
@@ -192,15 +255,28 @@ public class LibraryService {
         }
     }
 
-    public void printAllBooks(){
+    public void printGenreCounts(){
+        System.out.printf("%-20s | %s%n","GENRE","BOOKS");
+        bookService.getGenreFacets().forEach((genre, count) -> System.out.printf("%-20s | %s%n", genre, count));
+    }
+
+    public String printAllBooks(String cursor){
         System.out.printf("%-16s | %-40s | %-25s | %-20s | %-20s | %-8s%n","ISBN","TITLE","AUTHOR","GENRE","PUBLICATION DATE","QUANTITY");
-        bookService.listAllBooks().forEach(System.out::println);
+        return printPage(bookService.listBooks(cursor, PAGE_SIZE));
     }
 
     public void searchForBookOverall(String query){
         try {
+            BookSearchResult result = bookService.searchBooksWithFacets(query, BooksRepository.SearchAttribute.ALL);
             System.out.printf("%-16s | %-40s | %-25s | %-20s | %-20s | %-8s%n","ISBN","TITLE","AUTHOR","GENRE","PUBLICATION DATE","QUANTITY");
-            bookService.searchBooks(query, BooksRepository.SearchAttribute.ALL).forEach(System.out::println);
+            result.getBooks().forEach(System.out::println);
+            System.out.println();
+            System.out.println("Matches by genre :");
+            result.getGenreFacets().forEach((genre, count) -> System.out.printf("%-20s | %s%n", genre, count));
+            System.out.println("Matches by author :");
+            result.getAuthorFacets().forEach((author, count) -> System.out.printf("%-20s | %s%n", author, count));
+            System.out.println("Matches by publication year :");
+            result.getYearFacets().forEach((year, count) -> System.out.printf("%-20s | %s%n", year, count));
         }catch (IllegalArgumentException e){
             System.out.println(e.getMessage());
         }
@@ -221,6 +297,60 @@ public class LibraryService {
         bookService.searchBooks(query, BooksRepository.SearchAttribute.GENRE).forEach(System.out::println);
     }
 
+    public void searchForBestMatches(String query){
+        try {
+            System.out.printf("%-16s | %-40s | %-25s | %-20s | %-20s | %-8s%n","ISBN","TITLE","AUTHOR","GENRE","PUBLICATION DATE","QUANTITY");
+            bookService.searchBooksRanked(query, BEST_MATCHES_LIMIT).forEach(System.out::println);
+        }catch (IllegalArgumentException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    public void searchForBookFuzzy(String query){
+        try {
+            System.out.printf("%-16s | %-40s | %-25s | %-20s | %-20s | %-8s%n","ISBN","TITLE","AUTHOR","GENRE","PUBLICATION DATE","QUANTITY");
+            FuzzyMatches<Book> matches = bookService.searchBooksFuzzy(query, BEST_MATCHES_LIMIT);
+            matches.getEntities().forEach(System.out::println);
+            if (matches.isTruncated()) System.out.println("The search was cut short, some close matches may be missing. Try a more precise query.");
+        }catch (IllegalArgumentException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    public void printBooksPublishedBetween(LocalDate from, LocalDate to){
+        try {
+            System.out.printf("%-16s | %-40s | %-25s | %-20s | %-20s | %-8s%n","ISBN","TITLE","AUTHOR","GENRE","PUBLICATION DATE","QUANTITY");
+            bookService.getBooksPublishedBetween(from, to).forEach(System.out::println);
+        }catch (IllegalArgumentException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    public void searchForBookPublishedBetween(String query, LocalDate from, LocalDate to){
+        try {
+            System.out.printf("%-16s | %-40s | %-25s | %-20s | %-20s | %-8s%n","ISBN","TITLE","AUTHOR","GENRE","PUBLICATION DATE","QUANTITY");
+            bookService.searchBooks(query, BooksRepository.SearchAttribute.ALL, from, to).forEach(System.out::println);
+        }catch (IllegalArgumentException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    public void suggestTitles(String prefix){
+        try {
+            bookService.completeTitles(prefix, SUGGESTIONS_LIMIT).forEach(System.out::println);
+        }catch (IllegalArgumentException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    public void suggestAuthors(String prefix){
+        try {
+            bookService.completeAuthors(prefix, SUGGESTIONS_LIMIT).forEach(System.out::println);
+        }catch (IllegalArgumentException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
     // Borrowing Services
 
     public void addBorrowedBook(String email, String isbn){
@@ -282,6 +412,16 @@ public class LibraryService {
         borrowingService.getOverdueBorrowings().forEach(System.out::println);
     }
 
+    public void printBorrowingStatistics(){
+        BorrowingStatistics statistics = borrowingService.getStatistics();
+        for (BorrowingStatus status : BorrowingStatus.values()){
+            System.out.printf("%-25s : %d%n", status, statistics.getCount(status));
+        }
+        System.out.printf("%-25s : %d%n", "Books not returned", statistics.getOpenLoans());
+        System.out.printf("%-25s : %d%n", "Books past their due date", statistics.getOverdueOpenLoans());
+        System.out.printf("%-25s : %d%n", "Total fines", statistics.getTotalFines());
+    }
+
     public void printBorrowingsByUser(String email){
         try {
             User user = userService.getUserByEmail(email).orElseThrow(()->new EntityNotFoundException("There is no Borrower registered with the email : "+email));
@@ -306,10 +446,15 @@ public class LibraryService {
         }
     }
 
-    public void printAllBorrowingRecords(){
+    public String printAllBorrowingRecords(String cursor){
         System.out.printf("%-50s | %-25s | %-25s | %-20s | %-20s | %-20s | %-10s | %-8s%n",
                 "RECORD ID", "BOOK", "Borrower", "BORROW DATE", "DUE DATE", "RETURN DATE", "STATUS", "FINE" );
-        borrowingService.getAllRecords().forEach(System.out::println);
+        return printPage(borrowingService.listRecords(cursor, PAGE_SIZE));
+    }
+
+    private static String printPage(Page<?> page){
+        page.getItems().forEach(System.out::println);
+        return page.getNextCursor();
     }
 
 }
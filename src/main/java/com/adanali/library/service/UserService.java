@@ -6,6 +6,8 @@ import com.adanali.library.exceptions.EntityNotFoundException;
 import com.adanali.library.model.Librarian;
 import com.adanali.library.model.Student;
 import com.adanali.library.model.User;
+import com.adanali.library.repository.Page;
+import com.adanali.library.repository.PersistenceConfig;
 import com.adanali.library.repository.UsersRepository;
 import com.adanali.library.util.StringUtil;
 
@@ -15,7 +17,11 @@ public class UserService {
     private UsersRepository usersRepository;
 
     public UserService(){
-        usersRepository = new UsersRepository();
+        this(PersistenceConfig.defaults());
+    }
+
+    public UserService(PersistenceConfig persistenceConfig){
+        usersRepository = new UsersRepository(persistenceConfig);
     }
 
     public User authenticate(String email, String password) throws EntityNotFoundException, InvalidCredentialsException {
@@ -61,6 +67,11 @@ public class UserService {
         return usersRepository.getAll();
     }
 
+    // Users with the role in the order of their email, starting after the cursor of the previous page (null for the first page).
+    public Page<User> listUsersByRole(String role, String cursor, int pageSize){
+        return usersRepository.getPage(cursor,pageSize,user -> user.getRole().equalsIgnoreCase(role));
+    }
+
     public List<User> searchUsers(String query){
         StringUtil.validateNotNullOrBlank(query,"Search Query");
         return usersRepository.search(query);
@@ -69,13 +80,13 @@ public class UserService {
     public void updateUserName(String email, String newName) throws EntityNotFoundException {
         User user = getUserByEmail(email).orElseThrow(() -> new EntityNotFoundException("User not found with E-mail : " + email));
         user.setName(newName);
-        usersRepository.saveUsers();
+        usersRepository.saveUser(user);
     }
 
     public void updatePassword(String email, String newPassword) throws EntityNotFoundException {
         User user = getUserByEmail(email).orElseThrow(() -> new EntityNotFoundException("User not found with E-mail : " + email));
         user.setPassword(newPassword);
-        usersRepository.saveUsers();
+        usersRepository.saveUser(user);
     }
 
     public UsersRepository getUsersRepository() {
@@ -0,0 +1,11 @@
+package com.adanali.library.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts one entity to and from its record in a binary snapshot.
+ */
+public interface BinaryCodec<T> {
+    void encode(T entity, ByteBuffer buffer);
+    T decode(ByteBuffer buffer);
+}
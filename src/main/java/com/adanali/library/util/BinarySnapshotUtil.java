@@ -0,0 +1,162 @@
+package com.adanali.library.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Compact, versioned binary snapshot of a collection of entities.
+ * The file is written through a FileChannel and read back through a MappedByteBuffer,
+ * which skips the reflection and text parsing that loading the JSON files needs.
+ * Layout : magic (int) | format version (short) | entity count (int) | encoded entities
+ */
+public class BinarySnapshotUtil<T> {
+    private static final int MAGIC = 0x534C4D53; // "SLMS"
+    private static final short FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    private static final long NULL_DATE = Long.MIN_VALUE;
+
+    private final File filePath;
+    private final BinaryCodec<T> codec;
+
+    public BinarySnapshotUtil(String filePath, BinaryCodec<T> codec) {
+        this.filePath = new File(filePath);
+        this.codec = codec;
+    }
+
+    public boolean exists(){
+        return filePath.exists() && filePath.length() >= HEADER_SIZE;
+    }
+
+    /**
+     * @return the number of entities handed to the consumer
+     */
+    public int loadData(Consumer<T> consumer) throws IOException {
+        if (!exists()) return 0;
+        try (FileChannel channel = FileChannel.open(filePath.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC){
+                throw new IOException(filePath.getName()+" is not a binary snapshot");
+            }
+            short version = buffer.getShort();
+            if (version != FORMAT_VERSION){
+                throw new IOException("Unsupported binary snapshot version "+version+" in "+filePath.getName());
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++){
+                consumer.accept(codec.decode(buffer));
+            }
+            return count;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Failed to load data from the Database", new IOException(filePath.getName()+" is truncated", e));
+        } catch (IOException e) {
+            throw new IOException("Failed to load data from the Database", e);
+        }
+    }
+
+    // Writes to a temporary file first, same as JsonStorageUtil.saveData, so a crash never leaves a half written snapshot behind.
+    public void saveData(Collection<T> collection) throws IOException {
+        try {
+            File parent = filePath.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()){
+                throw new IOException("Could not create directories for path: "+parent.getAbsolutePath());
+            }
+            File tempFile = new File(filePath.getPath()+".tmp");
+            try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+                ByteBuffer entityBuffer = ByteBuffer.allocate(1024);
+                writeBuffer.putInt(MAGIC).putShort(FORMAT_VERSION).putInt(0);
+                int count = 0;
+                for (T entity : collection){
+                    entityBuffer = encode(entity, entityBuffer);
+                    if (entityBuffer.remaining() > writeBuffer.remaining()){
+                        drain(writeBuffer, channel);
+                    }
+                    if (entityBuffer.remaining() > writeBuffer.remaining()){
+                        writeFully(entityBuffer, channel);
+                    }else writeBuffer.put(entityBuffer);
+                    count++;
+                }
+                drain(writeBuffer, channel);
+                // The count is only known at the end, it is patched into the header.
+                channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, count), Integer.BYTES + Short.BYTES);
+                channel.force(true);
+            }
+            Files.move(tempFile.toPath(), filePath.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IOException("Failed to save data to the Database", e);
+        }
+    }
+
+    // Encodes into the scratch buffer, growing it until the entity fits. The returned buffer is flipped for reading.
+    private ByteBuffer encode(T entity, ByteBuffer entityBuffer){
+        while (true){
+            entityBuffer.clear();
+            try {
+                codec.encode(entity, entityBuffer);
+                return entityBuffer.flip();
+            } catch (BufferOverflowException e) {
+                entityBuffer = ByteBuffer.allocate(entityBuffer.capacity() * 2);
+            }
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        writeFully(buffer, channel);
+        buffer.clear();
+    }
+
+    private static void writeFully(ByteBuffer buffer, FileChannel channel) throws IOException {
+        while (buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+    }
+
+    // Helpers shared by the codecs.
+
+    public static void putString(ByteBuffer buffer, String value){
+        if (value == null){
+            buffer.putInt(-1);
+        }else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    public static String getString(ByteBuffer buffer){
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        String value;
+        if (buffer.hasArray()){
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        }else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    public static void putDate(ByteBuffer buffer, LocalDate date){
+        buffer.putLong(date == null ? NULL_DATE : date.toEpochDay());
+    }
+
+    public static LocalDate getDate(ByteBuffer buffer){
+        long epochDay = buffer.getLong();
+        return epochDay == NULL_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+}
@@ -0,0 +1,141 @@
+package com.adanali.library.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Append-only journal of the changes made to a repository since its last snapshot.
+ * Every line of the file is one JSON entry, either {"op":"PUT","entity":{...}} or {"op":"REMOVE","id":"..."}.
+ */
+public class JournalStorageUtil<T> {
+    private static final String PUT = "PUT";
+    private static final String REMOVE = "REMOVE";
+
+    private final ObjectMapper objectMapper;
+    private final File filePath;
+    private final Class<T> entityType;
+    private int entryCount;
+
+    public JournalStorageUtil(String filePath, Class<T> entityType) {
+        this.objectMapper = JsonStorageUtil.createObjectMapper();
+        this.filePath = new File(filePath);
+        this.entityType = entityType;
+    }
+
+    public synchronized void appendPut(T entity) throws IOException {
+        ObjectNode entry = objectMapper.createObjectNode();
+        entry.put("op", PUT);
+        entry.set("entity", objectMapper.valueToTree(entity));
+        append(entry);
+    }
+
+    public synchronized void appendRemove(String id) throws IOException {
+        ObjectNode entry = objectMapper.createObjectNode();
+        entry.put("op", REMOVE);
+        entry.put("id", id);
+        append(entry);
+    }
+
+    /**
+     * Appends a batch of changes with a single write and a single sync of the file.
+     * @param changes entities keyed by their id, a null entity records the removal of that id
+     */
+    public synchronized void appendBatch(Map<String, T> changes) throws IOException {
+        if (changes.isEmpty()) return;
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<String, T> change : changes.entrySet()){
+            ObjectNode entry = objectMapper.createObjectNode();
+            if (change.getValue() != null){
+                entry.put("op", PUT);
+                entry.set("entity", objectMapper.valueToTree(change.getValue()));
+            }else {
+                entry.put("op", REMOVE);
+                entry.put("id", change.getKey());
+            }
+            lines.append(objectMapper.writeValueAsString(entry)).append(System.lineSeparator());
+        }
+        write(lines.toString(), changes.size());
+    }
+
+    private void append(ObjectNode entry) throws IOException {
+        write(objectMapper.writeValueAsString(entry) + System.lineSeparator(), 1);
+    }
+
+    private void write(String lines, int entries) throws IOException {
+        try {
+            File parent = filePath.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()){
+                throw new IOException("Could not create directories for path: "+parent.getAbsolutePath());
+            }
+            try (FileOutputStream outputStream = new FileOutputStream(filePath, true)) {
+                outputStream.write(lines.getBytes(StandardCharsets.UTF_8));
+                outputStream.getFD().sync();
+            }
+            entryCount += entries;
+        } catch (IOException e) {
+            throw new IOException("Failed to write to the Journal", e);
+        }
+    }
+
+    /**
+     * Replays every entry of the journal in the order it was written.
+     * A last line that cannot be parsed is a write torn by a crash and is ignored.
+     * @return the number of entries replayed
+     */
+    public synchronized int replay(Consumer<T> onPut, Consumer<String> onRemove) throws IOException {
+        entryCount = 0;
+        if (!filePath.exists()) return 0;
+        try (BufferedReader reader = Files.newBufferedReader(filePath.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            int lineNumber = 0;
+            while (line != null){
+                lineNumber++;
+                String nextLine = reader.readLine();
+                if (!line.isBlank()){
+                    JsonNode entry;
+                    try {
+                        entry = objectMapper.readTree(line);
+                    } catch (IOException e) {
+                        if (nextLine == null) break;
+                        throw new IOException("Journal is corrupted at line "+lineNumber, e);
+                    }
+                    if (PUT.equals(entry.path("op").asText())){
+                        onPut.accept(objectMapper.treeToValue(entry.get("entity"), entityType));
+                    }else if (REMOVE.equals(entry.path("op").asText())){
+                        onRemove.accept(entry.get("id").asText());
+                    }else throw new IOException("Unknown Journal operation at line "+lineNumber);
+                    entryCount++;
+                }
+                line = nextLine;
+            }
+        } catch (IOException e) {
+            throw new IOException("Failed to replay the Journal", e);
+        }
+        return entryCount;
+    }
+
+    public synchronized void truncate() throws IOException {
+        if (filePath.exists()){
+            try {
+                new FileOutputStream(filePath, false).close();
+                entryCount = 0;
+            } catch (IOException e) {
+                throw new IOException("Failed to truncate the Journal", e);
+            }
+        }
+    }
+
+    public synchronized int getEntryCount() {
+        return entryCount;
+    }
+}
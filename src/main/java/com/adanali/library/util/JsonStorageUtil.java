@@ -2,31 +2,45 @@ package com.adanali.library.util;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public class JsonStorageUtil <T> {
     private final ObjectMapper objectMapper;
     private final File filePath;
 
     public JsonStorageUtil(String filePath) {
-        this.objectMapper = new ObjectMapper();
+        this.objectMapper = createObjectMapper();
+        this.filePath = new File(filePath);
+    }
+
+    /**
+     * Creates an ObjectMapper configured the way every file of the Database is read and written.
+     */
+    public static ObjectMapper createObjectMapper(){
+        ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
         objectMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
         objectMapper.setVisibility(PropertyAccessor.GETTER, JsonAutoDetect.Visibility.NONE);
         objectMapper.setVisibility(PropertyAccessor.SETTER, JsonAutoDetect.Visibility.NONE);
-        this.filePath = new File(filePath);
+        return objectMapper;
     }
 
     public Set<T> loadData(TypeReference<Set<T>> typeRef) throws IOException {
@@ -39,6 +53,32 @@ public class JsonStorageUtil <T> {
         }else return new HashSet<>();
     }
 
+    /**
+     * Streams the JSON array of the file one element at a time, so only a single entity is held in memory while loading.
+     * @return the number of entities handed to the consumer
+     */
+    public int loadData(Class<T> entityType, Consumer<T> consumer) throws IOException {
+        if (!(filePath.exists() && filePath.length() > 0)) return 0;
+        ObjectReader reader = objectMapper.readerFor(entityType);
+        int count = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(filePath)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY){
+                throw new IOException("Expected a JSON array in "+filePath.getName());
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT){
+                consumer.accept(reader.readValue(parser));
+                count++;
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY){
+                throw new IOException("Unexpected token "+parser.currentToken()+" in "+filePath.getName());
+            }
+        } catch (IOException e) {
+            throw new IOException("Failed to load data from the Database", e);
+        }
+        return count;
+    }
+
+    // Writes to a temporary file first, so a crash in the middle of a save never leaves a half written Database behind.
     public void saveData(Collection<T> collection) throws IOException {
             try {
                 File parent = filePath.getParentFile();
@@ -47,9 +87,11 @@ public class JsonStorageUtil <T> {
                         throw new IOException("Could not create directories for path: "+parent.getAbsolutePath());
                     }
                 }
-                objectMapper.writerWithDefaultPrettyPrinter().writeValue(filePath,collection);
+                File tempFile = new File(filePath.getPath()+".tmp");
+                objectMapper.writerWithDefaultPrettyPrinter().writeValue(tempFile,collection);
+                Files.move(tempFile.toPath(), filePath.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
             } catch (IOException e) {
                 throw new IOException("Failed to save data to the Database", e);
             }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,116 @@
+package com.adanali.library.util;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from primitive long keys to non-negative int values, the primitive counterpart of {@link LongObjectHashMap}
+ * for keys mapped to array indexes or slots. A value of -1 marks an empty slot.
+ * Not thread safe, callers guard it with their own lock.
+ */
+public class LongIntHashMap {
+    public static final int NO_VALUE = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public LongIntHashMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Returns the value of the key, or NO_VALUE if it has none.
+    public int get(long key){
+        int slot = slotOf(key);
+        while (values[slot] != NO_VALUE){
+            if (keys[slot] == key) return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    public void put(long key, int value){
+        if (value < 0) throw new IllegalArgumentException("Value cannot be negative");
+        int slot = slotOf(key);
+        while (values[slot] != NO_VALUE){
+            if (keys[slot] == key){
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 4 > values.length * 3) resize(values.length * 2);
+    }
+
+    // Returns the previous value of the key, or NO_VALUE if it had none.
+    public int remove(long key){
+        int slot = slotOf(key);
+        while (values[slot] != NO_VALUE){
+            if (keys[slot] == key){
+                int previousValue = values[slot];
+                shiftBack(slot);
+                size--;
+                return previousValue;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    public void clear(){
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+
+    // Same backward shift deletion as LongObjectHashMap.
+    private void shiftBack(int emptySlot){
+        int slot = emptySlot;
+        while (true){
+            slot = (slot + 1) & mask;
+            if (values[slot] == NO_VALUE) break;
+            int homeSlot = slotOf(keys[slot]);
+            boolean canMove = emptySlot <= slot ? (homeSlot <= emptySlot || homeSlot > slot) : (homeSlot <= emptySlot && homeSlot > slot);
+            if (canMove){
+                keys[emptySlot] = keys[slot];
+                values[emptySlot] = values[slot];
+                emptySlot = slot;
+            }
+        }
+        values[emptySlot] = NO_VALUE;
+    }
+
+    private void resize(int capacity){
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++){
+            if (oldValues[i] != NO_VALUE){
+                int slot = slotOf(oldKeys[i]);
+                while (values[slot] != NO_VALUE){
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity){
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+        mask = capacity - 1;
+    }
+
+    private int slotOf(long key){
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
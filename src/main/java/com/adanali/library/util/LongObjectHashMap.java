@@ -0,0 +1,143 @@
+package com.adanali.library.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hash map from primitive long keys to values, with open addressing and linear probing over plain arrays,
+ * so neither lookups nor updates box the key or allocate an entry. Values cannot be null, a null value marks an empty slot.
+ * Not thread safe, callers guard it with their own lock.
+ */
+public class LongObjectHashMap<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    public LongObjectHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key){
+        int slot = slotOf(key);
+        while (values[slot] != null){
+            if (keys[slot] == key) return (V) values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    // Returns the previous value of the key, or null if it had none.
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value){
+        if (value == null) throw new IllegalArgumentException("Value cannot be null");
+        int slot = slotOf(key);
+        while (values[slot] != null){
+            if (keys[slot] == key){
+                V previousValue = (V) values[slot];
+                values[slot] = value;
+                return previousValue;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 4 > values.length * 3) resize(values.length * 2);
+        return null;
+    }
+
+    // Returns the current value of the key and leaves it unchanged, or stores the value and returns null.
+    public V putIfAbsent(long key, V value){
+        V currentValue = get(key);
+        if (currentValue != null) return currentValue;
+        put(key, value);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key){
+        int slot = slotOf(key);
+        while (values[slot] != null){
+            if (keys[slot] == key){
+                V previousValue = (V) values[slot];
+                shiftBack(slot);
+                size--;
+                return previousValue;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public void clear(){
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<V> values(){
+        List<V> list = new ArrayList<>(size);
+        for (Object value : values){
+            if (value != null) list.add((V) value);
+        }
+        return list;
+    }
+
+    // Removes the entry of the slot by moving back the entries probing past it, so no tombstones are left behind.
+    private void shiftBack(int emptySlot){
+        int slot = emptySlot;
+        while (true){
+            slot = (slot + 1) & mask;
+            if (values[slot] == null) break;
+            int homeSlot = slotOf(keys[slot]);
+            // The entry can fill the empty slot only if its home slot is not cyclically between the empty slot and its slot.
+            boolean canMove = emptySlot <= slot ? (homeSlot <= emptySlot || homeSlot > slot) : (homeSlot <= emptySlot && homeSlot > slot);
+            if (canMove){
+                keys[emptySlot] = keys[slot];
+                values[emptySlot] = values[slot];
+                emptySlot = slot;
+            }
+        }
+        values[emptySlot] = null;
+    }
+
+    private void resize(int capacity){
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++){
+            if (oldValues[i] != null){
+                int slot = slotOf(oldKeys[i]);
+                while (values[slot] != null){
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity){
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slotOf(long key){
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,101 @@
+package com.adanali.library.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue over a fixed array, written by any number of producers and read by a single consumer thread.
+ * A producer waits until the next sequence number has a free slot, claims it with a compare-and-set and publishes its element
+ * into the slot of that sequence, the consumer reads the published slots in sequence order. A sequence is only claimed once its slot
+ * is free, so a producer interrupted while the buffer is full leaves without having claimed anything, and never leaves a hole.
+ */
+public class RingBuffer<E> {
+    private static final long PRODUCER_PARK_NANOS = 1_000;
+
+    private final Object[] slots;
+    // Sequence number published in every slot, a slot is readable once it holds the sequence the consumer expects.
+    private final AtomicLongArray publishedSequences;
+    private final int mask;
+    private final AtomicLong claimedSequence = new AtomicLong(-1);
+    private volatile long consumedSequence = -1;
+    private volatile Thread waitingConsumer;
+
+    public RingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity must be a power of two!");
+        slots = new Object[capacity];
+        publishedSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++){
+            publishedSequences.set(i, -1);
+        }
+        mask = capacity - 1;
+    }
+
+    public int capacity(){
+        return slots.length;
+    }
+
+    // Waits while the buffer is full.
+    public void put(E element) throws InterruptedException {
+        if (element == null) throw new NullPointerException("Element cannot be null");
+        long sequence;
+        do {
+            sequence = claimedSequence.get() + 1;
+            while (sequence - consumedSequence > slots.length){
+                if (Thread.interrupted()) throw new InterruptedException();
+                LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+                sequence = claimedSequence.get() + 1;
+            }
+        } while (!claimedSequence.compareAndSet(sequence - 1, sequence));
+        int slot = (int) sequence & mask;
+        slots[slot] = element;
+        publishedSequences.set(slot, sequence);
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Hands the published elements to the handler in sequence order, stopping at the first slot not published yet. Consumer thread only.
+     * @return the number of elements handed over
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<E> handler, int maxElements){
+        long nextSequence = consumedSequence + 1;
+        int count = 0;
+        while (count < maxElements){
+            int slot = (int) nextSequence & mask;
+            if (publishedSequences.get(slot) != nextSequence) break;
+            E element = (E) slots[slot];
+            slots[slot] = null;
+            handler.accept(element);
+            nextSequence++;
+            count++;
+        }
+        // Frees the slots for the producers.
+        if (count > 0) consumedSequence = nextSequence - 1;
+        return count;
+    }
+
+    // Consumer thread only : parks until an element is published or the timeout runs out.
+    public void awaitPublished(long timeout, TimeUnit unit){
+        waitingConsumer = Thread.currentThread();
+        try {
+            if (isEmpty()) LockSupport.parkNanos(this, unit.toNanos(timeout));
+        }finally {
+            waitingConsumer = null;
+        }
+    }
+
+    // True if no element is published after the last one consumed, an element still being published may be on its way.
+    public boolean isEmpty(){
+        long nextSequence = consumedSequence + 1;
+        return publishedSequences.get((int) nextSequence & mask) != nextSequence;
+    }
+
+    // True once every claimed sequence has been consumed.
+    public boolean isDrained(){
+        return claimedSequence.get() == consumedSequence;
+    }
+}
@@ -0,0 +1,56 @@
+package com.adanali.library.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every distinct string a dense int code, starting from 0, and keeps a single instance of it.
+ * Entities holding the same value then share one String, and can be compared or counted by code.
+ * Codes are never reused, the dictionary only grows.
+ */
+public class StringDictionary {
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[16];
+    private int size;
+
+    public int encode(String value){
+        Integer code = codes.get(value);
+        if (code != null) return code;
+        synchronized (this){
+            code = codes.get(value);
+            if (code != null) return code;
+            String[] currentValues = values;
+            if (size == currentValues.length){
+                currentValues = Arrays.copyOf(currentValues, size * 2);
+            }
+            currentValues[size] = value;
+            values = currentValues;
+            codes.put(value, size);
+            return size++;
+        }
+    }
+
+    // Returns the code of the value, or -1 if the dictionary does not have it.
+    public int find(String value){
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    public String decode(int code){
+        String[] currentValues = values;
+        if (code < 0 || code >= currentValues.length || currentValues[code] == null){
+            throw new IllegalArgumentException("Unknown dictionary code : "+code);
+        }
+        return currentValues[code];
+    }
+
+    // The shared instance of the value.
+    public String intern(String value){
+        return decode(encode(value));
+    }
+
+    public synchronized int size(){
+        return size;
+    }
+}
@@ -45,4 +45,22 @@ public class StringUtil {
             return true;
         }else throw new IllegalArgumentException("Invalid ISBN format");
     }
+
+    /**
+     * Normalizes an ISBN-13 to a number, so its hyphenated and plain forms are the same key. Does not allocate.
+     * @return the 13 digits of the ISBN as a long, or -1 if the ISBN does not have exactly 13 digits and hyphens only
+     */
+    public static long parseIsbn(String isbn) {
+        if (isbn == null) return -1;
+        long value = 0;
+        int digits = 0;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > 13) return -1;
+                value = value * 10 + (c - '0');
+            } else if (c != '-') return -1;
+        }
+        return digits == 13 ? value : -1;
+    }
 }
@@ -0,0 +1,39 @@
+package com.adanali.library.util;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks shared by many keys : a key always maps to the same stripe, so operations on the same key are serialized
+ * while operations on different keys mostly run in parallel, without keeping a lock per key.
+ * The locks are reentrant, and a thread holding stripes of two StripedLocks must always take them in the same order.
+ */
+public class StripedLock {
+    private final Lock[] stripes;
+
+    public StripedLock(int stripeCount) {
+        if (stripeCount <= 0) throw new IllegalArgumentException("Stripe count must be positive!");
+        int size = 1;
+        while (size < stripeCount){
+            size <<= 1;
+        }
+        stripes = new Lock[size];
+        for (int i = 0; i < size; i++){
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public Lock get(Object key){
+        return stripeOf(key.hashCode());
+    }
+
+    // Same stripe as the boxed key, without boxing it.
+    public Lock get(long key){
+        return stripeOf(Long.hashCode(key));
+    }
+
+    private Lock stripeOf(int hash){
+        hash ^= hash >>> 16;
+        return stripes[hash & (stripes.length - 1)];
+    }
+}
@@ -0,0 +1,145 @@
+package com.adanali.library.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Background thread that writes the pending changes of dirty storages.
+ * Every storage marked dirty within the same window is flushed once by the same pass (group commit),
+ * so several saves of the same file in a row turn into a single write.
+ * A storage whose write fails stays dirty and is retried by the next pass, the waiters of the failed pass get the failure.
+ */
+public class WriteBehindFlusher {
+
+    public interface FlushTarget {
+        void flushPending() throws IOException;
+    }
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final long windowMillis;
+    private final Set<FlushTarget> dirtyTargets = new LinkedHashSet<>();
+    // Passes are numbered, a change marked dirty is on disk once the pass started after it has completed.
+    private long startedPass;
+    private long completedPass;
+    // First pass whose changes are not all on disk because a write failed, reset by the next pass writing everything.
+    private long oldestFailedPass = Long.MAX_VALUE;
+    private IOException lastFailure;
+    private boolean flushRequested;
+    private boolean closed;
+    private final Thread thread;
+
+    public WriteBehindFlusher(long windowMillis) {
+        if (windowMillis < 0) throw new IllegalArgumentException("Flush window cannot be negative!");
+        this.windowMillis = windowMillis;
+        this.thread = new Thread(this::run, "write-behind-flusher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the ticket to pass to {@link #awaitFlushed(long)} to wait for this change to reach the disk
+     */
+    public synchronized long markDirty(FlushTarget target){
+        if (closed) throw new IllegalStateException("Flusher is closed");
+        dirtyTargets.add(target);
+        notifyAll();
+        return startedPass + 1;
+    }
+
+    /**
+     * @throws IOException if a write of the pass the ticket belongs to, or of an earlier pass not retried successfully since, has failed
+     */
+    public synchronized void awaitFlushed(long ticket) throws IOException {
+        try {
+            while (completedPass < ticket){
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the Database to be written");
+        }
+        if (oldestFailedPass <= ticket) throw new IOException("Failed to write the Database", lastFailure);
+    }
+
+    // Barrier : returns once every change marked dirty before the call is on disk, or throws if one could not be written.
+    public void flush() throws IOException {
+        long ticket;
+        synchronized (this){
+            if (dirtyTargets.isEmpty()){
+                ticket = startedPass;
+            }else {
+                ticket = startedPass + 1;
+                flushRequested = true;
+                notifyAll();
+            }
+        }
+        awaitFlushed(ticket);
+    }
+
+    public void close() throws IOException {
+        flush();
+        synchronized (this){
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    private void run(){
+        while (true){
+            List<FlushTarget> targets;
+            long pass;
+            synchronized (this){
+                try {
+                    while (dirtyTargets.isEmpty()){
+                        if (closed) return;
+                        wait();
+                    }
+                    // A failing disk is retried at a slower pace, unless someone is waiting on a flush.
+                    long delay = oldestFailedPass != Long.MAX_VALUE ? Math.max(windowMillis, RETRY_DELAY_MILLIS) : windowMillis;
+                    long deadline = System.currentTimeMillis() + delay;
+                    long remaining = delay;
+                    while (!flushRequested && !closed && remaining > 0){
+                        wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                targets = new ArrayList<>(dirtyTargets);
+                dirtyTargets.clear();
+                flushRequested = false;
+                pass = ++startedPass;
+            }
+            List<FlushTarget> failedTargets = new ArrayList<>();
+            IOException failure = null;
+            for (FlushTarget target : targets){
+                try {
+                    target.flushPending();
+                } catch (IOException e) {
+                    failedTargets.add(target);
+                    failure = e;
+                    System.out.println(e.getMessage());
+                    if (e.getCause() != null) System.out.println(e.getCause().getMessage());
+                } catch (RuntimeException e) {
+                    failedTargets.add(target);
+                    failure = new IOException("Write-behind flush failed : "+e.getMessage(), e);
+                    System.out.println(failure.getMessage());
+                }
+            }
+            synchronized (this){
+                if (failure != null){
+                    dirtyTargets.addAll(failedTargets);
+                    oldestFailedPass = Math.min(oldestFailedPass, pass);
+                    lastFailure = failure;
+                }else oldestFailedPass = Long.MAX_VALUE;
+                completedPass = pass;
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.model.Book;
+import com.adanali.library.model.BorrowingRecord;
+import com.adanali.library.model.BorrowingStatus;
+import com.adanali.library.model.Student;
+import com.adanali.library.repository.BorrowingRecordsRepository;
+import com.adanali.library.service.BookService;
+import com.adanali.library.service.BorrowingService;
+import com.adanali.library.service.UserService;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * Closed records move to the off-heap archive : the lookups by borrower, book and status still find them, through the slot
+ * lists kept as records are archived and removed, getAll lists them, and removing a book or a student takes their records along.
+ */
+public class ArchivedRecordLookupTest
+    extends LibraryTestCase
+{
+    private static final String[] EMAILS = {"first@archive.test", "second@archive.test"};
+    private static final String[] ISBNS = {"9780000000001", "9780000000002", "9780000000003"};
+    // Due in the future, so the open records are ACTIVE.
+    private static final LocalDate BORROWED = LocalDate.now().minusDays(5);
+
+    private UserService userService;
+    private BookService bookService;
+    private BorrowingService borrowingService;
+    private BorrowingRecordsRepository recordsRepository;
+
+    public ArchivedRecordLookupTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ArchivedRecordLookupTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        userService = new UserService(persistenceConfig);
+        bookService = new BookService(persistenceConfig);
+        for (String email : EMAILS){
+            userService.addUser("Student", email, "Passw0rd!", "Address", UserService.UserRole.STUDENT);
+        }
+        for (String isbn : ISBNS){
+            bookService.addBook(isbn, "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 100);
+        }
+        reload();
+    }
+
+    public void testLookupsFindArchivedRecords() throws Exception
+    {
+        // Record i : borrower i % 2, book i % 3, returned on time when i % 4 != 3, late otherwise. Every fifth record stays open.
+        for (int i = 0; i < 60; i++){
+            addRecord(i);
+        }
+        assertNotSame("Closed records are archived", recordsRepository.getById(idOf(0)).get(), recordsRepository.getById(idOf(0)).get());
+        assertSame("Open records stay on the heap", recordsRepository.getById(idOf(5)).get(), recordsRepository.getById(idOf(5)).get());
+        assertLookups(allIds(60, Set.of()));
+    }
+
+    public void testLookupsFollowRemovalsAndReusedSlots() throws Exception
+    {
+        for (int i = 0; i < 60; i++){
+            addRecord(i);
+        }
+        Set<String> removed = new HashSet<>();
+        for (int i = 0; i < 60; i += 7){
+            assertTrue(recordsRepository.remove(idOf(i)));
+            removed.add(idOf(i));
+        }
+        assertLookups(allIds(60, removed));
+
+        // Archived into the freed slots.
+        for (int i = 60; i < 80; i++){
+            addRecord(i);
+        }
+        assertLookups(allIds(80, removed));
+    }
+
+    public void testLookupsAfterReload() throws Exception
+    {
+        for (int i = 0; i < 60; i++){
+            addRecord(i);
+        }
+        reload();
+        assertLookups(allIds(60, Set.of()));
+    }
+
+    public void testAllRecordsListsHeldAndArchivedRecords() throws Exception
+    {
+        for (int i = 0; i < 700; i++){
+            addRecord(i);
+        }
+        List<BorrowingRecord> all = borrowingService.getAllRecords();
+        assertEquals(700, all.size());
+        assertEquals(allIds(700, Set.of()), all.stream().map(BorrowingRecord::getRecordId).collect(Collectors.toSet()));
+        // Walked backwards, the pages are read again from the start.
+        Set<String> backwards = new HashSet<>();
+        for (ListIterator<BorrowingRecord> iterator = all.listIterator(all.size()); iterator.hasPrevious();){
+            backwards.add(iterator.previous().getRecordId());
+        }
+        assertEquals(700, backwards.size());
+        try {
+            all.get(700);
+            fail("Past the last record");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    public void testRemovedBookAndStudentTakeTheirRecordsAlong() throws Exception
+    {
+        for (int i = 0; i < 60; i++){
+            addRecord(i);
+        }
+        // Book 0 and borrower 0 still have open records.
+        try {
+            borrowingService.removeBook(bookService.getBookByIsbn(ISBNS[0]).get());
+            fail("Copies of the book are out");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            borrowingService.removeBorrower((Student) userService.getUserByEmail(EMAILS[0]).get());
+            fail("The student has books to return");
+        } catch (IllegalStateException expected) {
+        }
+        Set<String> removed = new HashSet<>();
+        for (int i = 0; i < 60; i++){
+            if (isOpen(i) && (i % 3 == 0 || i % 2 == 0)){
+                returnRecord(i);
+            }
+        }
+        borrowingService.removeBook(bookService.getBookByIsbn(ISBNS[0]).get());
+        removed.addAll(matching(allIds(60, Set.of()), i -> i % 3 == 0));
+        borrowingService.removeBorrower((Student) userService.getUserByEmail(EMAILS[0]).get());
+        removed.addAll(matching(allIds(60, Set.of()), i -> i % 2 == 0));
+        assertTrue(bookService.getBookByIsbn(ISBNS[0]).isEmpty());
+        assertTrue(userService.getUserByEmail(EMAILS[0]).isEmpty());
+
+        // No listing runs into a record of the removed book or student.
+        Set<String> remaining = allIds(60, removed);
+        assertEquals(remaining, idsOf(borrowingService.getAllRecords()));
+        assertEquals(remaining, idsOf(borrowingService.listRecords(null, 100).getItems()));
+        assertEquals(remaining, idsOf(recordsRepository.getByBorrowerEmail(EMAILS[1])));
+        assertTrue(recordsRepository.getByBorrowerEmail(EMAILS[0]).isEmpty());
+        assertTrue(recordsRepository.getByBookIsbn(ISBNS[0]).isEmpty());
+        reload();
+        assertEquals(remaining, idsOf(borrowingService.getAllRecords()));
+    }
+
+    public void testAllRecordsIsASnapshot() throws Exception
+    {
+        for (int i = 0; i < 40; i++){
+            addRecord(i);
+        }
+        List<BorrowingRecord> all = borrowingService.getAllRecords();
+        addRecord(40);
+        assertTrue(recordsRepository.remove(idOf(1)));
+        assertEquals(allIds(40, Set.of()), idsOf(all));
+        try {
+            all.clear();
+            fail("The snapshot is read-only");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    private void returnRecord(int i)
+    {
+        BorrowingRecord record = borrowingService.getRecordById(idOf(i)).get();
+        record.setReturnDate(BORROWED.plusDays(10));
+        recordsRepository.saveBorrowingRecord(record);
+    }
+
+    private void addRecord(int i) throws Exception
+    {
+        Student student = (Student) userService.getUserByEmail(EMAILS[i % 2]).get();
+        Book book = bookService.getBookByIsbn(ISBNS[i % 3]).get();
+        borrowingService.addRecord(idOf(i), book, student, BORROWED, BORROWED.plusDays(14));
+        if (i % 5 == 0 && i % 7 != 0) return;
+        BorrowingRecord record = borrowingService.getRecordById(idOf(i)).get();
+        record.setReturnDate(BORROWED.plusDays(i % 4 == 3 ? 20 : 10));
+        recordsRepository.saveBorrowingRecord(record);
+        if (record.getFine() > 0){
+            // Archived once the fine is paid off.
+            student.reducePendingFine(student.getPendingFine());
+            recordsRepository.archiveClosedRecordsOf(student.getEmail());
+        }
+    }
+
+    private void assertLookups(Set<String> ids)
+    {
+        for (int borrower = 0; borrower < EMAILS.length; borrower++){
+            int borrowerIndex = borrower;
+            assertEquals(EMAILS[borrower], matching(ids, i -> i % 2 == borrowerIndex), idsOf(recordsRepository.getByBorrowerEmail(EMAILS[borrower])));
+        }
+        for (int book = 0; book < ISBNS.length; book++){
+            int bookIndex = book;
+            assertEquals(ISBNS[book], matching(ids, i -> i % 3 == bookIndex), idsOf(recordsRepository.getByBookIsbn(ISBNS[book])));
+        }
+        assertEquals(matching(ids, ArchivedRecordLookupTest::isOpen), idsOf(recordsRepository.getByStatus(BorrowingStatus.ACTIVE)));
+        assertEquals(matching(ids, i -> !isOpen(i) && i % 4 != 3), idsOf(recordsRepository.getByStatus(BorrowingStatus.RETURNED)));
+        assertEquals(matching(ids, i -> !isOpen(i) && i % 4 == 3), idsOf(recordsRepository.getByStatus(BorrowingStatus.OVERDUE)));
+    }
+
+    private static boolean isOpen(int i)
+    {
+        return i % 5 == 0 && i % 7 != 0;
+    }
+
+    private static Set<String> matching(Set<String> ids, IntPredicate filter)
+    {
+        return ids.stream().filter(id -> filter.test(Integer.parseInt(id.substring(id.indexOf('-') + 1)))).collect(Collectors.toSet());
+    }
+
+    private static Set<String> idsOf(List<BorrowingRecord> records)
+    {
+        Set<String> ids = records.stream().map(BorrowingRecord::getRecordId).collect(Collectors.toSet());
+        assertEquals("No record is listed twice", records.size(), ids.size());
+        return ids;
+    }
+
+    private static Set<String> allIds(int count, Set<String> removed)
+    {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < count; i++){
+            if (!removed.contains(idOf(i))) ids.add(idOf(i));
+        }
+        return ids;
+    }
+
+    private static String idOf(int i)
+    {
+        return "record-"+i;
+    }
+
+    private void reload()
+    {
+        userService = new UserService(persistenceConfig);
+        bookService = new BookService(persistenceConfig);
+        borrowingService = new BorrowingService(userService.getUsersRepository(), bookService.getBooksRepository(), persistenceConfig);
+        recordsRepository = borrowingService.getBorrowingRecordsRepository();
+    }
+}
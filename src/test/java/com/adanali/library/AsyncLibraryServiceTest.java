@@ -0,0 +1,119 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.exceptions.EntityNotFoundException;
+import com.adanali.library.model.Book;
+import com.adanali.library.repository.DurabilityPolicy;
+import com.adanali.library.service.AsyncLibraryService;
+import com.adanali.library.service.LibraryService;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous facade : futures complete with the result, fail with the exception of the service, and two desks racing
+ * for the last copy of a book cannot both get it.
+ */
+public class AsyncLibraryServiceTest
+    extends LibraryTestCase
+{
+    private static final String ISBN = "9780000000001";
+
+    private LibraryService library;
+    private AsyncLibraryService service;
+
+    public AsyncLibraryServiceTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( AsyncLibraryServiceTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        library = new LibraryService(journalConfig(DurabilityPolicy.ASYNC, 5));
+        service = new AsyncLibraryService(library, 4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        service.close();
+        super.tearDown();
+    }
+
+    public void testFuturesCompleteWithTheResult() throws Exception
+    {
+        service.addBook(ISBN, "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 2).get(10, TimeUnit.SECONDS);
+        service.updateBookTitle(ISBN, "New Title").get(10, TimeUnit.SECONDS);
+
+        Book book = service.getBook(ISBN).get(10, TimeUnit.SECONDS).orElseThrow();
+        assertEquals("New Title", book.getTitle());
+        assertEquals(1, service.listBooks(null, 10).get(10, TimeUnit.SECONDS).getItems().size());
+        assertEquals(1, service.getBooksPublishedBetween(LocalDate.of(1999, 1, 1), LocalDate.of(2001, 1, 1)).get(10, TimeUnit.SECONDS).size());
+    }
+
+    public void testFailureReachesTheFuture() throws Exception
+    {
+        assertFailedWith(EntityNotFoundException.class, service.borrowBook("nobody@async.test", ISBN));
+        assertFailedWith(EntityNotFoundException.class, service.updateBookTitle(ISBN, "Title"));
+
+        service.addBook(ISBN, "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 1).get(10, TimeUnit.SECONDS);
+        registerStudent("student@async.test");
+        service.borrowBook("student@async.test", ISBN).get(10, TimeUnit.SECONDS);
+        // Removals are refused while a copy is out or a book is not returned.
+        assertFailedWith(IllegalStateException.class, service.removeBook(ISBN));
+        assertFailedWith(IllegalStateException.class, service.removeUser("student@async.test"));
+    }
+
+    public void testLastCopyGoesToOneBorrowerOnly() throws Exception
+    {
+        registerStudent("first@async.test");
+        registerStudent("second@async.test");
+        for (int round = 0; round < 50; round++){
+            String isbn = String.format("97800000%05d", round);
+            service.addBook(isbn, "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 1).get(10, TimeUnit.SECONDS);
+            CompletableFuture<Void> first = service.borrowBook("first@async.test", isbn);
+            CompletableFuture<Void> second = service.borrowBook("second@async.test", isbn);
+
+            int borrowed = succeeded(first) + succeeded(second);
+            assertEquals("Round "+round, 1, borrowed);
+            assertEquals(0, library.getBookService().getBookByIsbn(isbn).orElseThrow().getQuantity());
+            assertEquals(1, library.getBorrowingService().getBorrowingsByBook(library.getBookService().getBookByIsbn(isbn).orElseThrow()).size());
+        }
+    }
+
+    private void registerStudent(String email) throws Exception
+    {
+        service.registerStudent("Student", email, "Passw0rd!", "Address").get(10, TimeUnit.SECONDS);
+    }
+
+    private static int succeeded(CompletableFuture<Void> future) throws Exception
+    {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            return 1;
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            return 0;
+        }
+    }
+
+    private static void assertFailedWith(Class<? extends Exception> expectedType, CompletableFuture<Void> future) throws Exception
+    {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("The operation should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), expectedType.isInstance(e.getCause()));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.model.Book;
+import com.adanali.library.repository.BooksRepository;
+import com.adanali.library.service.BookService;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Authors are searched and counted by their dictionary code : a match expands to every book of the author,
+ * and an author leaves the search and the facets with their last book.
+ */
+public class AuthorSearchTest
+    extends LibraryTestCase
+{
+    private BookService bookService;
+
+    public AuthorSearchTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( AuthorSearchTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        bookService = new BookService(persistenceConfig);
+        bookService.addBook("9780000000001", "The Hobbit", "J.R.R. Tolkien", "Fantasy", LocalDate.of(1937, 9, 21), 2);
+        bookService.addBook("9780000000002", "The Silmarillion", "J.R.R. Tolkien", "Fantasy", LocalDate.of(1977, 9, 15), 1);
+        bookService.addBook("9780000000003", "Dune", "Frank Herbert", "Science Fiction", LocalDate.of(1965, 8, 1), 1);
+        bookService.decreaseBookQuantity("9780000000002", 1);
+    }
+
+    public void testBooksShareTheCodeOfTheirAuthor() throws Exception
+    {
+        Book hobbit = bookService.getBookByIsbn("9780000000001").get();
+        Book silmarillion = bookService.getBookByIsbn("9780000000002").get();
+        assertEquals(hobbit.getAuthorCode(), silmarillion.getAuthorCode());
+        assertSame(hobbit.getAuthor(), silmarillion.getAuthor());
+        assertEquals("J.R.R. Tolkien", Book.authorOfCode(hobbit.getAuthorCode()));
+    }
+
+    public void testSearchAndFacetsFollowTheAuthors() throws Exception
+    {
+        assertEquals(Set.of("9780000000001", "9780000000002"), isbnsByAuthor("tolkien"));
+        assertEquals(2, bookService.searchBooks("TOLK", BooksRepository.SearchAttribute.AUTHOR, null, 10).getItems().size());
+        assertEquals(2, bookService.getAuthorFacets().get("J.R.R. Tolkien").getTotal());
+        assertEquals(1, bookService.getAuthorFacets().get("J.R.R. Tolkien").getAvailable());
+        assertEquals(1, bookService.searchBooksWithFacets("fantasy", BooksRepository.SearchAttribute.GENRE).getAuthorFacets().size());
+
+        // The author of one book changes, the other book keeps the author in the search.
+        bookService.updateBookAuthor("9780000000002", "Christopher Tolkien");
+        assertEquals(Set.of("9780000000001", "9780000000002"), isbnsByAuthor("tolkien"));
+        assertEquals(Set.of("9780000000002"), isbnsByAuthor("christopher"));
+        assertEquals(1, bookService.getAuthorFacets().get("J.R.R. Tolkien").getTotal());
+
+        // The last book of an author goes, so does the author.
+        bookService.removeBook("9780000000001");
+        assertTrue(isbnsByAuthor("j.r.r.").isEmpty());
+        assertTrue(bookService.searchBooks("j.r.r.", BooksRepository.SearchAttribute.ALL, null, 10).getItems().isEmpty());
+        assertFalse(bookService.getAuthorFacets().containsKey("J.R.R. Tolkien"));
+        assertEquals(Set.of("Christopher Tolkien", "Frank Herbert"), bookService.getAuthorFacets().keySet());
+    }
+
+    private Set<String> isbnsByAuthor(String query)
+    {
+        return bookService.searchBooks(query, BooksRepository.SearchAttribute.AUTHOR).stream()
+                .map(Book::getIsbn)
+                .collect(Collectors.toSet());
+    }
+}
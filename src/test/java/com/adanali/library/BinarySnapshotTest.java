@@ -0,0 +1,135 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.model.Book;
+import com.adanali.library.model.BorrowingRecord;
+import com.adanali.library.model.Librarian;
+import com.adanali.library.model.Student;
+import com.adanali.library.repository.DurabilityPolicy;
+import com.adanali.library.repository.PersistenceConfig;
+import com.adanali.library.repository.PersistenceMode;
+import com.adanali.library.repository.StorageFormat;
+import com.adanali.library.service.BookService;
+import com.adanali.library.service.BorrowingService;
+import com.adanali.library.service.UserService;
+import com.adanali.library.util.BinaryCodec;
+import com.adanali.library.util.BinarySnapshotUtil;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary snapshots : every field survives a save and a load, through the snapshot file alone and through the repositories.
+ */
+public class BinarySnapshotTest
+    extends LibraryTestCase
+{
+    // A note of a text and a date, either of which may be missing.
+    private record Note(String text, LocalDate date) {}
+
+    private static final BinaryCodec<Note> NOTE = new BinaryCodec<>() {
+        @Override
+        public void encode(Note note, ByteBuffer buffer) {
+            BinarySnapshotUtil.putString(buffer, note.text());
+            BinarySnapshotUtil.putDate(buffer, note.date());
+        }
+
+        @Override
+        public Note decode(ByteBuffer buffer) {
+            return new Note(BinarySnapshotUtil.getString(buffer), BinarySnapshotUtil.getDate(buffer));
+        }
+    };
+
+    public BinarySnapshotTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BinarySnapshotTest.class );
+    }
+
+    /**
+     * Nulls, non ASCII text and entities bigger than both the scratch buffer and the write buffer.
+     */
+    public void testCodecRoundTrip() throws Exception
+    {
+        List<Note> saved = new ArrayList<>();
+        saved.add(new Note(null, null));
+        saved.add(new Note("", LocalDate.of(1970, 1, 1)));
+        saved.add(new Note("Çalıkuşu – 日本語", LocalDate.of(1922, 5, 30)));
+        saved.add(new Note("x".repeat(5_000), LocalDate.of(2024, 2, 29)));
+        saved.add(new Note("y".repeat(200_000), null));
+        for (int i = 0; i < 10_000; i++){
+            saved.add(new Note("note "+i, LocalDate.ofEpochDay(i)));
+        }
+        BinarySnapshotUtil<Note> snapshot = new BinarySnapshotUtil<>(new File(dataDirectory, "Notes.bin").getPath(), NOTE);
+        snapshot.saveData(saved);
+
+        List<Note> loaded = new ArrayList<>();
+        assertEquals(saved.size(), snapshot.loadData(loaded::add));
+        assertEquals(saved, loaded);
+    }
+
+    public void testTruncatedSnapshotFailsTheLoad() throws Exception
+    {
+        File file = new File(dataDirectory, "Notes.bin");
+        BinarySnapshotUtil<Note> snapshot = new BinarySnapshotUtil<>(file.getPath(), NOTE);
+        snapshot.saveData(List.of(new Note("first", null), new Note("second", null)));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        try {
+            snapshot.loadData(note -> {});
+            fail("A truncated snapshot must fail the load");
+        } catch (IOException e) {
+            assertNotNull(e.getCause());
+        }
+    }
+
+    public void testRepositoriesRoundTripThroughBinarySnapshots() throws Exception
+    {
+        PersistenceConfig config = new PersistenceConfig(PersistenceMode.SNAPSHOT, StorageFormat.BINARY, DurabilityPolicy.SYNC, 0, dataDirectory.getPath());
+        UserService userService = new UserService(config);
+        BookService bookService = new BookService(config);
+        BorrowingService borrowingService = new BorrowingService(userService.getUsersRepository(), bookService.getBooksRepository(), config);
+        userService.addUser("Student", "student@binary.test", "Passw0rd!", "Somewhere 1", UserService.UserRole.STUDENT);
+        userService.addUser("Librarian", "librarian@binary.test", "Passw0rd!", null, UserService.UserRole.LIBRARIAN);
+        bookService.addBook("9780000000001", "Title", "Author", "Genre", LocalDate.of(1999, 12, 31), 4);
+        Student student = (Student) userService.getUserByEmail("student@binary.test").get();
+        borrowingService.addRecord("late", bookService.getBookByIsbn("9780000000001").get(), student,
+                LocalDate.now().minusDays(5), LocalDate.now().minusDays(2));
+        userService.getUsersRepository().saveUser(student);
+
+        assertTrue(new File(dataDirectory, "Books.bin").exists());
+        UserService reloadedUsers = new UserService(config);
+        BookService reloadedBooks = new BookService(config);
+        BorrowingService reloadedBorrowing = new BorrowingService(reloadedUsers.getUsersRepository(), reloadedBooks.getBooksRepository(), config);
+
+        Book book = reloadedBooks.getBookByIsbn("9780000000001").get();
+        assertEquals("Title", book.getTitle());
+        assertEquals("Author", book.getAuthor());
+        assertEquals("Genre", book.getGenre());
+        assertEquals(LocalDate.of(1999, 12, 31), book.getPublicationDate());
+        assertEquals(4, book.getQuantity());
+
+        Student reloadedStudent = (Student) reloadedUsers.getUserByEmail("student@binary.test").get();
+        assertEquals("Somewhere 1", reloadedStudent.getAddress());
+        assertEquals(student.getPendingFine(), reloadedStudent.getPendingFine());
+        assertTrue(reloadedUsers.getUserByEmail("librarian@binary.test").get() instanceof Librarian);
+
+        BorrowingRecord record = reloadedBorrowing.getRecordById("late").get();
+        assertEquals(LocalDate.now().minusDays(5), record.getBorrowDate());
+        assertEquals(LocalDate.now().minusDays(2), record.getDueDate());
+        assertNull(record.getReturnDate());
+        assertEquals(student.getPendingFine(), record.getFine());
+        assertSame(reloadedStudent, record.getBorrower());
+    }
+}
@@ -0,0 +1,134 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.model.Book;
+import com.adanali.library.model.BorrowingRecord;
+import com.adanali.library.model.BorrowingStatus;
+import com.adanali.library.model.Student;
+import com.adanali.library.repository.BorrowingStatistics;
+import com.adanali.library.service.BookService;
+import com.adanali.library.service.BorrowingService;
+import com.adanali.library.service.UserService;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The reports computed from the columnar history give the same numbers as the records they mirror,
+ * as records are opened, returned, archived, removed and reloaded.
+ */
+public class BorrowingHistoryTest
+    extends LibraryTestCase
+{
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final String[] EMAILS = {"first@history.test", "second@history.test", "third@history.test"};
+    private static final String[] ISBNS = {"9780000000001", "9780000000002", "9780000000003", "9780000000004"};
+
+    private UserService userService;
+    private BookService bookService;
+    private BorrowingService borrowingService;
+
+    public BorrowingHistoryTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BorrowingHistoryTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        userService = new UserService(persistenceConfig);
+        bookService = new BookService(persistenceConfig);
+        for (String email : EMAILS){
+            userService.addUser("Student", email, "Passw0rd!", "Address", UserService.UserRole.STUDENT);
+        }
+        for (String isbn : ISBNS){
+            bookService.addBook(isbn, "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 100);
+        }
+        borrowingService = newBorrowingService();
+    }
+
+    public void testReportsMatchTheRecords() throws Exception
+    {
+        // Borrowed within the last two months for two weeks, some returned late, the last book always returned.
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++){
+            Student student = student(EMAILS[random.nextInt(EMAILS.length)]);
+            int bookIndex = random.nextInt(ISBNS.length);
+            Book book = book(ISBNS[bookIndex]);
+            LocalDate borrowDate = TODAY.minusDays(random.nextInt(60));
+            String recordId = "record-"+i;
+            borrowingService.addRecord(recordId, book, student, borrowDate, borrowDate.plusDays(14));
+            if (bookIndex == ISBNS.length - 1 || random.nextInt(10) < 6){
+                LocalDate returnDate = borrowDate.plusDays(random.nextInt(30));
+                BorrowingRecord borrowingRecord = borrowingService.getRecordById(recordId).get();
+                borrowingRecord.setReturnDate(returnDate.isAfter(TODAY) ? TODAY : returnDate);
+                borrowingService.getBorrowingRecordsRepository().saveBorrowingRecord(borrowingRecord);
+            }
+        }
+        assertReportsMatchTheRecords();
+
+        // A borrower with every book back pays their fine, their closed records move to the archive.
+        Student student = student(EMAILS[0]);
+        for (BorrowingRecord borrowingRecord : borrowingService.getBorrowingsByBorrower(student)){
+            if (borrowingRecord.getReturnDate() == null){
+                borrowingRecord.setReturnDate(TODAY);
+                borrowingService.getBorrowingRecordsRepository().saveBorrowingRecord(borrowingRecord);
+            }
+        }
+        if (student.getPendingFine() > 0) borrowingService.payFine(student, student.getPendingFine());
+        assertReportsMatchTheRecords();
+
+        // A book leaves with its records.
+        borrowingService.removeBook(book(ISBNS[ISBNS.length - 1]));
+        assertEquals(0, borrowingService.getTotalFinesOfBook(new Book(ISBNS[ISBNS.length - 1], "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 1)));
+        assertReportsMatchTheRecords();
+
+        // The history rebuilt from the journal gives the same numbers.
+        borrowingService = newBorrowingService();
+        assertReportsMatchTheRecords();
+    }
+
+    private void assertReportsMatchTheRecords()
+    {
+        List<BorrowingRecord> records = borrowingService.getAllRecords();
+        BorrowingStatistics statistics = borrowingService.getStatistics();
+        assertEquals(records.size(), borrowingService.getBorrowingRecordsRepository().getHistory().size());
+        for (BorrowingStatus status : BorrowingStatus.values()){
+            assertEquals(status.toString(), records.stream().filter(borrowingRecord -> borrowingRecord.getStatus() == status).count(), statistics.getCount(status));
+        }
+        assertEquals(records.stream().mapToLong(BorrowingRecord::getFine).sum(), statistics.getTotalFines());
+        assertEquals(records.stream().filter(borrowingRecord -> borrowingRecord.getReturnDate() == null).count(), statistics.getOpenLoans());
+        assertEquals(records.stream().filter(borrowingRecord -> borrowingRecord.getReturnDate() == null && borrowingRecord.getDueDate().isBefore(TODAY)).count(),
+                statistics.getOverdueOpenLoans());
+        for (Book book : bookService.listAllBooks()){
+            long totalFines = records.stream()
+                    .filter(borrowingRecord -> borrowingRecord.getBorrowedBook().getIsbn().equals(book.getIsbn()))
+                    .mapToLong(BorrowingRecord::getFine)
+                    .sum();
+            assertEquals(book.getIsbn(), totalFines, borrowingService.getTotalFinesOfBook(book));
+        }
+    }
+
+    private BorrowingService newBorrowingService()
+    {
+        return new BorrowingService(userService.getUsersRepository(), bookService.getBooksRepository(), persistenceConfig);
+    }
+
+    private Student student(String email)
+    {
+        return (Student) userService.getUserByEmail(email).get();
+    }
+
+    private Book book(String isbn)
+    {
+        return bookService.getBookByIsbn(isbn).get();
+    }
+}
@@ -0,0 +1,160 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.exceptions.EntityDuplicationException;
+import com.adanali.library.model.Book;
+import com.adanali.library.model.Borrower;
+import com.adanali.library.repository.DurabilityPolicy;
+import com.adanali.library.repository.PersistenceConfig;
+import com.adanali.library.repository.PersistenceMode;
+import com.adanali.library.repository.StorageFormat;
+import com.adanali.library.service.LibraryCommandPipeline;
+import com.adanali.library.service.LibraryService;
+import com.adanali.library.service.UserService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures the throughput and latency of changes made through the LibraryCommandPipeline, next to the same changes
+ * made directly on the BorrowingService by every desk thread, with a flush per change so both are durable when they complete.
+ * Every desk borrows and returns random books of a small catalog, so the desks keep running into each other.
+ *
+ * Usage : CommandPipelineBenchmark [desks] [operations per desk], from the test classpath, it does not ship with the application.
+ */
+public class CommandPipelineBenchmark {
+    private static final int BOOK_COUNT = 16;
+    private static final int COPIES_PER_BOOK = 1_000_000;
+    // Commands a desk keeps in flight on the pipeline before waiting on the oldest one.
+    private static final int COMMANDS_IN_FLIGHT = 32;
+
+    private interface Desk {
+        long[] run(int desk, int operations) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int desks = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, Runtime.getRuntime().availableProcessors());
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        LibraryService direct = newLibrary(desks);
+        // First round warms up the JIT, the second one is measured.
+        measure("Direct", desks, operations / 10, (desk, count) -> runDirect(direct, desk, count));
+        measure("Direct", desks, operations, (desk, count) -> runDirect(direct, desk, count));
+
+        LibraryService piped = newLibrary(desks);
+        try (LibraryCommandPipeline pipeline = new LibraryCommandPipeline(piped)) {
+            measure("Pipeline", desks, operations / 10, (desk, count) -> runPipelined(pipeline, desk, count));
+            measure("Pipeline", desks, operations, (desk, count) -> runPipelined(pipeline, desk, count));
+        }
+        System.exit(0);
+    }
+
+    private static LibraryService newLibrary(int desks) throws Exception {
+        String dataDirectory = Files.createTempDirectory("library-pipeline").toString();
+        LibraryService library = new LibraryService(new PersistenceConfig(PersistenceMode.JOURNAL, StorageFormat.BINARY, DurabilityPolicy.ASYNC, 5, dataDirectory));
+        seed(library, desks);
+        return library;
+    }
+
+    private static void measure(String mode, int desks, int operations, Desk desk) throws Exception {
+        List<Future<long[]>> deskLatencies = new ArrayList<>();
+        long startNanos = System.nanoTime();
+        try (ExecutorService workers = Executors.newFixedThreadPool(desks)) {
+            for (int d = 0; d < desks; d++){
+                int deskNumber = d;
+                deskLatencies.add(workers.submit(() -> desk.run(deskNumber, operations)));
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        List<long[]> latenciesPerDesk = new ArrayList<>();
+        for (Future<long[]> latencies : deskLatencies){
+            latenciesPerDesk.add(latencies.get());
+        }
+        long[] allLatencies = latenciesPerDesk.stream()
+                .flatMapToLong(Arrays::stream)
+                .sorted()
+                .toArray();
+        System.out.printf("%-8s : %d desks, %d changes in %.2f s, %.0f changes/s, p50 %.3f ms, p99 %.3f ms, p999 %.3f ms%n",
+                mode, desks, allLatencies.length, elapsedSeconds, allLatencies.length / elapsedSeconds,
+                percentile(allLatencies, 0.50), percentile(allLatencies, 0.99), percentile(allLatencies, 0.999));
+    }
+
+    // Every change is made on the desk thread and flushed before the next one, like a SYNC Database would.
+    private static long[] runDirect(LibraryService library, int desk, int operations) throws Exception {
+        Borrower borrower = (Borrower) library.getUserService().getUserByEmail(deskEmailOf(desk)).orElseThrow();
+        long[] latencies = new long[operations * 2];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < operations; i++){
+            Book book = library.getBookService().getBookByIsbn(isbnOf(random.nextInt(BOOK_COUNT))).orElseThrow();
+            long sent = System.nanoTime();
+            library.getBorrowingService().borrowBook(borrower, book);
+            library.flush();
+            latencies[2 * i] = System.nanoTime() - sent;
+            sent = System.nanoTime();
+            library.getBorrowingService().returnBook(borrower, book);
+            library.flush();
+            latencies[2 * i + 1] = System.nanoTime() - sent;
+        }
+        return latencies;
+    }
+
+    // The desk keeps a window of commands in flight, the latency of a command runs from its submission to its completion.
+    private static long[] runPipelined(LibraryCommandPipeline pipeline, int desk, int operations) throws Exception {
+        String email = deskEmailOf(desk);
+        long[] latencies = new long[operations * 2];
+        long[] sentAt = new long[operations * 2];
+        CompletableFuture<?>[] inFlight = new CompletableFuture<?>[operations * 2];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < operations; i++){
+            String isbn = isbnOf(random.nextInt(BOOK_COUNT));
+            for (int half = 0; half < 2; half++){
+                int command = 2 * i + half;
+                if (command >= COMMANDS_IN_FLIGHT){
+                    int oldest = command - COMMANDS_IN_FLIGHT;
+                    inFlight[oldest].join();
+                }
+                int submitted = command;
+                sentAt[command] = System.nanoTime();
+                inFlight[command] = (half == 0 ? pipeline.borrowBook(email, isbn) : pipeline.returnBook(email, isbn))
+                        .whenComplete((ignored, failure) -> latencies[submitted] = System.nanoTime() - sentAt[submitted]);
+            }
+        }
+        for (CompletableFuture<?> command : inFlight){
+            command.join();
+        }
+        return latencies;
+    }
+
+    private static void seed(LibraryService library, int desks) throws EntityDuplicationException, IOException {
+        for (int i = 0; i < BOOK_COUNT; i++){
+            library.getBookService().addBook(isbnOf(i), "Benchmark book "+i, "Author "+i, "Benchmark", LocalDate.of(2000, 1, 1), COPIES_PER_BOOK);
+        }
+        for (int i = 0; i < desks; i++){
+            library.getUserService().addUser("Desk "+i, deskEmailOf(i), "Passw0rd!", "Desk "+i, UserService.UserRole.STUDENT);
+        }
+        library.flush();
+    }
+
+    private static double percentile(long[] sortedNanos, double fraction){
+        if (sortedNanos.length == 0) return 0;
+        int index = (int) Math.min(sortedNanos.length - 1, Math.ceil(fraction * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+
+    private static String isbnOf(int book){
+        return String.format("979%010d", book);
+    }
+
+    private static String deskEmailOf(int desk){
+        return "desk"+desk+"@bench.test";
+    }
+}
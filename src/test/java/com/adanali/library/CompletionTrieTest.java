@@ -0,0 +1,86 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.repository.index.CompletionTrie;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.List;
+
+/**
+ * Prefix completion : the values most entities share come first, and edges split and merge back as values come and go.
+ */
+public class CompletionTrieTest
+    extends TestCase
+{
+    private CompletionTrie<Integer> trie;
+
+    public CompletionTrieTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CompletionTrieTest.class );
+    }
+
+    @Override
+    protected void setUp()
+    {
+        trie = new CompletionTrie<>();
+    }
+
+    public void testHeaviestCompletionsFirst()
+    {
+        trie.index(1, "Harry Potter");
+        trie.index(2, "Harry Potter");
+        trie.index(3, "Harry Potter");
+        trie.index(4, "Hamlet");
+        trie.index(5, "Hamlet");
+        trie.index(6, "Harold and the Purple Crayon");
+        trie.index(7, "Hobbit");
+
+        assertEquals(List.of("Harry Potter", "Hamlet", "Harold and the Purple Crayon"), trie.complete("ha", 10));
+        assertEquals(List.of("Harry Potter", "Hamlet"), trie.complete("H", 2));
+        assertEquals(List.of("Harry Potter"), trie.complete("harry p", 10));
+        assertEquals(List.of("Hobbit"), trie.complete("HOB", 10));
+        assertTrue(trie.complete("harz", 10).isEmpty());
+        assertTrue(trie.complete("harry potter and", 10).isEmpty());
+    }
+
+    public void testEqualWeightsInAlphabeticalOrder()
+    {
+        trie.index(1, "Beta");
+        trie.index(2, "Alpha");
+        trie.index(3, "Alphabet");
+
+        assertEquals(List.of("Alpha", "Alphabet", "Beta"), trie.complete("", 10));
+        // A value that is a prefix of another one.
+        assertEquals(List.of("Alpha", "Alphabet"), trie.complete("alpha", 10));
+    }
+
+    public void testReindexAndRemoveUpdateWeights()
+    {
+        trie.index(1, "Dune");
+        trie.index(2, "Dune");
+        trie.index(3, "Dubliners");
+        trie.index(4, "Dubliners");
+        trie.index(5, "Dubliners");
+        assertEquals(List.of("Dubliners", "Dune"), trie.complete("du", 10));
+
+        trie.index(5, "Dune");
+        assertEquals(List.of("Dune", "Dubliners"), trie.complete("du", 10));
+
+        trie.remove(3);
+        trie.remove(4);
+        assertEquals(List.of("Dune"), trie.complete("du", 10));
+        // The split edge merged back, the remaining value is still found from any prefix.
+        assertEquals(List.of("Dune"), trie.complete("dun", 10));
+
+        trie.remove(1);
+        trie.remove(2);
+        trie.remove(5);
+        assertTrue(trie.complete("", 10).isEmpty());
+    }
+}
@@ -0,0 +1,175 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.model.Book;
+import com.adanali.library.model.BorrowingRecord;
+import com.adanali.library.model.BorrowingStatus;
+import com.adanali.library.model.Student;
+import com.adanali.library.repository.DurabilityPolicy;
+import com.adanali.library.service.BookService;
+import com.adanali.library.service.BorrowingService;
+import com.adanali.library.service.UserService;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Several desks borrowing and returning the same books at once, against a Database written to a temporary directory.
+ */
+public class ConcurrencyStressTest
+    extends LibraryTestCase
+{
+    private static final int BOOK_COUNT = 20;
+    private static final int COPIES_PER_BOOK = 1000;
+    private static final int LOANS_PER_THREAD = 2000;
+    private static final int HOT_TITLE_COPIES = 50;
+    private static final int CHECKOUT_ATTEMPTS_PER_THREAD = 500;
+
+    private UserService userService;
+    private BookService bookService;
+    private BorrowingService borrowingService;
+
+    public ConcurrencyStressTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ConcurrencyStressTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        persistenceConfig = journalConfig(DurabilityPolicy.ASYNC, 50);
+        userService = new UserService(persistenceConfig);
+        bookService = new BookService(persistenceConfig);
+        borrowingService = new BorrowingService(userService.getUsersRepository(), bookService.getBooksRepository(), persistenceConfig);
+        for (int i = 0; i < BOOK_COUNT; i++){
+            bookService.addBook(isbnOf(i), "Title "+i, "Author "+i, "Genre", LocalDate.of(2000, 1, 1), COPIES_PER_BOOK);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        persistenceConfig.flush();
+        super.tearDown();
+    }
+
+    /**
+     * Every thread borrows and returns random books for its own students, so the threads contend on the books :
+     * every copy comes back and every loan is recorded once, with one thread and with one thread per core.
+     */
+    public void testConcurrentBorrowAndReturn() throws Exception
+    {
+        int threadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+        runLoans("single", 1);
+        runLoans("multi", threadCount);
+
+        int expectedLoans = LOANS_PER_THREAD * (1 + threadCount);
+        for (int i = 0; i < BOOK_COUNT; i++){
+            assertEquals(COPIES_PER_BOOK, bookService.getBookByIsbn(isbnOf(i)).get().getQuantity());
+        }
+        assertEquals(expectedLoans, borrowingService.getAllRecords().size());
+        assertEquals(expectedLoans, borrowingService.getAllRecords().stream().map(BorrowingRecord::getRecordId).distinct().count());
+        assertEquals(expectedLoans, borrowingService.getStatistics().getCount(BorrowingStatus.RETURNED));
+        assertTrue(borrowingService.getActiveBorrowings().isEmpty());
+    }
+
+    /**
+     * Many desks race for the few copies of a hot title : exactly as many checkouts succeed as there are copies.
+     */
+    public void testNoOversellOfHotTitle() throws Exception
+    {
+        String hotIsbn = isbnOf(BOOK_COUNT);
+        bookService.addBook(hotIsbn, "Hot Title", "Hot Author", "Genre", LocalDate.of(2020, 1, 1), HOT_TITLE_COPIES);
+        Book hotTitle = bookService.getBookByIsbn(hotIsbn).get();
+        int threadCount = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++){
+            String email = "hot"+i+"@stress.test";
+            userService.addUser("Student", email, "Passw0rd!", "Address", UserService.UserRole.STUDENT);
+            students.add((Student) userService.getUserByEmail(email).get());
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger checkouts = new AtomicInteger();
+        AtomicInteger refusals = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (Student student : students){
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int attempt = 0; attempt < CHECKOUT_ATTEMPTS_PER_THREAD; attempt++){
+                        try {
+                            borrowingService.borrowBook(student, hotTitle);
+                            checkouts.incrementAndGet();
+                        } catch (IllegalStateException e) {
+                            refusals.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads){
+            thread.join();
+        }
+        if (failure.get() != null) throw new AssertionError("Desk thread failed", failure.get());
+
+        assertEquals(HOT_TITLE_COPIES, checkouts.get());
+        assertEquals(threadCount * CHECKOUT_ATTEMPTS_PER_THREAD - HOT_TITLE_COPIES, refusals.get());
+        assertEquals(0, hotTitle.getQuantity());
+        assertEquals(HOT_TITLE_COPIES, borrowingService.getBorrowingsByBook(hotTitle).size());
+    }
+
+    private void runLoans(String run, int threadCount) throws Exception
+    {
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++){
+            String email = run+i+"@stress.test";
+            userService.addUser("Student", email, "Passw0rd!", "Address", UserService.UserRole.STUDENT);
+            students.add((Student) userService.getUserByEmail(email).get());
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (Student student : students){
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int loan = 0; loan < LOANS_PER_THREAD; loan++){
+                        Book book = bookService.getBookByIsbn(isbnOf(ThreadLocalRandom.current().nextInt(BOOK_COUNT))).get();
+                        borrowingService.borrowBook(student, book);
+                        borrowingService.returnBook(student, book);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads){
+            thread.join();
+        }
+        if (failure.get() != null) throw new AssertionError("Desk thread failed", failure.get());
+    }
+
+    private static String isbnOf(int book)
+    {
+        return String.format("978%010d", book);
+    }
+}
@@ -0,0 +1,99 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.model.Book;
+import com.adanali.library.repository.BooksRepository;
+import com.adanali.library.repository.Page;
+import com.adanali.library.service.BookService;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Search results a page at a time : every match exactly once, in the order of the ISBN, whatever changes between two pages.
+ */
+public class CursorSearchTest
+    extends LibraryTestCase
+{
+    private BookService bookService;
+
+    public CursorSearchTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CursorSearchTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        bookService = new BookService(persistenceConfig);
+        // Every third book is a river book, in a title, an author or a genre.
+        for (int i = 0; i < 300; i++){
+            String title = i % 3 == 0 ? "River Tales "+i : "Mountain "+i;
+            String author = i % 9 == 1 ? "Ann Rivers" : "Author "+i;
+            String genre = i % 9 == 2 ? "Riverside" : "Fiction";
+            bookService.addBook(isbnOf(i), title, author, genre, LocalDate.of(2000, 1, 1), 1);
+        }
+    }
+
+    public void testPagesCoverEveryMatchOnceInIsbnOrder() throws Exception
+    {
+        List<Book> expected = bookService.searchBooks("RIVER", BooksRepository.SearchAttribute.ALL).stream()
+                .sorted(Comparator.comparing(Book::getIsbn))
+                .toList();
+        assertEquals(100 + 34 + 34, expected.size());
+
+        List<Book> paged = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            Page<Book> page = bookService.searchBooks("RIVER", BooksRepository.SearchAttribute.ALL, cursor, 7);
+            assertTrue(page.getItems().size() <= 7);
+            paged.addAll(page.getItems());
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+        assertEquals(expected, paged);
+        assertEquals((expected.size() + 6) / 7, pages);
+    }
+
+    public void testSingleAttributeAndNoMatch() throws Exception
+    {
+        Page<Book> page = bookService.searchBooks("rivers", BooksRepository.SearchAttribute.AUTHOR, null, 100);
+        assertEquals(34, page.getItems().size());
+        assertFalse(page.hasNext());
+        for (Book book : page.getItems()){
+            assertEquals("Ann Rivers", book.getAuthor());
+        }
+        assertTrue(bookService.searchBooks("ocean", BooksRepository.SearchAttribute.ALL, null, 10).getItems().isEmpty());
+    }
+
+    public void testChangesBetweenPages() throws Exception
+    {
+        Page<Book> first = bookService.searchBooks("river tales", BooksRepository.SearchAttribute.TITLE, null, 10);
+        assertEquals(isbnOf(0), first.getItems().get(0).getIsbn());
+        assertEquals(isbnOf(27), first.getItems().get(9).getIsbn());
+
+        // The last book of the page and the next match are removed, a book before the cursor starts matching.
+        bookService.removeBook(isbnOf(27));
+        bookService.removeBook(isbnOf(30));
+        bookService.updateBookTitle(isbnOf(1), "River Tales again");
+
+        Page<Book> second = bookService.searchBooks("river tales", BooksRepository.SearchAttribute.TITLE, first.getNextCursor(), 10);
+        assertEquals(isbnOf(33), second.getItems().get(0).getIsbn());
+        assertEquals(isbnOf(60), second.getItems().get(9).getIsbn());
+    }
+
+    private static String isbnOf(int i)
+    {
+        return String.format("978%010d", i);
+    }
+}
@@ -0,0 +1,128 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.model.Book;
+import com.adanali.library.repository.index.FacetCount;
+import com.adanali.library.service.BookService;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Genre and year facets kept up to date as books are added, updated, removed and run out of copies,
+ * and always equal to a count of the whole catalog.
+ */
+public class FacetCountsTest
+    extends LibraryTestCase
+{
+    private static final String[] GENRES = {"Fantasy", "Mythology", "Science Fiction"};
+
+    private BookService bookService;
+
+    public FacetCountsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( FacetCountsTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        bookService = new BookService(persistenceConfig);
+        bookService.addBook("9780000000001", "The Hobbit", "J.R.R. Tolkien", "Fantasy", LocalDate.of(1937, 9, 21), 2);
+        bookService.addBook("9780000000002", "The Silmarillion", "J.R.R. Tolkien", "Fantasy", LocalDate.of(1977, 9, 15), 1);
+        bookService.addBook("9780000000003", "Dune", "Frank Herbert", "Science Fiction", LocalDate.of(1965, 8, 1), 1);
+    }
+
+    public void testCountsFollowEveryChange() throws Exception
+    {
+        assertFacet(bookService.getGenreFacets().get("Fantasy"), 2, 2);
+        assertFacet(bookService.getGenreFacets().get("Science Fiction"), 1, 1);
+        assertFacet(bookService.getYearFacets().get(1937), 1, 1);
+
+        // The last copy goes, the book is still counted but not available.
+        bookService.decreaseBookQuantity("9780000000002", 1);
+        assertFacet(bookService.getGenreFacets().get("Fantasy"), 2, 1);
+        assertFacet(bookService.getYearFacets().get(1977), 1, 0);
+        bookService.increaseBookQuantity("9780000000002", 3);
+        assertFacet(bookService.getGenreFacets().get("Fantasy"), 2, 2);
+        assertFacet(bookService.getYearFacets().get(1977), 1, 1);
+
+        bookService.updateBookGenre("9780000000002", "Mythology");
+        assertFacet(bookService.getGenreFacets().get("Fantasy"), 1, 1);
+        assertFacet(bookService.getGenreFacets().get("Mythology"), 1, 1);
+
+        bookService.updateBookPublicationDate("9780000000003", LocalDate.of(1937, 1, 1));
+        assertFalse(bookService.getYearFacets().containsKey(1965));
+        assertFacet(bookService.getYearFacets().get(1937), 2, 2);
+
+        // The last book of a genre or a year goes, so does its facet.
+        bookService.removeBook("9780000000001");
+        assertFalse(bookService.getGenreFacets().containsKey("Fantasy"));
+        assertFacet(bookService.getYearFacets().get(1937), 1, 1);
+        assertEquals(2, bookService.getGenreFacets().size());
+        assertCountsMatchTheCatalog(bookService);
+    }
+
+    public void testCountsMatchTheCatalogAfterRandomChanges() throws Exception
+    {
+        Random random = new Random(42);
+        for (int step = 0; step < 500; step++){
+            String isbn = String.format("97810000%05d", random.nextInt(40));
+            Book book = bookService.getBookByIsbn(isbn).orElse(null);
+            if (book == null){
+                bookService.addBook(isbn, "Title", "Author", GENRES[random.nextInt(GENRES.length)], LocalDate.of(1990 + random.nextInt(5), 1, 1), 1 + random.nextInt(2));
+                continue;
+            }
+            switch (random.nextInt(5)) {
+                case 0 -> bookService.removeBook(isbn);
+                case 1 -> bookService.updateBookGenre(isbn, GENRES[random.nextInt(GENRES.length)]);
+                case 2 -> bookService.updateBookPublicationDate(isbn, LocalDate.of(1990 + random.nextInt(5), 6, 1));
+                case 3 -> bookService.increaseBookQuantity(isbn, 1);
+                default -> {
+                    if (book.getQuantity() > 0) bookService.decreaseBookQuantity(isbn, 1);
+                }
+            }
+        }
+        assertCountsMatchTheCatalog(bookService);
+        // Counts rebuilt while the journal is replayed are the same.
+        assertCountsMatchTheCatalog(new BookService(persistenceConfig));
+        assertEquals(bookService.getGenreFacets().toString(), new BookService(persistenceConfig).getGenreFacets().toString());
+    }
+
+    private static void assertCountsMatchTheCatalog(BookService bookService)
+    {
+        assertEquals(recount(bookService, Book::getGenre).toString(), bookService.getGenreFacets().toString());
+        assertEquals(recount(bookService, book -> book.getPublicationDate().getYear()).toString(), bookService.getYearFacets().toString());
+    }
+
+    // The facets counted from scratch over the whole catalog.
+    private static <K> Map<K, FacetCount> recount(BookService bookService, Function<Book, K> facetOf)
+    {
+        Map<K, int[]> counts = new TreeMap<>();
+        for (Book book : bookService.listAllBooks()){
+            int[] count = counts.computeIfAbsent(facetOf.apply(book), facet -> new int[2]);
+            count[0]++;
+            if (book.isAvailableForBorrow()) count[1]++;
+        }
+        Map<K, FacetCount> facets = new TreeMap<>();
+        counts.forEach((facet, count) -> facets.put(facet, new FacetCount(count[0], count[1])));
+        return facets;
+    }
+
+    private static void assertFacet(FacetCount facet, int total, int available)
+    {
+        assertNotNull(facet);
+        assertEquals(total, facet.getTotal());
+        assertEquals(available, facet.getAvailable());
+    }
+}
@@ -0,0 +1,139 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.repository.index.FuzzyMatches;
+import com.adanali.library.repository.index.FuzzyTermIndex;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Typo tolerant search : matches within the allowed edits, the closest first, the visit budget and the candidate cap.
+ */
+public class FuzzyTermIndexTest
+    extends TestCase
+{
+    public FuzzyTermIndexTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( FuzzyTermIndexTest.class );
+    }
+
+    public void testTyposWithinTheAllowedEdits()
+    {
+        FuzzyTermIndex<String> index = new FuzzyTermIndex<>(1_000, Comparator.<String>naturalOrder());
+        index.index("hobbit", "The Hobbit", "Tolkien");
+        index.index("habit", "Atomic Habits", "Clear");
+        index.index("dune", "Dune", "Herbert");
+
+        FuzzyMatches<String> matches = index.search("hobit tolkein", 10);
+        assertEquals(List.of("hobbit"), matches.getEntities());
+        assertFalse(matches.isTruncated());
+        // One edit from hobbit, two from habits.
+        assertEquals(List.of("hobbit", "habit"), index.search("hobbits", 10).getEntities());
+        // Terms of up to 4 characters allow a single edit.
+        assertEquals(List.of("dune"), index.search("dume", 10).getEntities());
+        assertTrue(index.search("dxme", 10).getEntities().isEmpty());
+
+        index.remove("hobbit");
+        assertEquals(List.of("habit"), index.search("hobbits", 10).getEntities());
+    }
+
+    public void testExactTermIsFoundWhateverTheBudget()
+    {
+        FuzzyTermIndex<Integer> index = new FuzzyTermIndex<>(1, Comparator.<Integer>naturalOrder());
+        List<String> terms = randomTerms(2_000, 6);
+        for (int i = 0; i < terms.size(); i++){
+            index.index(i, terms.get(i));
+        }
+        // The budget only lets the root be visited, every other exact term is still found.
+        for (int i = 0; i < terms.size(); i += 97){
+            FuzzyMatches<Integer> matches = index.search(terms.get(i), 1);
+            assertEquals(terms.get(i), terms.get(matches.getEntities().get(0)));
+            assertTrue(matches.isTruncated());
+        }
+    }
+
+    public void testCutShortQueryIsFlaggedAndFullQueryIsNot()
+    {
+        List<String> terms = randomTerms(3_000, 5);
+        FuzzyTermIndex<Integer> unbounded = new FuzzyTermIndex<>(Integer.MAX_VALUE, Comparator.<Integer>naturalOrder());
+        FuzzyTermIndex<Integer> bounded = new FuzzyTermIndex<>(20, Comparator.<Integer>naturalOrder());
+        for (int i = 0; i < terms.size(); i++){
+            unbounded.index(i, terms.get(i));
+            bounded.index(i, terms.get(i));
+        }
+        String query = "abcde";
+        FuzzyMatches<Integer> all = unbounded.search(query, terms.size());
+        assertFalse(all.isTruncated());
+        // Every term within 2 edits of the query is found when the budget allows it.
+        for (int i = 0; i < terms.size(); i++){
+            assertEquals(terms.get(i), editDistance(query, terms.get(i)) <= 2, all.getEntities().contains(i));
+        }
+
+        FuzzyMatches<Integer> some = bounded.search(query, terms.size());
+        assertTrue(some.isTruncated());
+        assertTrue(all.getEntities().containsAll(some.getEntities()));
+    }
+
+    public void testCandidateCapIsFlaggedAndBestMatchesComeFirst()
+    {
+        FuzzyTermIndex<Integer> capped = new FuzzyTermIndex<>(1_000, 10, Comparator.<Integer>naturalOrder());
+        FuzzyTermIndex<Integer> uncapped = new FuzzyTermIndex<>(1_000, 1_000, Comparator.<Integer>naturalOrder());
+        for (int i = 0; i < 200; i++){
+            // Exact, one edit and two edits away from the query.
+            String title = i % 3 == 0 ? "silmarillion" : i % 3 == 1 ? "silmarilion" : "silmarilon";
+            capped.index(i, title);
+            uncapped.index(i, title);
+        }
+        FuzzyMatches<Integer> cut = capped.search("silmarillion", 50);
+        assertTrue(cut.isTruncated());
+        assertEquals(10, cut.getEntities().size());
+        // The exact term is gathered first, so the cap keeps the closest matches.
+        for (int entity : cut.getEntities()){
+            assertEquals(0, entity % 3);
+        }
+
+        FuzzyMatches<Integer> best = uncapped.search("silmarillion", 5);
+        assertFalse(best.isTruncated());
+        assertEquals(List.of(0, 3, 6, 9, 12), best.getEntities());
+        assertEquals(200, uncapped.search("silmarillion", 500).getEntities().size());
+    }
+
+    // Terms over a small alphabet, so many of them are within a couple of edits of each other.
+    private static List<String> randomTerms(int count, int length)
+    {
+        Random random = new Random(7);
+        return random.ints(count, 0, Integer.MAX_VALUE).mapToObj(seed -> {
+            Random termRandom = new Random(seed);
+            StringBuilder term = new StringBuilder();
+            for (int j = 0; j < length; j++){
+                term.append((char) ('a' + termRandom.nextInt(5)));
+            }
+            return term.toString();
+        }).toList();
+    }
+
+    private static int editDistance(String first, String second)
+    {
+        int[][] distances = new int[first.length() + 1][second.length() + 1];
+        for (int i = 0; i <= first.length(); i++){
+            for (int j = 0; j <= second.length(); j++){
+                if (i == 0 || j == 0){
+                    distances[i][j] = i + j;
+                }else {
+                    int substitution = distances[i - 1][j - 1] + (first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1);
+                    distances[i][j] = Math.min(substitution, Math.min(distances[i - 1][j], distances[i][j - 1]) + 1);
+                }
+            }
+        }
+        return distances[first.length()][second.length()];
+    }
+}
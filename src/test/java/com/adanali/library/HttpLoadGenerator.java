@@ -0,0 +1,157 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.app.LibraryHttpServer;
+import com.adanali.library.exceptions.EntityDuplicationException;
+import com.adanali.library.repository.DurabilityPolicy;
+import com.adanali.library.repository.PersistenceConfig;
+import com.adanali.library.repository.PersistenceMode;
+import com.adanali.library.repository.StorageFormat;
+import com.adanali.library.service.LibraryService;
+import com.adanali.library.service.UserService;
+import com.adanali.library.util.JsonStorageUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many requests per second the HTTP API sustains on this machine.
+ * Starts a LibraryHttpServer on a throwaway Database, then every client logs in as its own Student and loops over
+ * a kiosk-like mix for the given duration : mostly catalog searches, some book lookups and some checkouts with their return.
+ *
+ * Usage : HttpLoadGenerator [clients] [seconds], from the test classpath, it does not ship with the application.
+ * Run it with -Dsun.net.httpserver.nodelay=true, as the server is launched, or every request waits about 40 ms.
+ */
+public class HttpLoadGenerator {
+    private static final int BOOK_COUNT = 200;
+    private static final int COPIES_PER_BOOK = 1_000;
+    private static final String[] SEARCH_TERMS = {"history", "science", "novel", "art", "java", "poetry", "war", "sea"};
+    private static final String[] GENRES = {"History", "Science", "Novel", "Art", "Poetry"};
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        String dataDirectory = Files.createTempDirectory("library-load").toString();
+        LibraryService library = new LibraryService(new PersistenceConfig(PersistenceMode.JOURNAL, StorageFormat.BINARY, DurabilityPolicy.BATCHED, 5, dataDirectory));
+        seed(library, clients);
+        LibraryHttpServer server = new LibraryHttpServer(library, 0);
+        server.start();
+        String baseUrl = "http://localhost:"+server.getPort();
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        ObjectMapper objectMapper = JsonStorageUtil.createObjectMapper();
+        AtomicLong requests = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        List<Future<long[]>> clientLatencies = new ArrayList<>();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        long startNanos = System.nanoTime();
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++){
+                String email = studentEmailOf(c);
+                clientLatencies.add(workers.submit(() -> {
+                    long[] latencies = new long[4096];
+                    int count = 0;
+                    try {
+                        HttpResponse<String> login = client.send(post(baseUrl+"/api/login", "{\"email\":\""+email+"\",\"password\":\"Passw0rd!\"}", null),
+                                HttpResponse.BodyHandlers.ofString());
+                        String token = objectMapper.readTree(login.body()).path("token").asText();
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        while (System.nanoTime() < deadline){
+                            int dice = random.nextInt(100);
+                            List<HttpRequest> calls = new ArrayList<>();
+                            if (dice < 70){
+                                calls.add(get(baseUrl+"/api/books?q="+SEARCH_TERMS[random.nextInt(SEARCH_TERMS.length)]+"&limit=10"));
+                            }else if (dice < 90){
+                                calls.add(get(baseUrl+"/api/books/"+isbnOf(random.nextInt(BOOK_COUNT))));
+                            }else {
+                                String body = "{\"isbn\":\""+isbnOf(random.nextInt(BOOK_COUNT))+"\"}";
+                                calls.add(post(baseUrl+"/api/borrow", body, token));
+                                calls.add(post(baseUrl+"/api/return", body, token));
+                            }
+                            for (HttpRequest call : calls){
+                                long sent = System.nanoTime();
+                                HttpResponse<String> response = client.send(call, HttpResponse.BodyHandlers.ofString());
+                                if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+                                latencies[count++] = System.nanoTime() - sent;
+                                requests.incrementAndGet();
+                                if (response.statusCode() != 200) errors.incrementAndGet();
+                            }
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        errors.incrementAndGet();
+                        System.out.println("Client stopped : "+e.getMessage());
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }));
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        server.stop(0);
+
+        List<long[]> latenciesPerClient = new ArrayList<>();
+        for (Future<long[]> latencies : clientLatencies){
+            latenciesPerClient.add(latencies.get());
+        }
+        long[] allLatencies = latenciesPerClient.stream()
+                .flatMapToLong(Arrays::stream)
+                .sorted()
+                .toArray();
+        System.out.printf("%d clients, %.1f s : %d requests, %d errors, %.0f requests/s%n",
+                clients, elapsedSeconds, requests.get(), errors.get(), requests.get() / elapsedSeconds);
+        if (allLatencies.length > 0){
+            System.out.printf("Latency p50 %.2f ms, p99 %.2f ms, p999 %.2f ms%n",
+                    percentile(allLatencies, 0.50), percentile(allLatencies, 0.99), percentile(allLatencies, 0.999));
+        }
+        System.exit(0);
+    }
+
+    private static void seed(LibraryService library, int students) throws EntityDuplicationException {
+        for (int i = 0; i < BOOK_COUNT; i++){
+            String genre = GENRES[i % GENRES.length];
+            String term = SEARCH_TERMS[i % SEARCH_TERMS.length];
+            library.getBookService().addBook(isbnOf(i), "A "+term+" book "+i, "Author "+(i % 37), genre, LocalDate.of(1950 + i % 70, 1, 1), COPIES_PER_BOOK);
+        }
+        for (int i = 0; i < students; i++){
+            library.getUserService().addUser("Student "+i, studentEmailOf(i), "Passw0rd!", "Kiosk "+i, UserService.UserRole.STUDENT);
+        }
+    }
+
+    private static HttpRequest get(String url){
+        return HttpRequest.newBuilder(URI.create(url)).GET().build();
+    }
+
+    private static HttpRequest post(String url, String body, String token){
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) builder.header("Authorization", "Bearer "+token);
+        return builder.build();
+    }
+
+    private static double percentile(long[] sortedNanos, double fraction){
+        int index = (int) Math.min(sortedNanos.length - 1, Math.ceil(fraction * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+
+    private static String isbnOf(int book){
+        return String.format("979%010d", book);
+    }
+
+    private static String studentEmailOf(int student){
+        return "kiosk"+student+"@load.test";
+    }
+}
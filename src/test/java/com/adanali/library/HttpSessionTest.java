@@ -0,0 +1,123 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.app.LibraryHttpServer;
+import com.adanali.library.service.LibraryService;
+import com.adanali.library.service.UserService;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+
+/**
+ * Sessions of the HTTP API : a token stops working on logout, and as soon as its user is removed.
+ * Only the paths of the API are served, not every path sharing their prefix.
+ */
+public class HttpSessionTest
+    extends LibraryTestCase
+{
+    private LibraryService library;
+    private LibraryHttpServer server;
+    private HttpClient client;
+
+    public HttpSessionTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( HttpSessionTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        library = new LibraryService(persistenceConfig);
+        library.getUserService().addUser("Student", "student@http.test", "Passw0rd!", "Address", UserService.UserRole.STUDENT);
+        server = new LibraryHttpServer(library, 0);
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        client.close();
+        server.stop(0);
+        super.tearDown();
+    }
+
+    public void testLogoutEndsTheSession() throws Exception
+    {
+        String token = login();
+        assertEquals(200, get("/api/records", token).statusCode());
+
+        assertEquals(200, post("/api/logout", token).statusCode());
+        assertEquals(401, get("/api/records", token).statusCode());
+        assertEquals(401, post("/api/logout", token).statusCode());
+    }
+
+    public void testRemovedUserIsLoggedOut() throws Exception
+    {
+        String token = login();
+        library.getUserService().removeUser("student@http.test");
+
+        assertEquals(401, get("/api/records", token).statusCode());
+    }
+
+    public void testUnknownToken() throws Exception
+    {
+        assertEquals(401, get("/api/records", "not-a-token").statusCode());
+        assertEquals(401, get("/api/records", null).statusCode());
+    }
+
+    public void testOnlyTheApiPathsAreServed() throws Exception
+    {
+        String token = login();
+        library.getBookService().addBook("9780000000001", "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 1);
+        assertEquals(200, get("/api/books", null).statusCode());
+        assertEquals(200, get("/api/books/9780000000001", null).statusCode());
+        assertEquals(404, get("/api/books/9780000000002", null).statusCode());
+
+        assertEquals(404, get("/api/booksfoo", null).statusCode());
+        assertEquals(404, get("/api/recordsfoo", token).statusCode());
+        assertEquals(404, get("/api/records/1", token).statusCode());
+        assertEquals(404, post("/api/logout/now", token).statusCode());
+        assertEquals(200, get("/api/records", token).statusCode());
+    }
+
+    private String login() throws Exception
+    {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uriOf("/api/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"email\":\"student@http.test\",\"password\":\"Passw0rd!\"}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(response.body(), 200, response.statusCode());
+        String body = response.body();
+        int start = body.indexOf("\"token\":\"") + "\"token\":\"".length();
+        return body.substring(start, body.indexOf('"', start));
+    }
+
+    private HttpResponse<String> get(String path, String token) throws Exception
+    {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uriOf(path)).GET();
+        if (token != null) request.header("Authorization", "Bearer "+token);
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String token) throws Exception
+    {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uriOf(path)).POST(HttpRequest.BodyPublishers.noBody());
+        if (token != null) request.header("Authorization", "Bearer "+token);
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uriOf(String path)
+    {
+        return URI.create("http://localhost:"+server.getPort()+path);
+    }
+}
@@ -0,0 +1,97 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.model.Book;
+import com.adanali.library.model.BorrowingRecord;
+import com.adanali.library.model.Student;
+import com.adanali.library.repository.BorrowingRecordsRepository;
+import com.adanali.library.service.BookService;
+import com.adanali.library.service.BorrowingService;
+import com.adanali.library.service.UserService;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.time.LocalDate;
+
+/**
+ * Journaled persistence : the journal replayed over the snapshot on startup, and folded into the snapshot by a compaction.
+ */
+public class JournalPersistenceTest
+    extends LibraryTestCase
+{
+    public JournalPersistenceTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( JournalPersistenceTest.class );
+    }
+
+    public void testReplayAppliesPutsAndRemovesInOrder() throws Exception
+    {
+        BookService bookService = new BookService(persistenceConfig);
+        bookService.addBook("9780000000001", "Kept", "Author", "Genre", LocalDate.of(2000, 1, 1), 3);
+        bookService.addBook("9780000000002", "Removed", "Author", "Genre", LocalDate.of(2000, 1, 1), 3);
+        bookService.increaseBookQuantity("9780000000001", 2);
+        bookService.removeBook("9780000000002");
+
+        BookService reloaded = new BookService(persistenceConfig);
+        assertEquals(5, reloaded.getBookByIsbn("9780000000001").get().getQuantity());
+        assertTrue(reloaded.getBookByIsbn("9780000000002").isEmpty());
+    }
+
+    public void testCompactionFoldsJournalIntoSnapshot() throws Exception
+    {
+        BookService bookService = new BookService(persistenceConfig);
+        for (int i = 0; i < 10; i++){
+            bookService.addBook(String.format("978%010d", i), "Title "+i, "Author", "Genre", LocalDate.of(2000, 1, 1), 1);
+        }
+        File journal = new File(dataDirectory, "Books.journal");
+        assertTrue(journal.length() > 0);
+
+        bookService.getBooksRepository().saveBooks();
+        assertEquals(0, journal.length());
+        assertTrue(new File(dataDirectory, "Books.json").length() > 0);
+
+        bookService.removeBook(String.format("978%010d", 0));
+        BookService reloaded = new BookService(persistenceConfig);
+        assertEquals(9, reloaded.listAllBooks().size());
+        assertTrue(reloaded.getBookByIsbn(String.format("978%010d", 0)).isEmpty());
+    }
+
+    /**
+     * An overdue record saved several times is replayed several times, its accrued fine must still be charged only once.
+     */
+    public void testReplayedOverdueRecordChargesFineOnce() throws Exception
+    {
+        UserService userService = new UserService(persistenceConfig);
+        BookService bookService = new BookService(persistenceConfig);
+        BorrowingService borrowingService = new BorrowingService(userService.getUsersRepository(), bookService.getBooksRepository(), persistenceConfig);
+        userService.addUser("Student", "late@journal.test", "Passw0rd!", "Address", UserService.UserRole.STUDENT);
+        bookService.addBook("9780000000003", "Late", "Author", "Genre", LocalDate.of(2000, 1, 1), 1);
+        Student student = (Student) userService.getUserByEmail("late@journal.test").get();
+        Book book = bookService.getBookByIsbn("9780000000003").get();
+
+        borrowingService.addRecord("late-1", book, student, LocalDate.now().minusDays(10), LocalDate.now().minusDays(7));
+        int accruedFine = student.getPendingFine();
+        assertTrue(accruedFine > 0);
+
+        // Saved as if the fine had not accrued yet, three times over.
+        BorrowingRecordsRepository recordsRepository = borrowingService.getBorrowingRecordsRepository();
+        BorrowingRecord record = borrowingService.getRecordById("late-1").get();
+        record.setFine(0);
+        for (int i = 0; i < 3; i++){
+            recordsRepository.saveBorrowingRecord(record);
+        }
+        userService.getUsersRepository().saveUser(student);
+
+        UserService reloadedUsers = new UserService(persistenceConfig);
+        BookService reloadedBooks = new BookService(persistenceConfig);
+        BorrowingService reloadedBorrowing = new BorrowingService(reloadedUsers.getUsersRepository(), reloadedBooks.getBooksRepository(), persistenceConfig);
+        Student reloadedStudent = (Student) reloadedUsers.getUserByEmail("late@journal.test").get();
+        assertEquals(accruedFine, reloadedStudent.getPendingFine());
+        assertEquals(accruedFine, reloadedBorrowing.getRecordById("late-1").get().getFine());
+    }
+}
@@ -0,0 +1,98 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.dto.BorrowingRecordDTO;
+import com.adanali.library.model.BorrowingStatus;
+import com.adanali.library.util.JsonStorageUtil;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The streaming loader hands the elements of the snapshot array to the repository one by one, in file order.
+ */
+public class JsonStreamingLoadTest
+    extends LibraryTestCase
+{
+    private File snapshot;
+
+    public JsonStreamingLoadTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( JsonStreamingLoadTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        snapshot = new File(dataDirectory, "Records.json");
+    }
+
+    public void testStreamsEveryElementInOrder() throws Exception
+    {
+        List<BorrowingRecordDTO> saved = new ArrayList<>();
+        for (int i = 0; i < 500; i++){
+            saved.add(new BorrowingRecordDTO("record-"+i, "9780000000001", "student@json.test", LocalDate.of(2024, 1, 1),
+                    LocalDate.of(2024, 1, 4), i % 2 == 0 ? null : LocalDate.of(2024, 1, 3), i, i % 2 == 0 ? BorrowingStatus.ACTIVE : BorrowingStatus.RETURNED));
+        }
+        JsonStorageUtil<BorrowingRecordDTO> storage = new JsonStorageUtil<>(snapshot.getPath());
+        storage.saveData(saved);
+
+        List<BorrowingRecordDTO> loaded = new ArrayList<>();
+        assertEquals(500, storage.loadData(BorrowingRecordDTO.class, loaded::add));
+        assertEquals(500, loaded.size());
+        for (int i = 0; i < 500; i++){
+            BorrowingRecordDTO dto = loaded.get(i);
+            assertEquals("record-"+i, dto.getRecordId());
+            assertEquals(i, dto.getFine());
+            assertEquals(saved.get(i).getReturnDate(), dto.getReturnDate());
+            assertEquals(saved.get(i).getStatus(), dto.getStatus());
+        }
+    }
+
+    public void testMissingOrEmptyFileLoadsNothing() throws Exception
+    {
+        JsonStorageUtil<BorrowingRecordDTO> storage = new JsonStorageUtil<>(snapshot.getPath());
+        assertEquals(0, storage.loadData(BorrowingRecordDTO.class, dto -> fail("Nothing to load")));
+        Files.writeString(snapshot.toPath(), "");
+        assertEquals(0, storage.loadData(BorrowingRecordDTO.class, dto -> fail("Nothing to load")));
+        Files.writeString(snapshot.toPath(), "[]");
+        assertEquals(0, storage.loadData(BorrowingRecordDTO.class, dto -> fail("Nothing to load")));
+    }
+
+    public void testRejectsDocumentThatIsNotAnArray() throws Exception
+    {
+        Files.writeString(snapshot.toPath(), "{\"recordId\":\"record-0\"}", StandardCharsets.UTF_8);
+        JsonStorageUtil<BorrowingRecordDTO> storage = new JsonStorageUtil<>(snapshot.getPath());
+        try {
+            storage.loadData(BorrowingRecordDTO.class, dto -> {});
+            fail("A document that is not an array must be rejected");
+        } catch (IOException e) {
+            assertNotNull(e.getCause());
+        }
+    }
+
+    public void testTruncatedArrayFailsTheLoad() throws Exception
+    {
+        Files.writeString(snapshot.toPath(), "[{\"recordId\":\"record-0\",\"fine\":0},{\"recordId\":\"rec", StandardCharsets.UTF_8);
+        JsonStorageUtil<BorrowingRecordDTO> storage = new JsonStorageUtil<>(snapshot.getPath());
+        List<BorrowingRecordDTO> loaded = new ArrayList<>();
+        try {
+            storage.loadData(BorrowingRecordDTO.class, loaded::add);
+            fail("A truncated snapshot must fail the load");
+        } catch (IOException e) {
+            assertEquals(1, loaded.size());
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.repository.DurabilityPolicy;
+import com.adanali.library.repository.PersistenceConfig;
+import com.adanali.library.repository.PersistenceMode;
+import com.adanali.library.repository.StorageFormat;
+import com.adanali.library.service.LibraryCommandPipeline;
+import com.adanali.library.service.LibraryService;
+import com.adanali.library.service.UserService;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Single writer pipeline : failed commands fail alone, removals are checked like at the console, and every command gets an answer,
+ * including the ones racing the close.
+ */
+public class LibraryCommandPipelineTest
+    extends LibraryTestCase
+{
+    private LibraryService library;
+
+    public LibraryCommandPipelineTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( LibraryCommandPipelineTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        library = new LibraryService(journalConfig(DurabilityPolicy.ASYNC, 20));
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        library.flush();
+        super.tearDown();
+    }
+
+    public void testFailedCommandDoesNotStopTheOthers() throws Exception
+    {
+        try (LibraryCommandPipeline pipeline = new LibraryCommandPipeline(library, 16)) {
+            CompletableFuture<Void> added = pipeline.addBook("9780000000001", "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 1);
+            CompletableFuture<Void> duplicate = pipeline.addBook("9780000000001", "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 1);
+            CompletableFuture<Void> missing = pipeline.borrowBook("nobody@pipeline.test", "9780000000001");
+            CompletableFuture<Void> increased = pipeline.increaseBookQuantity("9780000000001", 4);
+
+            added.get(10, TimeUnit.SECONDS);
+            assertFailed(duplicate);
+            assertFailed(missing);
+            increased.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(5, library.getBookService().getBookByIsbn("9780000000001").get().getQuantity());
+    }
+
+    public void testCommandsRacingTheCloseAllComplete() throws Exception
+    {
+        for (int round = 0; round < 20; round++){
+            LibraryCommandPipeline pipeline = new LibraryCommandPipeline(library, 8);
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            List<Thread> desks = new ArrayList<>();
+            for (int d = 0; d < 4; d++){
+                List<CompletableFuture<Void>> deskFutures = new ArrayList<>();
+                int desk = d;
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 200; i++){
+                        deskFutures.add(pipeline.addBook(String.format("978%04d%02d%04d", desk, 0, i), "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 1)
+                                .exceptionally(e -> null));
+                    }
+                    synchronized (futures){
+                        futures.addAll(deskFutures);
+                    }
+                });
+                desks.add(thread);
+                thread.start();
+            }
+            pipeline.close();
+            for (Thread desk : desks){
+                desk.join();
+            }
+            for (CompletableFuture<Void> future : futures){
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                } catch (TimeoutException e) {
+                    fail("A command submitted while closing was never completed");
+                }
+            }
+            assertEquals(800, futures.size());
+        }
+    }
+
+    public void testCommandAfterCloseFails() throws Exception
+    {
+        LibraryCommandPipeline pipeline = new LibraryCommandPipeline(library);
+        pipeline.close();
+        try {
+            pipeline.removeBook("9780000000001").get(10, TimeUnit.SECONDS);
+            fail("The pipeline is closed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public void testRemovalsGoThroughTheChecks() throws Exception
+    {
+        try (LibraryCommandPipeline pipeline = new LibraryCommandPipeline(library, 16)) {
+            pipeline.addBook("9780000000001", "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 1).get(10, TimeUnit.SECONDS);
+            pipeline.addUser("Student", "student@pipeline.test", "Passw0rd!", "Address", UserService.UserRole.STUDENT).get(10, TimeUnit.SECONDS);
+            pipeline.borrowBook("student@pipeline.test", "9780000000001").get(10, TimeUnit.SECONDS);
+
+            assertFailed(pipeline.removeBook("9780000000001"));
+            assertFailed(pipeline.removeUser("student@pipeline.test"));
+            assertTrue(library.getBookService().getBookByIsbn("9780000000001").isPresent());
+            assertTrue(library.getUserService().getUserByEmail("student@pipeline.test").isPresent());
+
+            pipeline.returnBook("student@pipeline.test", "9780000000001").get(10, TimeUnit.SECONDS);
+            pipeline.removeBook("9780000000001").get(10, TimeUnit.SECONDS);
+            pipeline.removeUser("student@pipeline.test").get(10, TimeUnit.SECONDS);
+        }
+        assertTrue(library.getBookService().getBookByIsbn("9780000000001").isEmpty());
+        assertTrue(library.getUserService().getUserByEmail("student@pipeline.test").isEmpty());
+        assertTrue(library.getBorrowingService().getAllRecords().isEmpty());
+    }
+
+    public void testOnlyTheAsyncPolicyIsAccepted() throws Exception
+    {
+        File syncDirectory = new File(dataDirectory, "sync");
+        LibraryService syncLibrary = new LibraryService(new PersistenceConfig(PersistenceMode.JOURNAL, StorageFormat.JSON, DurabilityPolicy.SYNC, 0, syncDirectory.getPath()));
+        try {
+            new LibraryCommandPipeline(syncLibrary).close();
+            fail("Every save would block the writer");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static void assertFailed(CompletableFuture<Void> future) throws Exception
+    {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("The command should have failed");
+        } catch (ExecutionException expected) {
+        }
+    }
+}
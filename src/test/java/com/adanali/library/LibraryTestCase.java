@@ -0,0 +1,45 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.repository.DurabilityPolicy;
+import com.adanali.library.repository.PersistenceConfig;
+import com.adanali.library.repository.PersistenceMode;
+import com.adanali.library.repository.StorageFormat;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Base of the tests running against a temporary Database directory : the directory is created before each test and
+ * deleted after it. The default configuration journals the changes as JSON and saves them synchronously.
+ */
+public abstract class LibraryTestCase
+    extends TestCase
+{
+    protected File dataDirectory;
+    protected PersistenceConfig persistenceConfig;
+
+    protected LibraryTestCase( String testName )
+    {
+        super( testName );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        dataDirectory = Files.createTempDirectory("library-test").toFile();
+        persistenceConfig = journalConfig(DurabilityPolicy.SYNC, 0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        TestFiles.deleteRecursively(dataDirectory);
+    }
+
+    // Journaled JSON files in the temporary directory, saved with the given policy.
+    protected PersistenceConfig journalConfig(DurabilityPolicy durabilityPolicy, long flushWindowMillis)
+    {
+        return new PersistenceConfig(PersistenceMode.JOURNAL, StorageFormat.JSON, durabilityPolicy, flushWindowMillis, dataDirectory.getPath());
+    }
+}
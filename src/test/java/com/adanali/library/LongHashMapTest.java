@@ -0,0 +1,98 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.util.LongIntHashMap;
+import com.adanali.library.util.LongObjectHashMap;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Open-addressing maps with primitive keys : removals shift the probing entries back instead of leaving tombstones,
+ * so every entry must stay reachable however the removals cut its probe run, including runs wrapping past the last slot.
+ */
+public class LongHashMapTest
+    extends TestCase
+{
+    public LongHashMapTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( LongHashMapTest.class );
+    }
+
+    public void testObjectMapAgreesWithHashMapUnderChurn()
+    {
+        Random random = new Random(11);
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        Map<Long, String> expected = new HashMap<>();
+        // Few keys for the capacity, so the map stays small and full of long probe runs while they are put and removed.
+        for (int operation = 0; operation < 200_000; operation++){
+            long key = random.nextInt(24);
+            if (random.nextBoolean()){
+                String value = "v"+operation;
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+            if (operation % 97 == 0){
+                for (long k = 0; k < 24; k++){
+                    assertEquals(expected.get(k), map.get(k));
+                }
+            }
+        }
+        assertEquals(expected.size(), map.values().size());
+        assertTrue(map.values().containsAll(expected.values()));
+    }
+
+    public void testObjectMapAfterGrowingAndEmptying()
+    {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+        for (long key = 0; key < 10_000; key++){
+            map.put(key * 9_780_000_000_001L, key);
+        }
+        for (long key = 0; key < 10_000; key += 2){
+            assertEquals(Long.valueOf(key), map.remove(key * 9_780_000_000_001L));
+        }
+        for (long key = 0; key < 10_000; key++){
+            assertEquals(key % 2 == 0 ? null : Long.valueOf(key), map.get(key * 9_780_000_000_001L));
+        }
+        assertNull(map.remove(-1));
+        assertEquals(5_000, map.size());
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(List.of(), map.values());
+        assertNull(map.get(9_780_000_000_001L));
+    }
+
+    public void testIntMapAgreesWithHashMapUnderChurn()
+    {
+        Random random = new Random(13);
+        LongIntHashMap map = new LongIntHashMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int operation = 0; operation < 200_000; operation++){
+            long key = random.nextInt(24) - 12;
+            if (random.nextBoolean()){
+                map.put(key, operation);
+                expected.put(key, operation);
+            }else {
+                Integer removed = expected.remove(key);
+                assertEquals(removed == null ? LongIntHashMap.NO_VALUE : removed, map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+            if (operation % 97 == 0){
+                for (long k = -12; k < 12; k++){
+                    assertEquals(expected.getOrDefault(k, LongIntHashMap.NO_VALUE).intValue(), map.get(k));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.repository.index.NGramIndex;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Substring search over n-grams : always the same matches as a case-insensitive contains over every value, whether searched
+ * directly or through the candidates and their confirmation.
+ */
+public class NGramIndexTest
+    extends TestCase
+{
+    private static final String[] WORDS = {"the", "sea", "Seas", "history", "HIS", "story", "art", "ARTS", "war", "peace", "warden", "a"};
+
+    public NGramIndexTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( NGramIndexTest.class );
+    }
+
+    public void testShortAndLongQueries()
+    {
+        NGramIndex<String> index = new NGramIndex<>();
+        index.index("1", "The History of Art");
+        index.index("2", "Seascapes");
+        index.index("3", "War and Peace");
+
+        assertEquals(Set.of("2", "3"), index.search("P"));
+        assertEquals(Set.of("1"), index.search("HIST"));
+        assertEquals(Set.of("3"), index.search("and peace"));
+        assertEquals(Set.of("1", "2", "3"), index.search(""));
+        assertTrue(index.search("history of arts").isEmpty());
+        assertTrue(index.search("zzz").isEmpty());
+    }
+
+    public void testReindexAndRemove()
+    {
+        NGramIndex<String> index = new NGramIndex<>();
+        index.index("1", "Ocean");
+        index.index("1", "Desert");
+        assertTrue(index.search("ocea").isEmpty());
+        assertEquals(Set.of("1"), index.search("sert"));
+
+        index.remove("1");
+        assertTrue(index.search("sert").isEmpty());
+        assertTrue(index.search("").isEmpty());
+    }
+
+    public void testMatchesContainsOnRandomValues()
+    {
+        Random random = new Random(42);
+        NGramIndex<Integer> index = new NGramIndex<>();
+        Map<Integer, String> values = new HashMap<>();
+        for (int round = 0; round < 2_000; round++){
+            int entity = random.nextInt(300);
+            if (random.nextInt(5) == 0){
+                index.remove(entity);
+                values.remove(entity);
+            }else {
+                String value = WORDS[random.nextInt(WORDS.length)]+" "+WORDS[random.nextInt(WORDS.length)];
+                index.index(entity, value);
+                values.put(entity, value);
+            }
+        }
+        for (String query : new String[]{"s", "Se", "sea", "seas", "his story", "ar", "ward", "e p", "a a", "tory", "x"}){
+            Set<Integer> expected = new HashSet<>();
+            values.forEach((entity, value) -> {
+                if (value.toLowerCase().contains(query.toLowerCase())) expected.add(entity);
+            });
+            assertEquals(query, expected, index.search(query));
+            // The candidates hold every match, and confirming them gives the same matches.
+            Set<Integer> confirmed = new HashSet<>();
+            for (Integer candidate : index.candidates(query)){
+                if (index.matches(candidate, query)) confirmed.add(candidate);
+            }
+            assertEquals(query, expected, confirmed);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.model.Book;
+import com.adanali.library.model.BorrowingRecord;
+import com.adanali.library.model.BorrowingStatus;
+import com.adanali.library.model.Student;
+import com.adanali.library.repository.BorrowingRecordsRepository;
+import com.adanali.library.service.BookService;
+import com.adanali.library.service.UserService;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Overdue sweep driven by a clock of the test : open records past their due date flip to OVERDUE and are fined,
+ * and a second sweep on the same day changes nothing.
+ */
+public class OverdueSweepTest
+    extends LibraryTestCase
+{
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final String EMAIL = "student@overdue.test";
+    private static final String ISBN = "9780000000001";
+
+    private TestClock clock;
+    private UserService userService;
+    private BookService bookService;
+    private BorrowingRecordsRepository recordsRepository;
+
+    public OverdueSweepTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( OverdueSweepTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        userService = new UserService(persistenceConfig);
+        bookService = new BookService(persistenceConfig);
+        userService.addUser("Student", EMAIL, "Passw0rd!", "Address", UserService.UserRole.STUDENT);
+        bookService.addBook(ISBN, "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 10);
+        clock = new TestClock(TODAY);
+        recordsRepository = new BorrowingRecordsRepository(userService.getUsersRepository(), bookService.getBooksRepository(), persistenceConfig, clock);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        recordsRepository.close();
+        super.tearDown();
+    }
+
+    public void testOverdueRecordsAreFlippedAndFinedOnce() throws Exception
+    {
+        Student student = (Student) userService.getUserByEmail(EMAIL).get();
+        Book book = bookService.getBookByIsbn(ISBN).get();
+        // Due in 3, 5 and 30 days.
+        recordsRepository.add(new BorrowingRecord("due-3", book, student, TODAY, TODAY.plusDays(3)));
+        recordsRepository.add(new BorrowingRecord("due-5", book, student, TODAY, TODAY.plusDays(5)));
+        recordsRepository.add(new BorrowingRecord("due-30", book, student, TODAY, TODAY.plusDays(30)));
+        assertEquals(0, recordsRepository.sweepOverdueRecords());
+
+        clock.setDay(TODAY.plusDays(7));
+        assertEquals(2, recordsRepository.sweepOverdueRecords());
+        assertStatus("due-3", BorrowingStatus.OVERDUE, 4 * 50);
+        assertStatus("due-5", BorrowingStatus.OVERDUE, 2 * 50);
+        assertStatus("due-30", BorrowingStatus.ACTIVE, 0);
+        assertEquals(6 * 50, student.getPendingFine());
+        assertEquals(2, recordsRepository.getByStatus(BorrowingStatus.OVERDUE).size());
+
+        // Sweeping again the same day changes nothing.
+        assertEquals(0, recordsRepository.sweepOverdueRecords());
+        assertEquals(6 * 50, student.getPendingFine());
+
+        clock.setDay(TODAY.plusDays(31));
+        assertEquals(1, recordsRepository.sweepOverdueRecords());
+        assertStatus("due-30", BorrowingStatus.OVERDUE, 50);
+        assertEquals(7 * 50, student.getPendingFine());
+    }
+
+    public void testReturnedRecordsAreLeftAlone() throws Exception
+    {
+        Student student = (Student) userService.getUserByEmail(EMAIL).get();
+        Book book = bookService.getBookByIsbn(ISBN).get();
+        BorrowingRecord borrowingRecord = new BorrowingRecord("returned", book, student, TODAY, TODAY.plusDays(3));
+        recordsRepository.add(borrowingRecord);
+        borrowingRecord.setReturnDate(TODAY.plusDays(1));
+        recordsRepository.saveBorrowingRecord(borrowingRecord);
+
+        clock.setDay(TODAY.plusDays(10));
+        assertEquals(0, recordsRepository.sweepOverdueRecords());
+        assertStatus("returned", BorrowingStatus.RETURNED, 0);
+        assertEquals(0, student.getPendingFine());
+    }
+
+    private void assertStatus(String recordId, BorrowingStatus status, int fine)
+    {
+        BorrowingRecord borrowingRecord = recordsRepository.getById(recordId).get();
+        assertEquals(recordId, status, borrowingRecord.getStatus());
+        assertEquals(recordId, fine, borrowingRecord.getFine());
+    }
+
+    // A clock standing still at noon of the day it is set to.
+    private static final class TestClock extends Clock
+    {
+        private volatile Instant instant;
+
+        private TestClock(LocalDate day)
+        {
+            setDay(day);
+        }
+
+        private void setDay(LocalDate day)
+        {
+            instant = day.atTime(12, 0).toInstant(ZoneOffset.UTC);
+        }
+
+        @Override
+        public ZoneId getZone()
+        {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone)
+        {
+            return this;
+        }
+
+        @Override
+        public Instant instant()
+        {
+            return instant;
+        }
+    }
+}
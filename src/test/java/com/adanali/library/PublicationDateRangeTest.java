@@ -0,0 +1,119 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.model.Book;
+import com.adanali.library.repository.BooksRepository;
+import com.adanali.library.service.BookService;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Books published between two dates, from the sorted publication-date index : both ends included, the oldest first,
+ * kept up to date as dates change and books come and go, and combined with a search.
+ */
+public class PublicationDateRangeTest
+    extends LibraryTestCase
+{
+    private BookService bookService;
+
+    public PublicationDateRangeTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( PublicationDateRangeTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        bookService = new BookService(persistenceConfig);
+        bookService.addBook("9780000000001", "The Hobbit", "J.R.R. Tolkien", "Fantasy", LocalDate.of(1937, 9, 21), 1);
+        bookService.addBook("9780000000002", "The Silmarillion", "J.R.R. Tolkien", "Fantasy", LocalDate.of(1977, 9, 15), 1);
+        bookService.addBook("9780000000003", "Dune", "Frank Herbert", "Science Fiction", LocalDate.of(1965, 8, 1), 1);
+        bookService.addBook("9780000000004", "Children of Dune", "Frank Herbert", "Science Fiction", LocalDate.of(1976, 4, 1), 1);
+    }
+
+    public void testRangeIncludesBothEndsOldestFirst() throws Exception
+    {
+        assertEquals(List.of("9780000000003", "9780000000004", "9780000000002"),
+                isbnsOf(bookService.getBooksPublishedBetween(LocalDate.of(1965, 8, 1), LocalDate.of(1977, 9, 15))));
+        assertTrue(bookService.getBooksPublishedBetween(LocalDate.of(1938, 1, 1), LocalDate.of(1964, 12, 31)).isEmpty());
+        try {
+            bookService.getBooksPublishedBetween(LocalDate.of(1977, 1, 1), LocalDate.of(1937, 1, 1));
+            fail("A range ending before it starts should be refused");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testRangeFollowsDateChangesAndRemovals() throws Exception
+    {
+        LocalDate from = LocalDate.of(1960, 1, 1);
+        LocalDate to = LocalDate.of(1969, 12, 31);
+        bookService.updateBookPublicationDate("9780000000001", LocalDate.of(1960, 1, 1));
+        bookService.updateBookPublicationDate("9780000000003", LocalDate.of(1970, 1, 1));
+        assertEquals(List.of("9780000000001"), isbnsOf(bookService.getBooksPublishedBetween(from, to)));
+        assertTrue(bookService.getBooksPublishedBetween(LocalDate.of(1937, 9, 21), LocalDate.of(1937, 9, 21)).isEmpty());
+
+        bookService.removeBook("9780000000001");
+        assertTrue(bookService.getBooksPublishedBetween(from, to).isEmpty());
+
+        // The index rebuilt while the journal is replayed holds the new dates.
+        BookService reloaded = new BookService(persistenceConfig);
+        assertEquals(List.of("9780000000003", "9780000000004", "9780000000002"),
+                isbnsOf(reloaded.getBooksPublishedBetween(LocalDate.of(1970, 1, 1), LocalDate.of(1980, 1, 1))));
+    }
+
+    public void testRangeMatchesAScanOfTheCatalog() throws Exception
+    {
+        Random random = new Random(11);
+        for (int i = 0; i < 300; i++){
+            String isbn = String.format("97810000%05d", random.nextInt(100));
+            LocalDate date = LocalDate.of(1900, 1, 1).plusDays(random.nextInt(40_000));
+            if (bookService.getBookByIsbn(isbn).isEmpty()){
+                bookService.addBook(isbn, "Title", "Author", "Genre", date, 1);
+            }else if (random.nextInt(4) == 0){
+                bookService.removeBook(isbn);
+            }else bookService.updateBookPublicationDate(isbn, date);
+        }
+        for (int i = 0; i < 50; i++){
+            LocalDate from = LocalDate.of(1900, 1, 1).plusDays(random.nextInt(40_000));
+            LocalDate to = from.plusDays(random.nextInt(10_000));
+            List<String> expected = bookService.listAllBooks().stream()
+                    .filter(book -> !book.getPublicationDate().isBefore(from) && !book.getPublicationDate().isAfter(to))
+                    .sorted((first, second) -> first.getPublicationDate().compareTo(second.getPublicationDate()))
+                    .map(Book::getPublicationDate)
+                    .map(LocalDate::toString)
+                    .toList();
+            List<String> actual = bookService.getBooksPublishedBetween(from, to).stream()
+                    .map(Book::getPublicationDate)
+                    .map(LocalDate::toString)
+                    .toList();
+            assertEquals(expected, actual);
+        }
+    }
+
+    public void testSearchWithinDates() throws Exception
+    {
+        assertEquals(List.of("9780000000003", "9780000000004"),
+                isbnsOf(bookService.searchBooks("herbert", BooksRepository.SearchAttribute.AUTHOR, LocalDate.of(1900, 1, 1), LocalDate.of(2000, 1, 1))));
+        assertEquals(List.of("9780000000002"),
+                isbnsOf(bookService.searchBooks("tolkien", BooksRepository.SearchAttribute.AUTHOR, LocalDate.of(1970, 1, 1), LocalDate.of(2000, 1, 1))));
+
+        bookService.updateBookPublicationDate("9780000000001", LocalDate.of(1975, 1, 1));
+        assertEquals(List.of("9780000000001", "9780000000002"),
+                isbnsOf(bookService.searchBooks("tolkien", BooksRepository.SearchAttribute.AUTHOR, LocalDate.of(1970, 1, 1), LocalDate.of(2000, 1, 1))));
+    }
+
+    private static List<String> isbnsOf(List<Book> books)
+    {
+        return books.stream().map(Book::getIsbn).toList();
+    }
+}
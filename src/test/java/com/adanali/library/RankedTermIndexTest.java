@@ -0,0 +1,110 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.repository.index.RankedTermIndex;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * BM25 ranking over boosted fields : the order of the results, the limit, and the postings kept in step with changes.
+ */
+public class RankedTermIndexTest
+    extends TestCase
+{
+    private RankedTermIndex<String> index;
+
+    public RankedTermIndexTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( RankedTermIndexTest.class );
+    }
+
+    @Override
+    protected void setUp()
+    {
+        // Title weighs three times the author, like the book catalog.
+        index = new RankedTermIndex<>(Comparator.<String>naturalOrder(), 3.0, 1.0);
+    }
+
+    public void testTitleMatchOutranksAuthorMatch()
+    {
+        index.index("by-author", "Collected Essays", "Ocean Smith");
+        index.index("by-title", "The Ocean", "Jane Doe");
+        index.index("unrelated", "Mountains", "John Roe");
+
+        assertEquals(List.of("by-title", "by-author"), index.search("ocean", 10));
+    }
+
+    public void testRarerTermAndShorterFieldScoreHigher()
+    {
+        index.index("short", "Whales", "A");
+        index.index("long", "Whales of the deep cold northern seas", "B");
+        index.index("common-1", "Sea stories", "C");
+        index.index("common-2", "Sea songs", "D");
+        index.index("common-3", "Sea charts", "E");
+
+        assertEquals(List.of("short", "long"), index.search("whales", 10));
+        // Both match one term each, the rarer term wins.
+        assertEquals("long", index.search("northern sea", 10).get(0));
+    }
+
+    public void testRepeatedTermScoresHigher()
+    {
+        index.index("once", "Rain on the plain", "A");
+        index.index("twice", "Rain rain in the plain", "B");
+
+        assertEquals(List.of("twice", "once"), index.search("rain", 10));
+    }
+
+    public void testLimitKeepsTheBestAndTiesFollowTheTieBreaker()
+    {
+        for (int i = 0; i < 100; i++){
+            index.index(String.format("book-%03d", i), "Same title", "Author");
+        }
+        index.index("best", "Title", "Author");
+
+        List<String> results = index.search("title", 3);
+        assertEquals(List.of("best", "book-000", "book-001"), results);
+    }
+
+    public void testRemovedAndReindexedEntitiesAreFoundByTheirCurrentTerms()
+    {
+        for (int i = 0; i < 20; i++){
+            index.index("book-"+i, "River "+i, "Author");
+        }
+        index.remove("book-3");
+        index.remove("book-7");
+        // Reuses the freed document ids, postings must stay in document id order.
+        index.index("new-a", "River delta", "Author");
+        index.index("new-b", "Lake", "Author");
+        index.index("book-5", "Lake shore", "Author");
+
+        List<String> rivers = index.search("river", 100);
+        assertEquals(18, rivers.size());
+        assertFalse(rivers.contains("book-3"));
+        assertFalse(rivers.contains("book-7"));
+        assertFalse(rivers.contains("book-5"));
+        assertTrue(rivers.contains("new-a"));
+        assertEquals(List.of("new-b", "book-5"), index.search("lake", 10));
+
+        index.remove("new-a");
+        index.remove("book-5");
+        assertEquals(List.of("new-b"), index.search("lake", 10));
+        assertEquals(List.of("new-b"), index.search("lake delta", 10));
+    }
+
+    public void testNoMatch()
+    {
+        assertTrue(index.search("anything", 5).isEmpty());
+        index.index("book", "Title", "Author");
+        assertTrue(index.search("missing", 5).isEmpty());
+        assertTrue(index.search("", 5).isEmpty());
+    }
+}
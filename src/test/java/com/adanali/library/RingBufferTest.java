@@ -0,0 +1,146 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.util.RingBuffer;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Multi-producer ring buffer : order across many wraparounds, producers held back while it is full, and interrupted producers.
+ */
+public class RingBufferTest
+    extends TestCase
+{
+    public RingBufferTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( RingBufferTest.class );
+    }
+
+    public void testWrapsAroundInOrder() throws Exception
+    {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        List<Integer> drained = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++){
+            buffer.put(i);
+            // Never more than three elements waiting in four slots.
+            if (i % 3 == 2) assertEquals(3, buffer.drain(drained::add, 3));
+        }
+        while (buffer.drain(drained::add, 10) > 0){
+        }
+        assertEquals(1_000, drained.size());
+        for (int i = 0; i < drained.size(); i++){
+            assertEquals(Integer.valueOf(i), drained.get(i));
+        }
+        assertTrue(buffer.isEmpty());
+        assertTrue(buffer.isDrained());
+    }
+
+    public void testFullBufferHoldsBackTheProducer() throws Exception
+    {
+        RingBuffer<Integer> buffer = new RingBuffer<>(2);
+        buffer.put(0);
+        buffer.put(1);
+        AtomicBoolean published = new AtomicBoolean();
+        Thread producer = new Thread(() -> {
+            try {
+                buffer.put(2);
+                published.set(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertFalse("No free slot yet", published.get());
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(1, buffer.drain(drained::add, 1));
+        producer.join(5_000);
+        assertTrue(published.get());
+        buffer.drain(drained::add, 10);
+        assertEquals(List.of(0, 1, 2), drained);
+    }
+
+    public void testInterruptedProducerLeavesNoHole() throws Exception
+    {
+        RingBuffer<Integer> buffer = new RingBuffer<>(2);
+        buffer.put(0);
+        buffer.put(1);
+        CountDownLatch waiting = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread producer = new Thread(() -> {
+            waiting.countDown();
+            try {
+                buffer.put(-1);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        producer.start();
+        waiting.await();
+        Thread.sleep(50);
+        producer.interrupt();
+        producer.join(5_000);
+        assertTrue(interrupted.get());
+
+        // The element put after the interrupted one is still handed over, and nothing is left claimed but unpublished.
+        List<Integer> drained = new ArrayList<>();
+        buffer.drain(drained::add, 10);
+        buffer.put(2);
+        buffer.drain(drained::add, 10);
+        assertEquals(List.of(0, 1, 2), drained);
+        assertTrue(buffer.isDrained());
+    }
+
+    public void testProducersAgainstOneConsumer() throws Exception
+    {
+        int producers = 4;
+        int perProducer = 50_000;
+        RingBuffer<long[]> buffer = new RingBuffer<>(8);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++){
+            int producerId = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < perProducer; i++){
+                        buffer.put(new long[]{producerId, i});
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        long[] nextOfProducer = new long[producers];
+        int received = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (received < producers * perProducer && System.nanoTime() < deadline){
+            int[] count = new int[1];
+            buffer.drain(element -> {
+                // Every producer's elements arrive in the order it put them.
+                assertEquals(nextOfProducer[(int) element[0]], element[1]);
+                nextOfProducer[(int) element[0]]++;
+                count[0]++;
+            }, 64);
+            received += count[0];
+            if (count[0] == 0) buffer.awaitPublished(1, TimeUnit.MILLISECONDS);
+        }
+        for (Thread thread : threads){
+            thread.join();
+        }
+        assertEquals(producers * perProducer, received);
+        assertTrue(buffer.isDrained());
+    }
+}
@@ -0,0 +1,26 @@
+package test.java.com.adanali.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Clean up of the temporary Database directories the tests run against.
+ */
+final class TestFiles
+{
+    private TestFiles()
+    {
+    }
+
+    static void deleteRecursively(File file) throws IOException
+    {
+        File[] children = file.listFiles();
+        if (children != null){
+            for (File child : children){
+                deleteRecursively(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,126 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.model.Book;
+import com.adanali.library.model.User;
+import com.adanali.library.service.BookService;
+import com.adanali.library.service.UserService;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The lists of all books and all users are immutable snapshots : the same list is shared until the repository changes,
+ * a change publishes a new one and leaves the lists already handed out as they were.
+ */
+public class VersionedSnapshotTest
+    extends LibraryTestCase
+{
+    private BookService bookService;
+    private UserService userService;
+
+    public VersionedSnapshotTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( VersionedSnapshotTest.class );
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        bookService = new BookService(persistenceConfig);
+        userService = new UserService(persistenceConfig);
+        bookService.addBook("9780000000001", "First", "Author", "Genre", LocalDate.of(2000, 1, 1), 1);
+    }
+
+    public void testSnapshotIsSharedUntilTheCatalogChanges() throws Exception
+    {
+        List<Book> first = bookService.listAllBooks();
+        assertSame(first, bookService.listAllBooks());
+        try {
+            first.add(first.get(0));
+            fail("The snapshot should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+
+        // Changing a book in place keeps the members of the list, so the snapshot stays.
+        bookService.updateBookTitle("9780000000001", "Renamed");
+        assertSame(first, bookService.listAllBooks());
+        assertEquals("Renamed", first.get(0).getTitle());
+
+        bookService.addBook("9780000000002", "Second", "Author", "Genre", LocalDate.of(2000, 1, 1), 1);
+        List<Book> second = bookService.listAllBooks();
+        assertNotSame(first, second);
+        assertEquals(1, first.size());
+        assertEquals(2, second.size());
+        assertSame(second, bookService.listAllBooks());
+
+        bookService.removeBook("9780000000001");
+        List<Book> third = bookService.listAllBooks();
+        assertEquals(2, second.size());
+        assertEquals(List.of("9780000000002"), third.stream().map(Book::getIsbn).toList());
+    }
+
+    public void testUsersSnapshotFollowsAddsAndRemovals() throws Exception
+    {
+        List<User> empty = userService.listAllUsers();
+        userService.addUser("Student", "student@snapshot.test", "Passw0rd!", "Address", UserService.UserRole.STUDENT);
+        List<User> withStudent = userService.listAllUsers();
+        assertNotSame(empty, withStudent);
+        assertEquals(empty.size() + 1, withStudent.size());
+        assertSame(withStudent, userService.listAllUsers());
+
+        userService.removeUser("student@snapshot.test");
+        assertEquals(empty.size(), userService.listAllUsers().size());
+        assertEquals(empty.size() + 1, withStudent.size());
+    }
+
+    /**
+     * Readers racing a writer never get a snapshot older than the last add that had returned when they asked.
+     */
+    public void testReadersSeeEveryCompletedAdd() throws Exception
+    {
+        AtomicInteger addedBooks = new AtomicInteger(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++){
+            readers.add(new Thread(() -> {
+                try {
+                    while (writing.get()){
+                        int added = addedBooks.get();
+                        int listed = bookService.listAllBooks().size();
+                        if (listed < added) throw new AssertionError("Listed "+listed+" books after "+added+" adds");
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        try {
+            for (int i = 2; i <= 300; i++){
+                bookService.addBook(String.format("97800000%05d", i), "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 1);
+                addedBooks.set(i);
+            }
+        } finally {
+            writing.set(false);
+            for (Thread reader : readers){
+                reader.join();
+            }
+        }
+        if (failure.get() != null) throw new AssertionError("Reader failed", failure.get());
+        assertEquals(300, bookService.listAllBooks().size());
+    }
+}
@@ -0,0 +1,111 @@
+package test.java.com.adanali.library;
+
+import com.adanali.library.repository.DurabilityPolicy;
+import com.adanali.library.repository.PersistenceConfig;
+import com.adanali.library.service.BookService;
+import com.adanali.library.util.WriteBehindFlusher;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind saves : group commit, the flush barrier, failures reported to the waiters, and the BATCHED and ASYNC policies.
+ */
+public class WriteBehindFlusherTest
+    extends LibraryTestCase
+{
+    // Counts its writes, and fails the given number of them first.
+    private static final class CountingTarget implements WriteBehindFlusher.FlushTarget {
+        private final AtomicInteger writes = new AtomicInteger();
+        private final AtomicInteger failuresLeft;
+
+        private CountingTarget(int failures) {
+            this.failuresLeft = new AtomicInteger(failures);
+        }
+
+        @Override
+        public void flushPending() throws IOException {
+            if (failuresLeft.getAndDecrement() > 0) throw new IOException("Disk full");
+            writes.incrementAndGet();
+        }
+    }
+
+    public WriteBehindFlusherTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( WriteBehindFlusherTest.class );
+    }
+
+    public void testChangesOfOneWindowAreWrittenTogether() throws Exception
+    {
+        WriteBehindFlusher flusher = new WriteBehindFlusher(10_000);
+        CountingTarget target = new CountingTarget(0);
+        long ticket = 0;
+        for (int i = 0; i < 100; i++){
+            ticket = flusher.markDirty(target);
+        }
+        // The window is far from over, the barrier cuts it short.
+        flusher.flush();
+        assertEquals(1, target.writes.get());
+        flusher.awaitFlushed(ticket);
+        flusher.close();
+    }
+
+    public void testFlushWithNothingDirtyReturnsAtOnce() throws Exception
+    {
+        WriteBehindFlusher flusher = new WriteBehindFlusher(10_000);
+        flusher.flush();
+        flusher.close();
+    }
+
+    public void testFailedWriteIsReportedAndRetried() throws Exception
+    {
+        WriteBehindFlusher flusher = new WriteBehindFlusher(0);
+        CountingTarget target = new CountingTarget(1);
+        long ticket = flusher.markDirty(target);
+        try {
+            flusher.awaitFlushed(ticket);
+            fail("The waiter of a failed write must get the failure");
+        } catch (IOException e) {
+            assertEquals("Disk full", e.getCause().getMessage());
+        }
+        assertEquals(0, target.writes.get());
+
+        // Still dirty, the next flush writes it.
+        flusher.flush();
+        assertEquals(1, target.writes.get());
+        flusher.flush();
+        flusher.close();
+    }
+
+    public void testBatchedSaveIsOnDiskWhenItReturns() throws Exception
+    {
+        PersistenceConfig config = journalConfig(DurabilityPolicy.BATCHED, 20);
+        BookService bookService = new BookService(config);
+        bookService.addBook("9780000000001", "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 1);
+
+        assertTrue(new BookService(config).getBookByIsbn("9780000000001").isPresent());
+    }
+
+    public void testAsyncSaveIsOnDiskAfterFlush() throws Exception
+    {
+        PersistenceConfig config = journalConfig(DurabilityPolicy.ASYNC, 60_000);
+        BookService bookService = new BookService(config);
+        bookService.addBook("9780000000001", "Title", "Author", "Genre", LocalDate.of(2000, 1, 1), 1);
+        File journal = new File(dataDirectory, "Books.journal");
+        // The window is a minute long, nothing is written before the barrier.
+        assertFalse(journal.exists() && journal.length() > 0);
+
+        config.flush();
+        assertTrue(journal.length() > 0);
+        assertTrue(new BookService(config).getBookByIsbn("9780000000001").isPresent());
+    }
+}